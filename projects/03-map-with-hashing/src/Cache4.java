@@ -0,0 +1,709 @@
+import components.map.Map.Pair;
+
+/**
+ * Bounded cache represented as a chained hash table (hashed the same way as
+ * {@code Map4}) whose entries are also threaded onto intrusive recency lists,
+ * so that lookup, insertion and eviction of the least recently used entry are
+ * all constant time.
+ *
+ * <p>
+ * Optionally, the cache uses a W-TinyLFU admission policy: new entries land in
+ * a small LRU "window", and an entry leaving the window is only admitted to
+ * the main LRU region if it has been requested more often (according to an
+ * approximate, periodically aged frequency sketch) than the entry it would
+ * evict. Without admission, the cache is a plain LRU cache.
+ *
+ * @param <K>
+ *            type of cache keys
+ * @param <V>
+ *            type of cached values
+ * @convention <pre>
+ * |$this.hashTable| > 0  and
+ * [every node reachable from $this.hashTable[i] has
+ *  (hash mod |$this.hashTable|) = i and hash = key.hashCode()]  and
+ * [the nodes in the window list and the main list are exactly the nodes
+ *  reachable from $this.hashTable, each on exactly one list]  and
+ * $this.windowSize = [number of nodes on the window list]  and
+ * $this.mainSize = [number of nodes on the main list]  and
+ * $this.windowSize <= $this.windowCapacity  and
+ * $this.mainSize <= $this.mainCapacity  and
+ * $this.windowCapacity + $this.mainCapacity = $this.capacity  and
+ * if not $this.admission then $this.windowCapacity = 0
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of (key, value) pairs of the nodes in $this.hashTable]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Cache4<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Fraction of the capacity given to the admission window, as
+     * {@code 1 / WINDOW_DIVISOR}.
+     */
+    private static final int WINDOW_DIVISOR = 100;
+
+    /**
+     * Number of rows in the frequency sketch.
+     */
+    private static final int SKETCH_DEPTH = 4;
+
+    /**
+     * Number of sketch counters per row for each entry of capacity.
+     */
+    private static final int SKETCH_WIDTH_FACTOR = 4;
+
+    /**
+     * Largest value a frequency sketch counter can hold.
+     */
+    private static final int MAX_FREQUENCY = 15;
+
+    /**
+     * Number of recorded accesses per cached entry after which the frequency
+     * sketch is aged (all counters halved).
+     */
+    private static final int SAMPLE_FACTOR = 10;
+
+    /**
+     * Per-row seeds used to derive the sketch indices from a key's hash.
+     */
+    private static final int[] SKETCH_SEEDS = { 0x97CB3127, 0xB3CB2BB9,
+            0xC2B2AE3D, 0x27D4EB2F };
+
+    /**
+     * Node of the hash table chains and of the recency lists.
+     */
+    private static final class Node<K, V> implements Pair<K, V> {
+
+        /**
+         * Key.
+         */
+        private final K key;
+
+        /**
+         * Value.
+         */
+        private V value;
+
+        /**
+         * Cached {@code key.hashCode()}.
+         */
+        private final int hash;
+
+        /**
+         * Next node in the same hash table bucket.
+         */
+        private Node<K, V> chain;
+
+        /**
+         * Neighbor on the recency list towards the least recently used end.
+         */
+        private Node<K, V> older;
+
+        /**
+         * Neighbor on the recency list towards the most recently used end.
+         */
+        private Node<K, V> newer;
+
+        /**
+         * Whether this node is on the window list (rather than the main list).
+         */
+        private boolean inWindow;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param hash
+         *            the hash code of {@code key}
+         */
+        Node(K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * Maximum number of entries.
+     */
+    private int capacity;
+
+    /**
+     * Whether the W-TinyLFU admission policy is used.
+     */
+    private boolean admission;
+
+    /**
+     * Buckets for hashing.
+     */
+    private Node<K, V>[] hashTable;
+
+    /**
+     * Sentinel of the circular window list; {@code newer} neighbor is the LRU.
+     */
+    private Node<K, V> window;
+
+    /**
+     * Sentinel of the circular main list; {@code newer} neighbor is the LRU.
+     */
+    private Node<K, V> main;
+
+    /**
+     * Maximum number of entries in the window list.
+     */
+    private int windowCapacity;
+
+    /**
+     * Maximum number of entries in the main list.
+     */
+    private int mainCapacity;
+
+    /**
+     * Number of entries in the window list.
+     */
+    private int windowSize;
+
+    /**
+     * Number of entries in the main list.
+     */
+    private int mainSize;
+
+    /**
+     * Frequency sketch counters, {@code SKETCH_DEPTH} rows laid out one after
+     * the other; empty when admission is off.
+     */
+    private int[] sketch;
+
+    /**
+     * Mask selecting a column within one sketch row.
+     */
+    private int sketchMask;
+
+    /**
+     * Accesses recorded since the sketch was last aged.
+     */
+    private int samples;
+
+    /**
+     * Number of recorded accesses after which the sketch is aged.
+     */
+    private int sampleLimit;
+
+    /**
+     * Number of lookups that found their key.
+     */
+    private long hits;
+
+    /**
+     * Number of lookups that did not find their key.
+     */
+    private long misses;
+
+    /**
+     * Number of entries evicted to respect the capacity.
+     */
+    private long evictions;
+
+    /**
+     * Computes {@code a} mod {@code b} as % should have been defined to work.
+     *
+     * @param a
+     *            the number being reduced
+     * @param b
+     *            the modulus
+     * @return the result of a mod b, which satisfies 0 <= {@code mod} < b
+     * @requires b > 0
+     * @ensures <pre>
+     * 0 <= mod  and  mod < b  and
+     * there exists k: integer (a = k * b + mod)
+     * </pre>
+     */
+    private static int mod(int a, int b) {
+        assert b > 0 : "Violation of: b > 0";
+        int mod = a % b;
+        if (mod < 0) {
+            mod += b;
+        }
+        return mod;
+    }
+
+    /**
+     * Creates an empty circular recency list.
+     *
+     * @param <K>
+     *            type of keys
+     * @param <V>
+     *            type of values
+     * @return the sentinel of the new list
+     */
+    private static <K, V> Node<K, V> newList() {
+        Node<K, V> sentinel = new Node<K, V>(null, null, 0);
+        sentinel.older = sentinel;
+        sentinel.newer = sentinel;
+        return sentinel;
+    }
+
+    /**
+     * Unlinks {@code n} from the recency list it is on.
+     *
+     * @param <K>
+     *            type of keys
+     * @param <V>
+     *            type of values
+     * @param n
+     *            the node to unlink
+     */
+    private static <K, V> void unlink(Node<K, V> n) {
+        n.older.newer = n.newer;
+        n.newer.older = n.older;
+    }
+
+    /**
+     * Links {@code n} at the most recently used end of the list with sentinel
+     * {@code list}.
+     *
+     * @param <K>
+     *            type of keys
+     * @param <V>
+     *            type of values
+     * @param list
+     *            the sentinel of the list
+     * @param n
+     *            the node to link
+     */
+    private static <K, V> void linkNewest(Node<K, V> list, Node<K, V> n) {
+        n.newer = list;
+        n.older = list.older;
+        list.older.newer = n;
+        list.older = n;
+    }
+
+    /**
+     * Returns the sentinel of the recency list {@code n} is on.
+     *
+     * @param n
+     *            a node in this
+     * @return the window sentinel if {@code n} is in the window, the main
+     *         sentinel otherwise
+     */
+    private Node<K, V> listOf(Node<K, V> n) {
+        Node<K, V> list = this.main;
+        if (n.inWindow) {
+            list = this.window;
+        }
+        return list;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param cap
+     *            the maximum number of entries
+     * @param admit
+     *            whether to use the W-TinyLFU admission policy
+     * @requires cap > 0
+     * @ensures this = {}
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(int cap, boolean admit) {
+        this.capacity = cap;
+        this.admission = admit;
+        this.hashTable = new Node[cap];
+        this.window = newList();
+        this.main = newList();
+        this.windowSize = 0;
+        this.mainSize = 0;
+        if (admit) {
+            this.windowCapacity = Math.max(1, cap / WINDOW_DIVISOR);
+            int width = SKETCH_WIDTH_FACTOR
+                    * (Integer.highestOneBit(Math.max(1, cap - 1)) << 1);
+            this.sketch = new int[SKETCH_DEPTH * width];
+            this.sketchMask = width - 1;
+        } else {
+            this.windowCapacity = 0;
+            this.sketch = new int[0];
+            this.sketchMask = 0;
+        }
+        this.mainCapacity = cap - this.windowCapacity;
+        this.samples = 0;
+        this.sampleLimit = (int) Math.min(Integer.MAX_VALUE,
+                (long) SAMPLE_FACTOR * cap);
+    }
+
+    /**
+     * Returns the index of the sketch counter for {@code hash} in row
+     * {@code row}.
+     *
+     * @param hash
+     *            the hash code of a key
+     * @param row
+     *            the sketch row
+     * @return the index into {@code this.sketch}
+     */
+    private int sketchIndex(int hash, int row) {
+        int h = hash * SKETCH_SEEDS[row];
+        h ^= h >>> (Integer.SIZE / 2);
+        return row * (this.sketchMask + 1) + (h & this.sketchMask);
+    }
+
+    /**
+     * Records one access to the key with hash code {@code hash}, aging the
+     * sketch once enough accesses have been recorded.
+     *
+     * @param hash
+     *            the hash code of the accessed key
+     */
+    private void recordAccess(int hash) {
+        if (this.admission) {
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                int i = this.sketchIndex(hash, row);
+                if (this.sketch[i] < MAX_FREQUENCY) {
+                    this.sketch[i]++;
+                }
+            }
+            this.samples++;
+            if (this.samples >= this.sampleLimit) {
+                for (int i = 0; i < this.sketch.length; i++) {
+                    this.sketch[i] >>>= 1;
+                }
+                this.samples /= 2;
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated access frequency of the key with hash code
+     * {@code hash}.
+     *
+     * @param hash
+     *            the hash code of the key
+     * @return the minimum of the key's counters over all sketch rows
+     */
+    private int frequency(int hash) {
+        int min = MAX_FREQUENCY;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            min = Math.min(min, this.sketch[this.sketchIndex(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Returns the node with key {@code key}, or null if there is none.
+     *
+     * @param key
+     *            the key to look for
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the node for {@code key}, or null
+     */
+    private Node<K, V> find(K key, int hash) {
+        Node<K, V> n = this.hashTable[mod(hash, this.hashTable.length)];
+        while (n != null && !(n.hash == hash && n.key.equals(key))) {
+            n = n.chain;
+        }
+        return n;
+    }
+
+    /**
+     * Removes {@code n} from its hash table bucket and recency list.
+     *
+     * @param n
+     *            the node to remove
+     * @requires n is in this
+     */
+    private void detach(Node<K, V> n) {
+        int index = mod(n.hash, this.hashTable.length);
+        if (this.hashTable[index] == n) {
+            this.hashTable[index] = n.chain;
+        } else {
+            Node<K, V> p = this.hashTable[index];
+            while (p.chain != n) {
+                p = p.chain;
+            }
+            p.chain = n.chain;
+        }
+        n.chain = null;
+        unlink(n);
+        if (n.inWindow) {
+            this.windowSize--;
+        } else {
+            this.mainSize--;
+        }
+    }
+
+    /**
+     * Evicts {@code n} from the cache.
+     *
+     * @param n
+     *            the node to evict
+     * @requires n is in this
+     */
+    private void evict(Node<K, V> n) {
+        this.detach(n);
+        this.evictions++;
+    }
+
+    /**
+     * Moves the least recently used window entry into the main list if it
+     * wins admission against the main list's least recently used entry, or
+     * evicts it otherwise.
+     *
+     * @requires $this.windowSize > 0
+     */
+    private void promoteFromWindow() {
+        Node<K, V> candidate = this.window.newer;
+        boolean admit = true;
+        if (this.mainSize >= this.mainCapacity) {
+            Node<K, V> victim = this.main.newer;
+            admit = victim != this.main && this.frequency(
+                    candidate.hash) > this.frequency(victim.hash);
+            if (admit) {
+                this.evict(victim);
+            }
+        }
+        if (admit) {
+            unlink(candidate);
+            this.windowSize--;
+            candidate.inWindow = false;
+            linkNewest(this.main, candidate);
+            this.mainSize++;
+        } else {
+            this.evict(candidate);
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor resulting in an LRU cache holding at most {@code capacity}
+     * entries.
+     *
+     * @param capacity
+     *            maximum number of entries
+     * @requires capacity > 0
+     * @ensures this = {}
+     */
+    public Cache4(int capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Constructor resulting in a cache holding at most {@code capacity}
+     * entries, using W-TinyLFU admission if {@code admission} is true.
+     *
+     * @param capacity
+     *            maximum number of entries
+     * @param admission
+     *            whether to use the W-TinyLFU admission policy
+     * @requires capacity > 0
+     * @ensures this = {}
+     */
+    public Cache4(int capacity, boolean admission) {
+        assert capacity > 0 : "Violation of: capacity > 0";
+        this.createNewRep(capacity, admission);
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Reports the value cached for {@code key}, marking it as most recently
+     * used, or null if {@code key} is not cached.
+     *
+     * @param key
+     *            the key
+     * @return the cached value, or null
+     * @requires key is not null
+     * @ensures <pre>
+     * if key is in DOMAIN(this) then
+     *   (key, get) is in this
+     * else
+     *   get = null
+     * </pre>
+     */
+    public final V get(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        int hash = key.hashCode();
+        this.recordAccess(hash);
+        Node<K, V> n = this.find(key, hash);
+        V result = null;
+        if (n == null) {
+            this.misses++;
+        } else {
+            this.hits++;
+            unlink(n);
+            linkNewest(this.listOf(n), n);
+            result = n.value;
+        }
+        return result;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}, replacing any value already cached
+     * for {@code key} and evicting entries if the capacity is exceeded.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @requires key is not null and value is not null
+     * @ensures <pre>
+     * |this| <= capacity  and
+     * this is subset of (#this \ {(key, #this(key))}) union {(key, value)}
+     * </pre>
+     */
+    public final void put(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        int hash = key.hashCode();
+        this.recordAccess(hash);
+        Node<K, V> n = this.find(key, hash);
+        if (n != null) {
+            n.value = value;
+            unlink(n);
+            linkNewest(this.listOf(n), n);
+        } else {
+            n = new Node<K, V>(key, value, hash);
+            int index = mod(hash, this.hashTable.length);
+            n.chain = this.hashTable[index];
+            this.hashTable[index] = n;
+            if (this.admission) {
+                n.inWindow = true;
+                linkNewest(this.window, n);
+                this.windowSize++;
+                if (this.windowSize > this.windowCapacity) {
+                    this.promoteFromWindow();
+                }
+            } else {
+                linkNewest(this.main, n);
+                this.mainSize++;
+                if (this.mainSize > this.mainCapacity) {
+                    this.evict(this.main.newer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes {@code key} from the cache and returns the removed pair.
+     *
+     * @param key
+     *            the key to remove
+     * @return the removed (key, value) pair
+     * @requires key is in DOMAIN(this)
+     * @ensures <pre>
+     * remove.key = key  and
+     * remove is in #this  and
+     * this = #this \ {remove}
+     * </pre>
+     */
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        Node<K, V> n = this.find(key, key.hashCode());
+        this.detach(n);
+        return n;
+    }
+
+    /**
+     * Reports whether {@code key} is cached, without counting a hit or miss
+     * and without changing its recency.
+     *
+     * @param key
+     *            the key
+     * @return true iff there is a pair in this whose first component is
+     *         {@code key}
+     * @requires key is not null
+     * @ensures hasKey = (key is in DOMAIN(this))
+     */
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+        return this.find(key, key.hashCode()) != null;
+    }
+
+    /**
+     * Removes every entry and resets the counters.
+     *
+     * @clears this
+     */
+    public final void clear() {
+        this.createNewRep(this.capacity, this.admission);
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Reports the number of cached entries.
+     *
+     * @return |this|
+     */
+    public final int size() {
+        return this.windowSize + this.mainSize;
+    }
+
+    /**
+     * Reports the maximum number of cached entries.
+     *
+     * @return the capacity given at construction
+     */
+    public final int capacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Reports the number of {@code get} calls that found their key.
+     *
+     * @return the hit count
+     */
+    public final long hits() {
+        return this.hits;
+    }
+
+    /**
+     * Reports the number of {@code get} calls that did not find their key.
+     *
+     * @return the miss count
+     */
+    public final long misses() {
+        return this.misses;
+    }
+
+    /**
+     * Reports the number of entries evicted to respect the capacity (entries
+     * rejected by the admission policy included).
+     *
+     * @return the eviction count
+     */
+    public final long evictions() {
+        return this.evictions;
+    }
+
+}
@@ -1,13 +1,18 @@
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 import components.map.Map;
-import components.map.Map2;
 import components.map.MapSecondary;
 
 /**
- * {@code Map} represented as a hash table using {@code Map}s for the buckets,
- * with implementations of primary methods.
+ * {@code Map} represented as a hash table using {@code Map4Bucket}s for the
+ * buckets, with implementations of primary methods. A bucket is a compact
+ * array of entries that adds a balanced search tree once it grows past a small
+ * threshold, so even a bucket that collects many colliding keys is searched in
+ * O(log n) time.
  *
  * @param <K>
  *            type of {@code Map} domain (key) entries
@@ -52,7 +57,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     /**
      * Buckets for hashing.
      */
-    private Map<K, V>[] hashTable;
+    private Map4Bucket<K, V>[] hashTable;
 
     /**
      * Total size of abstract {@code this}.
@@ -100,15 +105,15 @@ public class Map4<K, V> extends MapSecondary<K, V> {
     @SuppressWarnings("unchecked")
     private void createNewRep(int hashTableSize) {
         /*
-         * With "new Map<K, V>[...]" in place of "new Map[...]" it does not
-         * compile; as shown, it results in a warning about an unchecked
-         * conversion, though it cannot fail.
+         * With "new Map4Bucket<K, V>[...]" in place of "new Map4Bucket[...]" it
+         * does not compile; as shown, it results in a warning about an
+         * unchecked conversion, though it cannot fail.
          */
         // make new hash table with specific size
-        this.hashTable = new Map[hashTableSize];
-        // create new map for each entry of hash-table and set size to 0.
+        this.hashTable = new Map4Bucket[hashTableSize];
+        // create new bucket for each entry of hash-table and set size to 0.
         for (int index = 0; index < hashTableSize; index++) {
-            this.hashTable[index] = new Map2<K, V>();
+            this.hashTable[index] = new Map4Bucket<K, V>();
         }
         this.size = 0;
     }
@@ -183,10 +188,11 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert value != null : "Violation of: value is not null";
         assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
 
-        //compute index using mod, then retrieve map and add key pair to the map.
-        int index = mod(key.hashCode(), this.hashTable.length);
-        Map<K, V> map = this.hashTable[index];
-        map.add(key, value);
+        //compute index using mod, then retrieve bucket and add key pair to it.
+        int hash = key.hashCode();
+        int index = mod(hash, this.hashTable.length);
+        Map4Bucket<K, V> bucket = this.hashTable[index];
+        bucket.add(key, value, hash);
         this.size += 1;
     }
 
@@ -195,10 +201,11 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert key != null : "Violation of: key is not null";
         assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
 
-        //calculate index, retrieve map1, remove key from map1, and return removed pair.
-        int index = mod(key.hashCode(), this.hashTable.length);
-        Map<K, V> map1 = this.hashTable[index];
-        Pair<K, V> removedPair = map1.remove(key);
+        //calculate index, retrieve bucket, remove key from it, and return removed pair.
+        int hash = key.hashCode();
+        int index = mod(hash, this.hashTable.length);
+        Map4Bucket<K, V> bucket = this.hashTable[index];
+        Pair<K, V> removedPair = bucket.remove(key, hash);
         this.size -= 1;
         return removedPair;
     }
@@ -213,7 +220,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         int index = 0;
         // use this while loop to indicate when an element has been removed.
         while (removedPair == null && index < this.hashTable.length) {
-            Map<K, V> bucket = this.hashTable[index];
+            Map4Bucket<K, V> bucket = this.hashTable[index];
             if (bucket.size() > 0) {
                 removedPair = bucket.removeAny();
                 this.size--; // update total size accordingly
@@ -228,11 +235,12 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert key != null : "Violation of: key is not null";
         assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
 
-        // set index = mod key and the length, and if the hashtable has index
-        // return the value in the key.
-        int index = mod(key.hashCode(), this.hashTable.length);
-        Map<K, V> map1 = this.hashTable[index];
-        return map1.value(key);
+        // set index = mod key and the length, and return the value of the
+        // key's entry in that bucket.
+        int hash = key.hashCode();
+        int index = mod(hash, this.hashTable.length);
+        Map4Bucket<K, V> bucket = this.hashTable[index];
+        return bucket.find(key, hash).value();
     }
 
     @Override
@@ -240,10 +248,11 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         assert key != null : "Violation of: key is not null";
 
         // calculate index by using mod of the key's hash code.
-        int index = mod(key.hashCode(), this.hashTable.length);
-        Map<K, V> map1 = this.hashTable[index];
-        // check if map1 contains key, returning result.
-        return map1.hasKey(key);
+        int hash = key.hashCode();
+        int index = mod(hash, this.hashTable.length);
+        Map4Bucket<K, V> bucket = this.hashTable[index];
+        // check if bucket contains key, returning result.
+        return bucket.find(key, hash) != null;
     }
 
     @Override
@@ -260,6 +269,37 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         return new Map4Iterator();
     }
 
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Applies {@code action} to every (key, value) pair of {@code this},
+     * visiting the buckets in order and reading each bucket's entries
+     * directly.
+     *
+     * @param action
+     *            the action to apply
+     * @requires [action does not change this]
+     * @ensures [action has been applied once to each pair in this]
+     */
+    public final void forEach(BiConsumer<? super K, ? super V> action) {
+        assert action != null : "Violation of: action is not null";
+
+        for (int i = 0; i < this.hashTable.length; i++) {
+            Map4Bucket<K, V> bucket = this.hashTable[i];
+            for (int j = 0; j < bucket.size(); j++) {
+                Pair<K, V> p = bucket.entry(j);
+                action.accept(p.key(), p.value());
+            }
+        }
+    }
+
+    @Override
+    public final Spliterator<Pair<K, V>> spliterator() {
+        return new Map4Spliterator(0, this.hashTable.length, this.size);
+    }
+
     /**
      * Implementation of {@code Iterator} interface for {@code Map4}.
      */
@@ -271,14 +311,14 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         private int numberSeen;
 
         /**
-         * Bucket from which current bucket iterator comes.
+         * Bucket from which next element will come.
          */
         private int currentBucket;
 
         /**
-         * Bucket iterator from which next element will come.
+         * Position in the current bucket of the next element.
          */
-        private Iterator<Pair<K, V>> bucketIterator;
+        private int position;
 
         /**
          * No-argument constructor.
@@ -286,7 +326,7 @@ public class Map4<K, V> extends MapSecondary<K, V> {
         Map4Iterator() {
             this.numberSeen = 0;
             this.currentBucket = 0;
-            this.bucketIterator = Map4.this.hashTable[0].iterator();
+            this.position = 0;
         }
 
         @Override
@@ -306,12 +346,15 @@ public class Map4<K, V> extends MapSecondary<K, V> {
                 throw new NoSuchElementException();
             }
             this.numberSeen++;
-            while (!this.bucketIterator.hasNext()) {
+            while (this.position == Map4.this.hashTable[this.currentBucket]
+                    .size()) {
                 this.currentBucket++;
-                this.bucketIterator = Map4.this.hashTable[this.currentBucket]
-                        .iterator();
+                this.position = 0;
             }
-            return this.bucketIterator.next();
+            Pair<K, V> next = Map4.this.hashTable[this.currentBucket]
+                    .entry(this.position);
+            this.position++;
+            return next;
         }
 
         @Override
@@ -322,4 +365,117 @@ public class Map4<K, V> extends MapSecondary<K, V> {
 
     }
 
+    /**
+     * Implementation of {@code Spliterator} interface for {@code Map4},
+     * covering a range of buckets and splitting by halving that range. Sizes
+     * are exact: a split counts the pairs in the buckets it hands off.
+     */
+    private final class Map4Spliterator implements Spliterator<Pair<K, V>> {
+
+        /**
+         * Bucket from which next element will come.
+         */
+        private int bucket;
+
+        /**
+         * Position in {@code bucket} of the next element.
+         */
+        private int position;
+
+        /**
+         * One past the last bucket covered.
+         */
+        private int fence;
+
+        /**
+         * Number of pairs not yet visited.
+         */
+        private long remaining;
+
+        /**
+         * Constructor.
+         *
+         * @param origin
+         *            first bucket covered
+         * @param fence
+         *            one past the last bucket covered
+         * @param remaining
+         *            number of pairs in the covered buckets
+         */
+        Map4Spliterator(int origin, int fence, long remaining) {
+            this.bucket = origin;
+            this.position = 0;
+            this.fence = fence;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Pair<K, V>> action) {
+            assert action != null : "Violation of: action is not null";
+
+            boolean advanced = this.remaining > 0;
+            if (advanced) {
+                while (this.position == Map4.this.hashTable[this.bucket]
+                        .size()) {
+                    this.bucket++;
+                    this.position = 0;
+                }
+                this.remaining--;
+                action.accept(
+                        Map4.this.hashTable[this.bucket].entry(this.position));
+                this.position++;
+            }
+            return advanced;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super Pair<K, V>> action) {
+            assert action != null : "Violation of: action is not null";
+
+            if (this.remaining > 0) {
+                for (; this.bucket < this.fence; this.bucket++) {
+                    Map4Bucket<K, V> b = Map4.this.hashTable[this.bucket];
+                    for (; this.position < b.size(); this.position++) {
+                        action.accept(b.entry(this.position));
+                    }
+                    this.position = 0;
+                }
+                this.remaining = 0;
+            }
+        }
+
+        @Override
+        public Spliterator<Pair<K, V>> trySplit() {
+            /*
+             * Hand off the upper half of the buckets after the current one,
+             * which has not been started.
+             */
+            int lo = this.bucket + 1;
+            int mid = (lo + this.fence) >>> 1;
+            Map4Spliterator suffix = null;
+            if (mid > lo) {
+                long suffixSize = 0;
+                for (int i = mid; i < this.fence; i++) {
+                    suffixSize += Map4.this.hashTable[i].size();
+                }
+                suffix = new Map4Spliterator(mid, this.fence, suffixSize);
+                this.remaining -= suffixSize;
+                this.fence = mid;
+            }
+            return suffix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.remaining;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED
+                    | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+    }
+
 }
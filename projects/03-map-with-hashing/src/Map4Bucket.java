@@ -0,0 +1,679 @@
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import components.map.Map.Pair;
+
+/**
+ * Adaptive bucket for {@code Map4}: a compact array of entries that, once it
+ * holds more than {@code TREEIFY_THRESHOLD} entries, is also indexed by an AVL
+ * tree so that finding a key takes O(log n) time even when many keys land in
+ * the same bucket.
+ *
+ * <p>
+ * The tree is ordered by hash code first; keys with equal hash codes are
+ * ordered by {@code compareTo} when they are {@code Comparable} to each other,
+ * and otherwise searched for on both sides (the approach of
+ * {@code java.util.HashMap}).
+ *
+ * @param <K>
+ *            type of keys
+ * @param <V>
+ *            type of values
+ * @convention <pre>
+ * 0 <= $this.count <= |$this.entries|  and
+ * for all i: integer where (0 <= i < $this.count)
+ *   ($this.entries[i] /= null  and  $this.entries[i].index = i  and
+ *    $this.entries[i].hash = $this.entries[i].key.hashCode())  and
+ * [no two entries have equal keys]  and
+ * if $this.root = null then
+ *   [no entry has a tree node]
+ * else
+ *   [$this.root is a valid AVL tree, ordered by hash code first, whose nodes
+ *    are exactly the tree nodes of $this.entries[0, $this.count), each entry
+ *    and its node pointing to each other]
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of (key, value) pairs of $this.entries[0, $this.count)]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+final class Map4Bucket<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of entries above which the tree index is built.
+     */
+    private static final int TREEIFY_THRESHOLD = 8;
+
+    /**
+     * Number of entries at or below which the tree index is dropped (smaller
+     * than {@code TREEIFY_THRESHOLD}, so a bucket hovering around the
+     * threshold does not rebuild its tree on every change).
+     */
+    private static final int UNTREEIFY_THRESHOLD = 6;
+
+    /**
+     * Capacity of the entry array when it is first allocated.
+     */
+    private static final int INITIAL_CAPACITY = 2;
+
+    /**
+     * Shared entry array of empty buckets that have never held an entry.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final Entry[] NO_ENTRIES = {};
+
+    /**
+     * Bucket entry: a (key, value) pair with its cached hash code and position.
+     */
+    static final class Entry<K, V> implements Pair<K, V> {
+
+        /**
+         * Key.
+         */
+        private final K key;
+
+        /**
+         * Value.
+         */
+        private final V value;
+
+        /**
+         * Cached {@code key.hashCode()}.
+         */
+        private final int hash;
+
+        /**
+         * Position of this entry in {@code entries}.
+         */
+        private int index;
+
+        /**
+         * Tree node indexing this entry, or null if the bucket has no tree.
+         */
+        private Node<K, V> node;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param hash
+         *            the hash code of {@code key}
+         */
+        Entry(K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * AVL tree node.
+     */
+    private static final class Node<K, V> {
+
+        /**
+         * Entry indexed by this node.
+         */
+        private Entry<K, V> entry;
+
+        /**
+         * Left child.
+         */
+        private Node<K, V> left;
+
+        /**
+         * Right child.
+         */
+        private Node<K, V> right;
+
+        /**
+         * Parent, or null for the root.
+         */
+        private Node<K, V> parent;
+
+        /**
+         * Height of the subtree rooted here (a leaf has height 1).
+         */
+        private int height;
+
+        /**
+         * Constructor.
+         *
+         * @param entry
+         *            the entry to index
+         * @param parent
+         *            the parent node
+         */
+        Node(Entry<K, V> entry, Node<K, V> parent) {
+            this.entry = entry;
+            this.parent = parent;
+            this.height = 1;
+            entry.node = this;
+        }
+
+    }
+
+    /**
+     * Entries; the first {@code count} are in use.
+     */
+    private Entry<K, V>[] entries;
+
+    /**
+     * Number of entries.
+     */
+    private int count;
+
+    /**
+     * Root of the tree index, or null if there is none.
+     */
+    private Node<K, V> root;
+
+    /**
+     * Returns {@code x}'s class if it is of the form "class C implements
+     * Comparable&lt;C&gt;", else null.
+     *
+     * @param x
+     *            the object
+     * @return the class or null
+     */
+    private static Class<?> comparableClassFor(Object x) {
+        Class<?> result = null;
+        if (x instanceof Comparable) {
+            Class<?> c = x.getClass();
+            if (c == String.class) {
+                result = c;
+            } else {
+                for (Type t : c.getGenericInterfaces()) {
+                    if (t instanceof ParameterizedType) {
+                        ParameterizedType p = (ParameterizedType) t;
+                        Type[] args = p.getActualTypeArguments();
+                        if (p.getRawType() == Comparable.class
+                                && args.length == 1 && args[0] == c) {
+                            result = c;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compares {@code k} with {@code other} if {@code other} is of class
+     * {@code kc}, else returns 0.
+     *
+     * @param kc
+     *            the comparable class of {@code k}, or null
+     * @param k
+     *            the key being searched for or inserted
+     * @param other
+     *            a key in the tree
+     * @return the comparison, or 0 if the keys are not comparable
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static int compareComparables(Class<?> kc, Object k,
+            Object other) {
+        int result = 0;
+        if (kc != null && other != null && other.getClass() == kc) {
+            result = ((Comparable) k).compareTo(other);
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether {@code e} is the entry for {@code key}, trying reference
+     * equality before the (possibly expensive) {@code equals}.
+     *
+     * @param <K>
+     *            type of keys
+     * @param e
+     *            the entry
+     * @param key
+     *            the key
+     * @return true iff e.key = key
+     */
+    private static <K> boolean sameKey(Entry<K, ?> e, K key) {
+        return e.key == key || e.key.equals(key);
+    }
+
+    /**
+     * Returns the height of the subtree rooted at {@code n}.
+     *
+     * @param n
+     *            the node, or null
+     * @return the height (0 for null)
+     */
+    private static int height(Node<?, ?> n) {
+        int h = 0;
+        if (n != null) {
+            h = n.height;
+        }
+        return h;
+    }
+
+    /**
+     * Recomputes the height of {@code n} from its children.
+     *
+     * @param n
+     *            the node
+     */
+    private static void updateHeight(Node<?, ?> n) {
+        n.height = 1 + Math.max(height(n.left), height(n.right));
+    }
+
+    /**
+     * Makes {@code replacement} take the place of {@code old} as a child of
+     * {@code parent} (or as the root if {@code parent} is null).
+     *
+     * @param parent
+     *            the parent of {@code old}
+     * @param old
+     *            the child being replaced
+     * @param replacement
+     *            the new child, or null
+     */
+    private void replaceChild(Node<K, V> parent, Node<K, V> old,
+            Node<K, V> replacement) {
+        if (parent == null) {
+            this.root = replacement;
+        } else if (parent.left == old) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+    }
+
+    /**
+     * Rotates the subtree rooted at {@code x} to the left.
+     *
+     * @param x
+     *            the subtree root, with a right child
+     * @return the new subtree root
+     */
+    private Node<K, V> rotateLeft(Node<K, V> x) {
+        Node<K, V> y = x.right;
+        this.replaceChild(x.parent, x, y);
+        x.right = y.left;
+        if (y.left != null) {
+            y.left.parent = x;
+        }
+        y.left = x;
+        x.parent = y;
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
+
+    /**
+     * Rotates the subtree rooted at {@code x} to the right.
+     *
+     * @param x
+     *            the subtree root, with a left child
+     * @return the new subtree root
+     */
+    private Node<K, V> rotateRight(Node<K, V> x) {
+        Node<K, V> y = x.left;
+        this.replaceChild(x.parent, x, y);
+        x.left = y.right;
+        if (y.right != null) {
+            y.right.parent = x;
+        }
+        y.right = x;
+        x.parent = y;
+        updateHeight(x);
+        updateHeight(y);
+        return y;
+    }
+
+    /**
+     * Restores heights and the AVL balance on the path from {@code n} to the
+     * root.
+     *
+     * @param n
+     *            the lowest node whose subtree changed, or null
+     */
+    private void rebalanceUp(Node<K, V> n) {
+        Node<K, V> p = n;
+        while (p != null) {
+            updateHeight(p);
+            int balance = height(p.left) - height(p.right);
+            if (balance > 1) {
+                if (height(p.left.left) < height(p.left.right)) {
+                    this.rotateLeft(p.left);
+                }
+                p = this.rotateRight(p);
+            } else if (balance < -1) {
+                if (height(p.right.right) < height(p.right.left)) {
+                    this.rotateRight(p.right);
+                }
+                p = this.rotateLeft(p);
+            }
+            p = p.parent;
+        }
+    }
+
+    /**
+     * Inserts a tree node for {@code e}.
+     *
+     * @param e
+     *            the entry, not yet in the tree
+     */
+    private void treeInsert(Entry<K, V> e) {
+        if (this.root == null) {
+            this.root = new Node<K, V>(e, null);
+        } else {
+            Class<?> kc = null;
+            Node<K, V> p = this.root;
+            Node<K, V> added = null;
+            while (added == null) {
+                int dir = Integer.compare(e.hash, p.entry.hash);
+                if (dir == 0) {
+                    if (kc == null) {
+                        kc = comparableClassFor(e.key);
+                    }
+                    dir = compareComparables(kc, e.key, p.entry.key);
+                }
+                if (dir == 0) {
+                    dir = Integer.compare(System.identityHashCode(e.key),
+                            System.identityHashCode(p.entry.key));
+                }
+                if (dir < 0) {
+                    if (p.left == null) {
+                        added = new Node<K, V>(e, p);
+                        p.left = added;
+                    } else {
+                        p = p.left;
+                    }
+                } else {
+                    if (p.right == null) {
+                        added = new Node<K, V>(e, p);
+                        p.right = added;
+                    } else {
+                        p = p.right;
+                    }
+                }
+            }
+            this.rebalanceUp(p);
+        }
+    }
+
+    /**
+     * Removes the tree node of {@code e}.
+     *
+     * @param e
+     *            the entry, in the tree
+     */
+    private void treeRemove(Entry<K, V> e) {
+        Node<K, V> z = e.node;
+        if (z.left != null && z.right != null) {
+            /*
+             * Swap entries with the in-order successor, which has no left
+             * child, and remove the successor's node instead.
+             */
+            Node<K, V> s = z.right;
+            while (s.left != null) {
+                s = s.left;
+            }
+            z.entry = s.entry;
+            z.entry.node = z;
+            z = s;
+        }
+        Node<K, V> child = z.left;
+        if (child == null) {
+            child = z.right;
+        }
+        Node<K, V> parent = z.parent;
+        this.replaceChild(parent, z, child);
+        e.node = null;
+        this.rebalanceUp(parent);
+    }
+
+    /**
+     * Finds the tree node for {@code key} in the subtree rooted at {@code p}.
+     *
+     * @param <K>
+     *            type of keys
+     * @param <V>
+     *            type of values
+     * @param p
+     *            the subtree root, or null
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @param kc
+     *            the comparable class of {@code key}, or null if not yet
+     *            resolved (or if there is none)
+     * @return the entry for {@code key}, or null
+     */
+    private static <K, V> Entry<K, V> treeFind(Node<K, V> p, K key, int hash,
+            Class<?> kc) {
+        Entry<K, V> found = null;
+        Class<?> c = kc;
+        Node<K, V> n = p;
+        while (found == null && n != null) {
+            Entry<K, V> e = n.entry;
+            int dir = Integer.compare(hash, e.hash);
+            if (dir < 0) {
+                n = n.left;
+            } else if (dir > 0) {
+                n = n.right;
+            } else if (sameKey(e, key)) {
+                found = e;
+            } else {
+                /*
+                 * Resolve the comparable class only when hash codes tie,
+                 * since that takes reflection.
+                 */
+                if (c == null) {
+                    c = comparableClassFor(key);
+                }
+                dir = compareComparables(c, key, e.key);
+                if (dir < 0) {
+                    n = n.left;
+                } else if (dir > 0) {
+                    n = n.right;
+                } else {
+                    /*
+                     * Equal hash codes and no usable order: look on both
+                     * sides.
+                     */
+                    found = treeFind(n.right, key, hash, c);
+                    n = n.left;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Builds the tree index over all entries.
+     */
+    private void treeify() {
+        for (int i = 0; i < this.count; i++) {
+            this.treeInsert(this.entries[i]);
+        }
+    }
+
+    /**
+     * Drops the tree index.
+     */
+    private void untreeify() {
+        for (int i = 0; i < this.count; i++) {
+            this.entries[i].node = null;
+        }
+        this.root = null;
+    }
+
+    /**
+     * Removes {@code e} from the entry array by moving the last entry into
+     * its position, and from the tree index.
+     *
+     * @param e
+     *            the entry, in this
+     */
+    private void detach(Entry<K, V> e) {
+        if (this.root != null) {
+            this.treeRemove(e);
+        }
+        this.count--;
+        Entry<K, V> last = this.entries[this.count];
+        this.entries[e.index] = last;
+        last.index = e.index;
+        this.entries[this.count] = null;
+        if (this.root != null && this.count <= UNTREEIFY_THRESHOLD) {
+            this.untreeify();
+        }
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    @SuppressWarnings("unchecked")
+    Map4Bucket() {
+        this.entries = NO_ENTRIES;
+        this.count = 0;
+        this.root = null;
+    }
+
+    /*
+     * Public methods ---------------------------------------------------------
+     */
+
+    /**
+     * Returns the entry for {@code key}, or null if {@code key} is not in
+     * this. Only entries whose cached hash code equals {@code hash} have their
+     * keys compared with {@code equals}.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the entry or null
+     */
+    Entry<K, V> find(K key, int hash) {
+        Entry<K, V> found = null;
+        if (this.root != null) {
+            found = treeFind(this.root, key, hash, null);
+        } else {
+            int i = 0;
+            while (found == null && i < this.count) {
+                Entry<K, V> e = this.entries[i];
+                if (e.hash == hash && sameKey(e, key)) {
+                    found = e;
+                }
+                i++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Adds the pair ({@code key}, {@code value}).
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @param hash
+     *            the hash code of {@code key}
+     * @requires key is not in DOMAIN(this)
+     */
+    @SuppressWarnings("unchecked")
+    void add(K key, V value, int hash) {
+        if (this.count == this.entries.length) {
+            Entry<K, V>[] bigger = new Entry[Math.max(INITIAL_CAPACITY,
+                    2 * this.entries.length)];
+            System.arraycopy(this.entries, 0, bigger, 0, this.count);
+            this.entries = bigger;
+        }
+        Entry<K, V> e = new Entry<K, V>(key, value, hash);
+        e.index = this.count;
+        this.entries[this.count] = e;
+        this.count++;
+        if (this.root != null) {
+            this.treeInsert(e);
+        } else if (this.count > TREEIFY_THRESHOLD) {
+            this.treeify();
+        }
+    }
+
+    /**
+     * Removes the pair whose key is {@code key} and returns it.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the removed pair
+     * @requires key is in DOMAIN(this)
+     */
+    Pair<K, V> remove(K key, int hash) {
+        Entry<K, V> e = this.find(key, hash);
+        this.detach(e);
+        return e;
+    }
+
+    /**
+     * Removes an arbitrary pair (the most recently positioned one) and returns
+     * it.
+     *
+     * @return the removed pair
+     * @requires |this| > 0
+     */
+    Pair<K, V> removeAny() {
+        Entry<K, V> e = this.entries[this.count - 1];
+        this.detach(e);
+        return e;
+    }
+
+    /**
+     * Reports the number of pairs.
+     *
+     * @return |this|
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * Returns the pair at position {@code i}; positions 0 through
+     * {@code size() - 1} together hold every pair, in no particular order.
+     *
+     * @param i
+     *            the position
+     * @return the pair at position i
+     * @requires 0 <= i < |this|
+     */
+    Pair<K, V> entry(int i) {
+        return this.entries[i];
+    }
+
+}
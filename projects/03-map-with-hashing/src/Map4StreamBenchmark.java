@@ -0,0 +1,115 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.StreamSupport;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Measures how parallel stream aggregations over a {@code Map4} scale with the
+ * number of threads, using the bucket-range splitting {@code Spliterator} of
+ * {@code Map4}. Run with assertions disabled.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class Map4StreamBenchmark {
+
+    /**
+     * Number of entries in the benchmarked map.
+     */
+    private static final int ENTRIES = 2_000_000;
+
+    /**
+     * Size of the hash table of the benchmarked map.
+     */
+    private static final int HASH_TABLE_SIZE = 1_000_003;
+
+    /**
+     * Thread counts to measure.
+     */
+    private static final int[] THREADS = { 1, 4, 16 };
+
+    /**
+     * Timed repetitions per thread count (the best one is reported).
+     */
+    private static final int ROUNDS = 7;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private Map4StreamBenchmark() {
+    }
+
+    /**
+     * Sums the values of the pairs with even keys in {@code map} with a
+     * parallel stream running in {@code pool}.
+     *
+     * @param map
+     *            the map
+     * @param pool
+     *            the pool to run the stream in
+     * @return the sum
+     * @throws ExecutionException
+     *             if the aggregation fails
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static long aggregate(Map4<Integer, Integer> map,
+            ForkJoinPool pool)
+            throws InterruptedException, ExecutionException {
+        return pool.submit(() -> StreamSupport.stream(map.spliterator(), true)
+                .filter(p -> p.key() % 2 == 0).mapToLong(p -> p.value())
+                .sum()).get();
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws ExecutionException
+     *             if an aggregation fails
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public static void main(String[] args)
+            throws InterruptedException, ExecutionException {
+        SimpleWriter out = new SimpleWriter1L();
+
+        Map4<Integer, Integer> map = new Map4<Integer, Integer>(
+                HASH_TABLE_SIZE);
+        for (int i = 0; i < ENTRIES; i++) {
+            map.add(i, i % HASH_TABLE_SIZE);
+        }
+        out.println("Map4 with " + ENTRIES + " entries in " + HASH_TABLE_SIZE
+                + " buckets; best of " + ROUNDS + " rounds");
+
+        double baseline = 0;
+        for (int threads : THREADS) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            long checksum = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                checksum = aggregate(map, pool);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            pool.shutdown();
+            double millis = best / NANOS_PER_MILLI;
+            if (baseline == 0) {
+                baseline = millis;
+            }
+            out.println(String.format(
+                    "  %2d threads: %8.2f ms  speedup %5.2fx  (sum %d)",
+                    threads, millis, baseline / millis, checksum));
+        }
+        out.close();
+    }
+
+}
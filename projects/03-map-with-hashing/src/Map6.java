@@ -0,0 +1,750 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as a bucketized cuckoo hash table with a small
+ * stash, with implementations of primary methods.
+ *
+ * <p>
+ * Every key has two candidate buckets of {@code SLOTS_PER_BUCKET} slots each,
+ * chosen by two different hash functions of {@code key.hashCode()}. A key is
+ * always in one of its two buckets or in the stash, so {@code hasKey} and
+ * {@code value} look at no more than two buckets plus the stash. When both
+ * buckets of a new key are full, {@code add} evicts a random occupant to its
+ * other bucket, and so on; if that does not settle, the homeless entry goes
+ * to the stash, and once the stash is full the table is doubled.
+ *
+ * <p>
+ * Keys whose hash codes are all equal can never be separated by growing the
+ * table, so when the table is less than half full an entry that finds no
+ * place goes to the stash even if the stash is full; only in that degenerate
+ * case can the stash (and hence lookups) grow beyond a constant.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.slots| = |$this.hashes| = SLOTS_PER_BUCKET * 2^(32 - $this.shift)  and
+ * for all i: integer
+ *     where (0 <= i  and  i < |$this.slots|  and  $this.slots[i] /= null)
+ *   ($this.hashes[i] = $this.slots[i].hash  and
+ *    i / SLOTS_PER_BUCKET is in {bucket1($this.slots[i].hash),
+ *                                bucket2($this.slots[i].hash)})  and
+ * [$this.stash[0, $this.stashSize) are not null and the rest are null]  and
+ * [every entry has hash = key.hashCode() and no two entries have equal keys]
+ * and
+ * $this.size = [number of non-null entries in $this.slots and $this.stash]
+ * and
+ * for all i: integer where (0 <= i  and  i < $this.scanStart)
+ *   ($this.slots[i] = null)
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of (key, value) pairs of the entries in $this.slots and
+ *         $this.stash]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Map6<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of slots in each bucket.
+     */
+    private static final int SLOTS_PER_BUCKET = 4;
+
+    /**
+     * log2 of {@code SLOTS_PER_BUCKET}.
+     */
+    private static final int LOG_SLOTS_PER_BUCKET = 2;
+
+    /**
+     * Default number of buckets (a power of two).
+     */
+    private static final int DEFAULT_BUCKETS = 16;
+
+    /**
+     * Number of entries the stash holds before the table is grown.
+     */
+    private static final int STASH_SIZE = 4;
+
+    /**
+     * Largest number of evictions tried by one insertion.
+     */
+    private static final int MAX_KICKS = 256;
+
+    /**
+     * Maximum load, as a fraction {@code LOAD_NUMERATOR / LOAD_DENOMINATOR}
+     * of the slots, before the table is grown.
+     */
+    private static final int LOAD_NUMERATOR = 9;
+
+    /**
+     * Denominator of the maximum load.
+     */
+    private static final int LOAD_DENOMINATOR = 10;
+
+    /**
+     * Multiplier for the first hash function (odd, so multiplication is a
+     * bijection).
+     */
+    private static final int MULTIPLIER_1 = 0x9E3779B9;
+
+    /**
+     * Multiplier for the second hash function.
+     */
+    private static final int MULTIPLIER_2 = 0x85EBCA6B;
+
+    /**
+     * First shift of the xorshift generator.
+     */
+    private static final int XORSHIFT_A = 13;
+
+    /**
+     * Second shift of the xorshift generator.
+     */
+    private static final int XORSHIFT_B = 17;
+
+    /**
+     * Third shift of the xorshift generator.
+     */
+    private static final int XORSHIFT_C = 5;
+
+    /**
+     * Table entry: a (key, value) pair with cached hash code.
+     */
+    private static final class Entry<K, V> implements Pair<K, V> {
+
+        /**
+         * Key.
+         */
+        private final K key;
+
+        /**
+         * Value.
+         */
+        private final V value;
+
+        /**
+         * Cached {@code key.hashCode()}.
+         */
+        private final int hash;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param hash
+         *            the hash code of {@code key}
+         */
+        Entry(K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * Slots, {@code SLOTS_PER_BUCKET} consecutive ones per bucket; null means
+     * empty.
+     */
+    private Entry<K, V>[] slots;
+
+    /**
+     * Hash codes of the entries in {@code slots}, compared before the keys.
+     */
+    private int[] hashes;
+
+    /**
+     * Right shift turning a 32-bit product into a bucket index.
+     */
+    private int shift;
+
+    /**
+     * Entries that found no place in their buckets.
+     */
+    private Entry<K, V>[] stash;
+
+    /**
+     * Number of entries in {@code stash}.
+     */
+    private int stashSize;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Every slot before this index is empty.
+     */
+    private int scanStart;
+
+    /**
+     * State of the generator choosing which occupant to evict.
+     */
+    private int randomState;
+
+    /**
+     * Returns the first bucket for {@code hash}.
+     *
+     * @param hash
+     *            a hash code
+     * @return the bucket index
+     */
+    private int bucket1(int hash) {
+        return (hash * MULTIPLIER_1) >>> this.shift;
+    }
+
+    /**
+     * Returns the second bucket for {@code hash}.
+     *
+     * @param hash
+     *            a hash code
+     * @return the bucket index
+     */
+    private int bucket2(int hash) {
+        return ((hash ^ (hash >>> (Integer.SIZE / 2)))
+                * MULTIPLIER_2) >>> this.shift;
+    }
+
+    /**
+     * Returns the next pseudo-random number (xorshift).
+     *
+     * @return a pseudo-random int
+     */
+    private int nextRandom() {
+        int x = this.randomState;
+        x ^= x << XORSHIFT_A;
+        x ^= x >>> XORSHIFT_B;
+        x ^= x << XORSHIFT_C;
+        this.randomState = x;
+        return x;
+    }
+
+    /**
+     * Returns the slot in {@code bucket} holding {@code key}, or -1.
+     *
+     * @param bucket
+     *            the bucket
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the slot index or -1
+     */
+    private int slotIn(int bucket, K key, int hash) {
+        int slot = -1;
+        int i = bucket << LOG_SLOTS_PER_BUCKET;
+        int end = i + SLOTS_PER_BUCKET;
+        while (slot < 0 && i < end) {
+            Entry<K, V> e = this.slots[i];
+            if (e != null && this.hashes[i] == hash && e.key.equals(key)) {
+                slot = i;
+            }
+            i++;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1 if it is not in the table
+     * proper (it may still be in the stash).
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the slot index or -1
+     */
+    private int findSlot(K key, int hash) {
+        int slot = this.slotIn(this.bucket1(hash), key, hash);
+        if (slot < 0) {
+            slot = this.slotIn(this.bucket2(hash), key, hash);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the stash index holding {@code key}, or -1.
+     *
+     * @param key
+     *            the key
+     * @param hash
+     *            the hash code of {@code key}
+     * @return the stash index or -1
+     */
+    private int findStash(K key, int hash) {
+        int i = this.stashSize - 1;
+        while (i >= 0 && !(this.stash[i].hash == hash
+                && this.stash[i].key.equals(key))) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the entry with key {@code key}, or null.
+     *
+     * @param key
+     *            the key
+     * @return the entry or null
+     */
+    private Entry<K, V> find(K key) {
+        int hash = key.hashCode();
+        Entry<K, V> result = null;
+        int slot = this.findSlot(key, hash);
+        if (slot >= 0) {
+            result = this.slots[slot];
+        } else {
+            int i = this.findStash(key, hash);
+            if (i >= 0) {
+                result = this.stash[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Puts {@code e} in an empty slot of {@code bucket}, if there is one.
+     *
+     * @param bucket
+     *            the bucket
+     * @param e
+     *            the entry
+     * @return true iff {@code e} was put in {@code bucket}
+     */
+    private boolean putInBucket(int bucket, Entry<K, V> e) {
+        boolean placed = false;
+        int i = bucket << LOG_SLOTS_PER_BUCKET;
+        int end = i + SLOTS_PER_BUCKET;
+        while (!placed && i < end) {
+            if (this.slots[i] == null) {
+                this.slots[i] = e;
+                this.hashes[i] = e.hash;
+                this.scanStart = Math.min(this.scanStart, i);
+                placed = true;
+            }
+            i++;
+        }
+        return placed;
+    }
+
+    /**
+     * Puts {@code e} in one of its buckets, evicting other entries to their
+     * alternate buckets as needed, and returns the entry left without a place
+     * (possibly {@code e} itself), or null if everything was placed.
+     *
+     * @param e
+     *            the entry
+     * @return the homeless entry or null
+     */
+    private Entry<K, V> place(Entry<K, V> e) {
+        Entry<K, V> homeless = null;
+        int b1 = this.bucket1(e.hash);
+        if (!this.putInBucket(b1, e)
+                && !this.putInBucket(this.bucket2(e.hash), e)) {
+            homeless = e;
+            int bucket = b1;
+            if ((this.nextRandom() & 1) == 0) {
+                bucket = this.bucket2(e.hash);
+            }
+            int kicks = 0;
+            while (homeless != null && kicks < MAX_KICKS) {
+                int slot = (bucket << LOG_SLOTS_PER_BUCKET)
+                        + (this.nextRandom() & (SLOTS_PER_BUCKET - 1));
+                Entry<K, V> victim = this.slots[slot];
+                this.slots[slot] = homeless;
+                this.hashes[slot] = homeless.hash;
+                homeless = victim;
+                int alternate = this.bucket1(victim.hash);
+                if (alternate == bucket) {
+                    alternate = this.bucket2(victim.hash);
+                }
+                if (this.putInBucket(alternate, victim)) {
+                    homeless = null;
+                }
+                bucket = alternate;
+                kicks++;
+            }
+        }
+        return homeless;
+    }
+
+    /**
+     * Appends {@code e} to the stash, growing the stash array if needed.
+     *
+     * @param e
+     *            the entry
+     */
+    @SuppressWarnings("unchecked")
+    private void pushStash(Entry<K, V> e) {
+        if (this.stashSize == this.stash.length) {
+            Entry<K, V>[] bigger = new Entry[2 * this.stash.length];
+            System.arraycopy(this.stash, 0, bigger, 0, this.stashSize);
+            this.stash = bigger;
+        }
+        this.stash[this.stashSize] = e;
+        this.stashSize++;
+    }
+
+    /**
+     * Reports whether a homeless entry should go to the stash rather than
+     * trigger growing the table.
+     *
+     * @param entries
+     *            number of entries in the table and stash
+     * @return true iff the stash has room or the table is less than half full
+     */
+    private boolean shouldStash(int entries) {
+        return this.stashSize < STASH_SIZE || 2 * entries < this.slots.length;
+    }
+
+    /**
+     * Allocates empty arrays for {@code buckets} buckets.
+     *
+     * @param buckets
+     *            number of buckets
+     * @requires buckets is a power of two and buckets >= 2
+     */
+    @SuppressWarnings("unchecked")
+    private void allocate(int buckets) {
+        this.slots = new Entry[buckets * SLOTS_PER_BUCKET];
+        this.hashes = new int[buckets * SLOTS_PER_BUCKET];
+        this.shift = Integer.SIZE - Integer.numberOfTrailingZeros(buckets);
+        this.stash = new Entry[STASH_SIZE];
+        this.stashSize = 0;
+        this.scanStart = this.slots.length;
+    }
+
+    /**
+     * Re-places every entry into a table with twice as many buckets (or more,
+     * if that is not enough).
+     */
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        Entry<K, V>[] all = new Entry[this.size];
+        int n = 0;
+        for (Entry<K, V> e : this.slots) {
+            if (e != null) {
+                all[n] = e;
+                n++;
+            }
+        }
+        for (int i = 0; i < this.stashSize; i++) {
+            all[n] = this.stash[i];
+            n++;
+        }
+        int buckets = 2 * (this.slots.length / SLOTS_PER_BUCKET);
+        boolean done = false;
+        while (!done) {
+            this.allocate(buckets);
+            done = true;
+            int i = 0;
+            while (done && i < n) {
+                Entry<K, V> homeless = this.place(all[i]);
+                if (homeless != null) {
+                    if (this.shouldStash(i + 1)) {
+                        this.pushStash(homeless);
+                    } else {
+                        done = false;
+                    }
+                }
+                i++;
+            }
+            buckets *= 2;
+        }
+    }
+
+    /**
+     * Moves stash entries back into the table where their buckets now have
+     * room.
+     */
+    private void drainStash() {
+        int i = 0;
+        while (i < this.stashSize) {
+            Entry<K, V> e = this.stash[i];
+            if (this.putInBucket(this.bucket1(e.hash), e)
+                    || this.putInBucket(this.bucket2(e.hash), e)) {
+                this.stashSize--;
+                this.stash[i] = this.stash[this.stashSize];
+                this.stash[this.stashSize] = null;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param buckets
+     *            number of buckets
+     * @requires buckets is a power of two and buckets >= 2
+     * @ensures this = {}
+     */
+    private void createNewRep(int buckets) {
+        this.allocate(buckets);
+        this.size = 0;
+        this.randomState = MULTIPLIER_1;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map6() {
+        this.createNewRep(DEFAULT_BUCKETS);
+    }
+
+    /**
+     * Constructor resulting in a table sized to hold {@code expectedSize}
+     * entries without growing.
+     *
+     * @param expectedSize
+     *            expected number of entries
+     * @requires expectedSize >= 0
+     * @ensures this = {}
+     */
+    public Map6(int expectedSize) {
+        assert expectedSize >= 0 : "Violation of: expectedSize >= 0";
+        int needed = expectedSize * LOAD_DENOMINATOR
+                / (LOAD_NUMERATOR * SLOTS_PER_BUCKET) + 1;
+        int buckets = 2;
+        while (buckets < needed) {
+            buckets *= 2;
+        }
+        this.createNewRep(buckets);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(DEFAULT_BUCKETS);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map6<?, ?> : ""
+                + "Violation of: source is of dynamic type Map6<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map6<?,?>, and
+         * the ?,? must be K,V or the call would not have compiled.
+         */
+        Map6<K, V> localSource = (Map6<K, V>) source;
+        this.slots = localSource.slots;
+        this.hashes = localSource.hashes;
+        this.shift = localSource.shift;
+        this.stash = localSource.stash;
+        this.stashSize = localSource.stashSize;
+        this.size = localSource.size;
+        this.scanStart = localSource.scanStart;
+        this.randomState = localSource.randomState;
+        localSource.createNewRep(DEFAULT_BUCKETS);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        if (LOAD_DENOMINATOR * (this.size + 1) > LOAD_NUMERATOR
+                * this.slots.length) {
+            this.grow();
+        }
+        Entry<K, V> homeless = this.place(new Entry<K, V>(key, value,
+                key.hashCode()));
+        this.size++;
+        if (homeless != null) {
+            /*
+             * Stash the homeless entry first, so that growing sees it.
+             */
+            boolean stash = this.shouldStash(this.size);
+            this.pushStash(homeless);
+            if (!stash) {
+                this.grow();
+            }
+        }
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        int hash = key.hashCode();
+        Entry<K, V> removed;
+        int slot = this.findSlot(key, hash);
+        if (slot >= 0) {
+            removed = this.slots[slot];
+            this.slots[slot] = null;
+        } else {
+            int i = this.findStash(key, hash);
+            removed = this.stash[i];
+            this.stashSize--;
+            this.stash[i] = this.stash[this.stashSize];
+            this.stash[this.stashSize] = null;
+        }
+        this.size--;
+        if (this.stashSize > 0) {
+            this.drainStash();
+        }
+        return removed;
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        Entry<K, V> removed;
+        if (this.stashSize > 0) {
+            this.stashSize--;
+            removed = this.stash[this.stashSize];
+            this.stash[this.stashSize] = null;
+        } else {
+            while (this.slots[this.scanStart] == null) {
+                this.scanStart++;
+            }
+            removed = this.slots[this.scanStart];
+            this.slots[this.scanStart] = null;
+        }
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.find(key).value;
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key) != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map6Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map6}.
+     */
+    private final class Map6Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Next slot to look at; slots past the table are stash positions.
+         */
+        private int position;
+
+        /**
+         * No-argument constructor.
+         */
+        Map6Iterator() {
+            this.numberSeen = 0;
+            this.position = Map6.this.scanStart;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map6.this.size;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            Entry<K, V>[] table = Map6.this.slots;
+            while (this.position < table.length
+                    && table[this.position] == null) {
+                this.position++;
+            }
+            Entry<K, V> next;
+            if (this.position < table.length) {
+                next = table[this.position];
+            } else {
+                next = Map6.this.stash[this.position - table.length];
+            }
+            this.position++;
+            this.numberSeen++;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,609 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map;
+import components.map.MapSecondary;
+
+/**
+ * {@code Map} represented as an open-addressing hash table in the style of a
+ * "Swiss table", with implementations of primary methods.
+ *
+ * <p>
+ * Slots are organized in groups of {@code GROUP_SIZE}. Next to the slots the
+ * table keeps one control byte per slot, packed eight to a {@code long} (one
+ * {@code long} per group): the byte is {@code EMPTY}, {@code DELETED}, or, for
+ * a full slot, 7 bits of the key's (mixed) hash code. A lookup picks a group
+ * from the remaining hash bits and compares the 7-bit fragment against all
+ * eight control bytes of the group at once with a few arithmetic operations on
+ * the {@code long} (SWAR: SIMD within a register), so only slots whose
+ * fragment matches have their keys compared; a miss usually ends at the first
+ * group containing an {@code EMPTY} byte without touching any key. Groups are
+ * probed in triangular order.
+ *
+ * @param <K>
+ *            type of {@code Map} domain (key) entries
+ * @param <V>
+ *            type of {@code Map} range (associated value) entries
+ * @convention <pre>
+ * |$this.control| is a power of two  and
+ * |$this.slots| = GROUP_SIZE * |$this.control|  and
+ * for all s: integer where (0 <= s < |$this.slots|)
+ *   (if [control byte of s is EMPTY or DELETED] then
+ *      $this.slots[s] = null
+ *    else
+ *      $this.slots[s] /= null  and
+ *      [control byte of s] = fragment(mix($this.slots[s].key.hashCode())))  and
+ * [every full slot is reached by the probe sequence of its key before any
+ *  group containing an EMPTY control byte]  and
+ * [no two entries have equal keys]  and
+ * $this.size = [number of full slots]  and
+ * $this.growthLeft = [maximum load] - $this.size - [number of DELETED slots]
+ * and
+ * for all g: integer where (0 <= g < $this.scanStart)
+ *   [group g has no full slots]
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of (key, value) pairs of the entries in $this.slots]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Map7<K, V> extends MapSecondary<K, V> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of slots per group (control bytes per {@code long}).
+     */
+    private static final int GROUP_SIZE = Long.BYTES;
+
+    /**
+     * log2 of {@code GROUP_SIZE}.
+     */
+    private static final int LOG_GROUP_SIZE = 3;
+
+    /**
+     * Control byte of an empty slot.
+     */
+    private static final long EMPTY = 0x80L;
+
+    /**
+     * Control byte of a slot whose entry was removed (a tombstone).
+     */
+    private static final long DELETED = 0xFEL;
+
+    /**
+     * Mask of one control byte.
+     */
+    private static final long BYTE_MASK = 0xFFL;
+
+    /**
+     * Number of hash bits stored in a control byte.
+     */
+    private static final int FRAGMENT_BITS = 7;
+
+    /**
+     * Mask of the hash bits stored in a control byte.
+     */
+    private static final int FRAGMENT_MASK = (1 << FRAGMENT_BITS) - 1;
+
+    /**
+     * The low bit of every byte of a group.
+     */
+    private static final long LSBS = 0x0101010101010101L;
+
+    /**
+     * The high bit of every byte of a group.
+     */
+    private static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * Group word with every control byte {@code EMPTY}.
+     */
+    private static final long ALL_EMPTY = EMPTY * LSBS;
+
+    /**
+     * Shift lining up bit 1 of each byte with its high bit.
+     */
+    private static final int EMPTY_SHIFT = 6;
+
+    /**
+     * Default number of groups (a power of two).
+     */
+    private static final int DEFAULT_GROUPS = 2;
+
+    /**
+     * Maximum load, as a fraction {@code LOAD_NUMERATOR / GROUP_SIZE} of the
+     * slots.
+     */
+    private static final int LOAD_NUMERATOR = 7;
+
+    /**
+     * Multiplier used to mix hash codes.
+     */
+    private static final int MIX = 0x9E3779B9;
+
+    /**
+     * Table entry: a (key, value) pair.
+     */
+    private static final class Entry<K, V> implements Pair<K, V> {
+
+        /**
+         * Key.
+         */
+        private final K key;
+
+        /**
+         * Value.
+         */
+        private final V value;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         */
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * Control bytes, {@code GROUP_SIZE} per {@code long}; byte i of a group is
+     * bits [8i, 8i + 8) of its {@code long}.
+     */
+    private long[] control;
+
+    /**
+     * Entries, indexed by slot.
+     */
+    private Entry<K, V>[] slots;
+
+    /**
+     * Total size of abstract {@code this}.
+     */
+    private int size;
+
+    /**
+     * Number of insertions into EMPTY slots left before the table must be
+     * rebuilt.
+     */
+    private int growthLeft;
+
+    /**
+     * Every group before this index has no full slots.
+     */
+    private int scanStart;
+
+    /**
+     * Mixes a hash code so that both its fragment and its group index depend
+     * on all of its bits.
+     *
+     * @param hashCode
+     *            the key's hash code
+     * @return the mixed hash
+     */
+    private static int mix(int hashCode) {
+        int h = hashCode * MIX;
+        return h ^ (h >>> (Integer.SIZE / 2));
+    }
+
+    /**
+     * Returns a mask with the high bit set in each byte of {@code group} equal
+     * to {@code fragment} (and possibly in some bytes above such a byte).
+     *
+     * @param group
+     *            the group's control bytes
+     * @param fragment
+     *            the 7-bit fragment
+     * @return the match mask
+     */
+    private static long matchFragment(long group, int fragment) {
+        long x = group ^ (LSBS * fragment);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Returns a mask with the high bit set in each {@code EMPTY} byte of
+     * {@code group}.
+     *
+     * @param group
+     *            the group's control bytes
+     * @return the match mask
+     */
+    private static long matchEmpty(long group) {
+        return group & (~group << EMPTY_SHIFT) & MSBS;
+    }
+
+    /**
+     * Returns a mask with the high bit set in each {@code EMPTY} or
+     * {@code DELETED} byte of {@code group}.
+     *
+     * @param group
+     *            the group's control bytes
+     * @return the match mask
+     */
+    private static long matchEmptyOrDeleted(long group) {
+        return group & MSBS;
+    }
+
+    /**
+     * Returns the lane (byte index) of the lowest bit set in {@code mask}.
+     *
+     * @param mask
+     *            a non-zero match mask
+     * @return the lane
+     */
+    private static int lowestLane(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> LOG_GROUP_SIZE;
+    }
+
+    /**
+     * Sets the control byte of slot {@code slot} to {@code value}.
+     *
+     * @param slot
+     *            the slot
+     * @param value
+     *            the control byte
+     */
+    private void setControl(int slot, long value) {
+        int g = slot >>> LOG_GROUP_SIZE;
+        int shift = (slot & (GROUP_SIZE - 1)) << LOG_GROUP_SIZE;
+        this.control[g] = (this.control[g] & ~(BYTE_MASK << shift))
+                | (value << shift);
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or -1.
+     *
+     * @param key
+     *            the key
+     * @return the slot or -1
+     */
+    private int findSlot(K key) {
+        int h = mix(key.hashCode());
+        int fragment = h & FRAGMENT_MASK;
+        int groupMask = this.control.length - 1;
+        int g = (h >>> FRAGMENT_BITS) & groupMask;
+        int slot = -1;
+        boolean done = false;
+        int step = 0;
+        while (!done) {
+            long group = this.control[g];
+            long m = matchFragment(group, fragment);
+            while (m != 0 && slot < 0) {
+                int s = (g << LOG_GROUP_SIZE) + lowestLane(m);
+                if (this.slots[s] != null && this.slots[s].key.equals(key)) {
+                    slot = s;
+                }
+                m &= m - 1;
+            }
+            done = slot >= 0 || matchEmpty(group) != 0;
+            step++;
+            g = (g + step) & groupMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the first EMPTY or DELETED slot on the probe sequence for a key
+     * whose mixed hash is {@code h}.
+     *
+     * @param h
+     *            the mixed hash
+     * @return the slot
+     * @requires [the table has an EMPTY slot]
+     */
+    private int findInsertSlot(int h) {
+        int groupMask = this.control.length - 1;
+        int g = (h >>> FRAGMENT_BITS) & groupMask;
+        long m = matchEmptyOrDeleted(this.control[g]);
+        int step = 0;
+        while (m == 0) {
+            step++;
+            g = (g + step) & groupMask;
+            m = matchEmptyOrDeleted(this.control[g]);
+        }
+        return (g << LOG_GROUP_SIZE) + lowestLane(m);
+    }
+
+    /**
+     * Puts {@code e} into the table, which must have room for it.
+     *
+     * @param e
+     *            the entry
+     * @requires $this.growthLeft > 0 and e.key is not in this
+     */
+    private void insert(Entry<K, V> e) {
+        int h = mix(e.key.hashCode());
+        int slot = this.findInsertSlot(h);
+        int lane = slot & (GROUP_SIZE - 1);
+        long old = (this.control[slot >>> LOG_GROUP_SIZE] >>> (lane
+                << LOG_GROUP_SIZE)) & BYTE_MASK;
+        if (old == EMPTY) {
+            this.growthLeft--;
+        }
+        this.setControl(slot, h & FRAGMENT_MASK);
+        this.slots[slot] = e;
+        this.scanStart = Math.min(this.scanStart, slot >>> LOG_GROUP_SIZE);
+    }
+
+    /**
+     * Allocates an all-EMPTY table of {@code groups} groups.
+     *
+     * @param groups
+     *            number of groups
+     * @requires groups is a power of two
+     */
+    @SuppressWarnings("unchecked")
+    private void allocate(int groups) {
+        this.control = new long[groups];
+        Arrays.fill(this.control, ALL_EMPTY);
+        this.slots = new Entry[groups * GROUP_SIZE];
+        this.growthLeft = groups * LOAD_NUMERATOR;
+        this.scanStart = groups;
+    }
+
+    /**
+     * Rebuilds the table without tombstones, doubling it if it is more than
+     * half full.
+     */
+    private void rehash() {
+        Entry<K, V>[] old = this.slots;
+        int groups = this.control.length;
+        if (2 * this.size >= groups * LOAD_NUMERATOR) {
+            groups *= 2;
+        }
+        this.allocate(groups);
+        for (Entry<K, V> e : old) {
+            if (e != null) {
+                this.insert(e);
+            }
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param groups
+     *            number of groups
+     * @requires groups is a power of two
+     * @ensures this = {}
+     */
+    private void createNewRep(int groups) {
+        this.allocate(groups);
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Map7() {
+        this.createNewRep(DEFAULT_GROUPS);
+    }
+
+    /**
+     * Constructor resulting in a table sized to hold {@code expectedSize}
+     * entries without growing.
+     *
+     * @param expectedSize
+     *            expected number of entries
+     * @requires expectedSize >= 0
+     * @ensures this = {}
+     */
+    public Map7(int expectedSize) {
+        assert expectedSize >= 0 : "Violation of: expectedSize >= 0";
+        int groups = 1;
+        while (groups * LOAD_NUMERATOR < expectedSize) {
+            groups *= 2;
+        }
+        this.createNewRep(groups);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Map<K, V> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(DEFAULT_GROUPS);
+    }
+
+    @Override
+    public final void transferFrom(Map<K, V> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Map7<?, ?> : ""
+                + "Violation of: source is of dynamic type Map7<?,?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Map7<?,?>, and
+         * the ?,? must be K,V or the call would not have compiled.
+         */
+        Map7<K, V> localSource = (Map7<K, V>) source;
+        this.control = localSource.control;
+        this.slots = localSource.slots;
+        this.size = localSource.size;
+        this.growthLeft = localSource.growthLeft;
+        this.scanStart = localSource.scanStart;
+        localSource.createNewRep(DEFAULT_GROUPS);
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+        assert !this.hasKey(key) : "Violation of: key is not in DOMAIN(this)";
+
+        if (this.growthLeft == 0) {
+            this.rehash();
+        }
+        this.insert(new Entry<K, V>(key, value));
+        this.size++;
+    }
+
+    @Override
+    public final Pair<K, V> remove(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        int slot = this.findSlot(key);
+        Entry<K, V> removed = this.slots[slot];
+        this.slots[slot] = null;
+        /*
+         * A probe only continues past a group with no EMPTY byte, so if this
+         * group has one, no other key depends on this slot looking occupied.
+         */
+        if (matchEmpty(this.control[slot >>> LOG_GROUP_SIZE]) != 0) {
+            this.setControl(slot, EMPTY);
+            this.growthLeft++;
+        } else {
+            this.setControl(slot, DELETED);
+        }
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final Pair<K, V> removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        long full = ~this.control[this.scanStart] & MSBS;
+        while (full == 0) {
+            this.scanStart++;
+            full = ~this.control[this.scanStart] & MSBS;
+        }
+        int slot = (this.scanStart << LOG_GROUP_SIZE) + lowestLane(full);
+        return this.remove(this.slots[slot].key);
+    }
+
+    @Override
+    public final V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.slots[this.findSlot(key)].value;
+    }
+
+    @Override
+    public final boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.findSlot(key) >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<Pair<K, V>> iterator() {
+        return new Map7Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Map7}.
+     */
+    private final class Map7Iterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Number of elements seen already (i.e., |~this.seen|).
+         */
+        private int numberSeen;
+
+        /**
+         * Group from which the next element will come.
+         */
+        private int group;
+
+        /**
+         * Full lanes of {@code group} not yet visited.
+         */
+        private long full;
+
+        /**
+         * No-argument constructor.
+         */
+        Map7Iterator() {
+            this.numberSeen = 0;
+            this.group = Map7.this.scanStart;
+            this.full = 0;
+            if (this.group < Map7.this.control.length) {
+                this.full = ~Map7.this.control[this.group] & MSBS;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < Map7.this.size;
+        }
+
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            while (this.full == 0) {
+                this.group++;
+                this.full = ~Map7.this.control[this.group] & MSBS;
+            }
+            int slot = (this.group << LOG_GROUP_SIZE) + lowestLane(this.full);
+            this.full &= this.full - 1;
+            this.numberSeen++;
+            return Map7.this.slots[slot];
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
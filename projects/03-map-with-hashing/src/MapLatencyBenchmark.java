@@ -0,0 +1,166 @@
+import java.util.Arrays;
+import java.util.Random;
+
+import components.map.Map;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Measures the latency distribution (median, p99, p999, max) of individual
+ * {@code hasKey} and {@code value} calls on {@code String}-keyed maps, to
+ * compare the tails of the hashing {@code Map} implementations against
+ * {@code Map4}. Run with assertions disabled.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class MapLatencyBenchmark {
+
+    /**
+     * Number of entries in each benchmarked map.
+     */
+    private static final int ENTRIES = 200_000;
+
+    /**
+     * Size of the hash table used for {@code Map4} (about one entry per
+     * bucket, which is its best case).
+     */
+    private static final int MAP4_HASH_TABLE_SIZE = 200_003;
+
+    /**
+     * Number of timed lookups per map and operation.
+     */
+    private static final int LOOKUPS = 1_000_000;
+
+    /**
+     * Number of untimed warm-up lookups per map.
+     */
+    private static final int WARM_UP = 2_000_000;
+
+    /**
+     * Percentiles reported, in tenths of a percent.
+     */
+    private static final int[] PER_MILLE = { 500, 990, 999 };
+
+    /**
+     * Labels of the percentiles in {@code PER_MILLE}.
+     */
+    private static final String[] LABELS = { "p50", "p99", "p99.9" };
+
+    /**
+     * Number of tenths of a percent in the whole.
+     */
+    private static final int WHOLE = 1000;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private MapLatencyBenchmark() {
+    }
+
+    /**
+     * Returns the benchmark keys: {@code ENTRIES} present keys followed by as
+     * many absent ones.
+     *
+     * @return the keys
+     */
+    private static String[] keys() {
+        String[] keys = new String[2 * ENTRIES];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "customer/" + i + "/order";
+        }
+        return keys;
+    }
+
+    /**
+     * Reports the percentiles of {@code nanos} on {@code out}.
+     *
+     * @param out
+     *            the output stream
+     * @param label
+     *            the line label
+     * @param nanos
+     *            the measured latencies
+     * @updates out, nanos
+     */
+    private static void report(SimpleWriter out, String label, long[] nanos) {
+        Arrays.sort(nanos);
+        StringBuilder line = new StringBuilder(
+                String.format("  %-22s", label));
+        for (int i = 0; i < PER_MILLE.length; i++) {
+            line.append(String.format("  %-5s %6d ns", LABELS[i],
+                    nanos[(int) ((long) nanos.length * PER_MILLE[i] / WHOLE)]));
+        }
+        line.append(String.format("  max %8d ns", nanos[nanos.length - 1]));
+        out.println(line.toString());
+    }
+
+    /**
+     * Fills {@code map} with the present keys and reports the latencies of
+     * {@code hasKey} (half hits, half misses) and {@code value} on
+     * {@code out}.
+     *
+     * @param out
+     *            the output stream
+     * @param name
+     *            the name of the implementation
+     * @param map
+     *            an empty map of the implementation
+     * @param keys
+     *            the keys, as returned by {@code keys}
+     * @updates map, out
+     */
+    private static void measure(SimpleWriter out, String name,
+            Map<String, String> map, String[] keys) {
+        for (int i = 0; i < ENTRIES; i++) {
+            map.add(keys[i], keys[i]);
+        }
+        Random random = new Random(0);
+        int sink = 0;
+        for (int i = 0; i < WARM_UP; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            if (map.hasKey(key)) {
+                sink += map.value(key).length();
+            }
+        }
+
+        long[] hasKeyNanos = new long[LOOKUPS];
+        long[] valueNanos = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            String key = keys[random.nextInt(keys.length)];
+            long start = System.nanoTime();
+            boolean found = map.hasKey(key);
+            hasKeyNanos[i] = System.nanoTime() - start;
+            if (found) {
+                sink++;
+            }
+            key = keys[random.nextInt(ENTRIES)];
+            start = System.nanoTime();
+            String value = map.value(key);
+            valueNanos[i] = System.nanoTime() - start;
+            sink += value.length();
+        }
+        report(out, name + " hasKey", hasKeyNanos);
+        report(out, name + " value", valueNanos);
+        out.println("  (checksum " + sink + ")");
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        String[] keys = keys();
+        out.println(ENTRIES + " String keys, " + LOOKUPS
+                + " timed lookups per operation");
+        measure(out, "Map4", new Map4<String, String>(MAP4_HASH_TABLE_SIZE),
+                keys);
+        measure(out, "Map6 (cuckoo)", new Map6<String, String>(), keys);
+        measure(out, "Map7 (swiss)", new Map7<String, String>(), keys);
+        out.close();
+    }
+
+}
@@ -0,0 +1,787 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.map.Map.Pair;
+
+/**
+ * Immutable map represented as a hash array mapped trie. Updates return a new
+ * {@code PersistentMap} that shares every trie node not on the path to the
+ * updated key with the original, so an update costs O(log32 n) time and space
+ * and keeping an old version around (a snapshot) costs nothing.
+ *
+ * <p>
+ * Each trie level consumes five bits of {@code key.hashCode()}; a node keeps a
+ * 32-bit bitmap of which of its 32 possible children are present and stores
+ * only those, in a compact array. Keys whose hash codes are equal in all 32
+ * bits share a collision node.
+ *
+ * @param <K>
+ *            type of {@code PersistentMap} domain (key) entries
+ * @param <V>
+ *            type of {@code PersistentMap} range (associated value) entries
+ * @convention <pre>
+ * [$this.root is null iff $this.size = 0]  and
+ * [every entry in the trie rooted at $this.root is on the path selected by
+ *  the 5-bit fragments of its hash, and hash = key.hashCode()]  and
+ * [no two entries in the trie have equal keys]  and
+ * [no node other than $this.root holds a single entry and no children]  and
+ * $this.size = [number of entries in the trie rooted at $this.root]
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of (key, value) pairs of the entries in the trie rooted at
+ *         $this.root]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class PersistentMap<K, V> implements Iterable<Pair<K, V>> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of hash bits consumed per trie level.
+     */
+    private static final int BITS_PER_LEVEL = 5;
+
+    /**
+     * Mask selecting one level's hash fragment.
+     */
+    private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+    /**
+     * Largest possible trie depth (levels of bitmap nodes, plus one).
+     */
+    private static final int MAX_DEPTH = Integer.SIZE / BITS_PER_LEVEL + 2;
+
+    /**
+     * The empty map.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentMap EMPTY = new PersistentMap<>(null, 0);
+
+    /**
+     * Immutable (key, value) entry with cached hash code.
+     */
+    private static final class Entry<K, V> implements Pair<K, V> {
+
+        /**
+         * Key.
+         */
+        private final K key;
+
+        /**
+         * Value.
+         */
+        private final V value;
+
+        /**
+         * Cached {@code key.hashCode()}.
+         */
+        private final int hash;
+
+        /**
+         * Constructor.
+         *
+         * @param key
+         *            the key
+         * @param value
+         *            the value
+         * @param hash
+         *            the hash code of {@code key}
+         */
+        Entry(K key, V value, int hash) {
+            this.key = key;
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public K key() {
+            return this.key;
+        }
+
+        @Override
+        public V value() {
+            return this.value;
+        }
+
+    }
+
+    /**
+     * Immutable trie node.
+     */
+    private abstract static class Node<K, V> {
+
+        /**
+         * Returns the entry with key {@code key}, or null if there is none.
+         *
+         * @param key
+         *            the key
+         * @param hash
+         *            the hash code of {@code key}
+         * @param shift
+         *            number of hash bits consumed above this node
+         * @return the entry or null
+         */
+        abstract Entry<K, V> find(K key, int hash, int shift);
+
+        /**
+         * Returns a node like this one but with {@code e} added, or replacing
+         * the entry with the same key.
+         *
+         * @param e
+         *            the entry to add
+         * @param shift
+         *            number of hash bits consumed above this node
+         * @return the new node
+         */
+        abstract Node<K, V> with(Entry<K, V> e, int shift);
+
+        /**
+         * Returns a node like this one but without the entry with key
+         * {@code key}, or null if that would leave the node empty.
+         *
+         * @param key
+         *            the key
+         * @param hash
+         *            the hash code of {@code key}
+         * @param shift
+         *            number of hash bits consumed above this node
+         * @return the new node, or null
+         * @requires [key is in this node]
+         */
+        abstract Node<K, V> without(K key, int hash, int shift);
+
+        /**
+         * Returns the only entry of this node, if it holds exactly one entry
+         * and no children, or null otherwise.
+         *
+         * @return the single entry or null
+         */
+        abstract Entry<K, V> singleEntry();
+
+        /**
+         * Returns the number of slots (entries and children) of this node.
+         *
+         * @return the slot count
+         */
+        abstract int slotCount();
+
+        /**
+         * Returns slot {@code i}, either an {@code Entry} or a {@code Node}.
+         *
+         * @param i
+         *            the slot index
+         * @return the slot contents
+         * @requires 0 <= i < slotCount()
+         */
+        abstract Object slot(int i);
+
+    }
+
+    /**
+     * Node with up to 32 slots selected by a bitmap of hash fragments.
+     */
+    private static final class BitmapNode<K, V> extends Node<K, V> {
+
+        /**
+         * Bit i is set iff the fragment value i has a slot.
+         */
+        private final int bitmap;
+
+        /**
+         * Slots ({@code Entry} or {@code Node}) in fragment order.
+         */
+        private final Object[] slots;
+
+        /**
+         * Constructor.
+         *
+         * @param bitmap
+         *            the bitmap
+         * @param slots
+         *            the slots, one per set bit of {@code bitmap}
+         */
+        BitmapNode(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        /**
+         * Returns a node holding {@code e1} and {@code e2} below
+         * {@code shift} bits.
+         *
+         * @param <K>
+         *            type of keys
+         * @param <V>
+         *            type of values
+         * @param e1
+         *            one entry
+         * @param e2
+         *            another entry, with a different key
+         * @param shift
+         *            number of hash bits consumed above the new node
+         * @return the new node
+         */
+        static <K, V> Node<K, V> of(Entry<K, V> e1, Entry<K, V> e2,
+                int shift) {
+            Node<K, V> node;
+            if (e1.hash == e2.hash) {
+                @SuppressWarnings("unchecked")
+                Entry<K, V>[] both = new Entry[] { e1, e2 };
+                node = new CollisionNode<K, V>(e1.hash, both);
+            } else {
+                int f1 = (e1.hash >>> shift) & LEVEL_MASK;
+                int f2 = (e2.hash >>> shift) & LEVEL_MASK;
+                if (f1 == f2) {
+                    node = new BitmapNode<K, V>(1 << f1, new Object[] {
+                            of(e1, e2, shift + BITS_PER_LEVEL) });
+                } else if (f1 < f2) {
+                    node = new BitmapNode<K, V>((1 << f1) | (1 << f2),
+                            new Object[] { e1, e2 });
+                } else {
+                    node = new BitmapNode<K, V>((1 << f1) | (1 << f2),
+                            new Object[] { e2, e1 });
+                }
+            }
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Entry<K, V> find(K key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+            Entry<K, V> result = null;
+            if ((this.bitmap & bit) != 0) {
+                Object s = this.slots[Integer.bitCount(this.bitmap & (bit - 1))];
+                if (s instanceof Entry) {
+                    Entry<K, V> e = (Entry<K, V>) s;
+                    if (e.hash == hash && e.key.equals(key)) {
+                        result = e;
+                    }
+                } else {
+                    result = ((Node<K, V>) s).find(key, hash,
+                            shift + BITS_PER_LEVEL);
+                }
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> with(Entry<K, V> e, int shift) {
+            int bit = 1 << ((e.hash >>> shift) & LEVEL_MASK);
+            int index = Integer.bitCount(this.bitmap & (bit - 1));
+            Node<K, V> result;
+            if ((this.bitmap & bit) == 0) {
+                Object[] copy = new Object[this.slots.length + 1];
+                System.arraycopy(this.slots, 0, copy, 0, index);
+                copy[index] = e;
+                System.arraycopy(this.slots, index, copy, index + 1,
+                        this.slots.length - index);
+                result = new BitmapNode<K, V>(this.bitmap | bit, copy);
+            } else {
+                Object s = this.slots[index];
+                Object replacement;
+                if (s instanceof Entry) {
+                    Entry<K, V> old = (Entry<K, V>) s;
+                    if (old.hash == e.hash && old.key.equals(e.key)) {
+                        replacement = e;
+                    } else {
+                        replacement = of(old, e, shift + BITS_PER_LEVEL);
+                    }
+                } else {
+                    replacement = ((Node<K, V>) s).with(e,
+                            shift + BITS_PER_LEVEL);
+                }
+                Object[] copy = this.slots.clone();
+                copy[index] = replacement;
+                result = new BitmapNode<K, V>(this.bitmap, copy);
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> without(K key, int hash, int shift) {
+            int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+            int index = Integer.bitCount(this.bitmap & (bit - 1));
+            Object s = this.slots[index];
+            Object replacement = null;
+            if (s instanceof Node) {
+                Node<K, V> child = ((Node<K, V>) s).without(key, hash,
+                        shift + BITS_PER_LEVEL);
+                if (child != null) {
+                    replacement = child;
+                    Entry<K, V> single = child.singleEntry();
+                    if (single != null) {
+                        replacement = single;
+                    }
+                }
+            }
+            Node<K, V> result;
+            if (replacement != null) {
+                Object[] copy = this.slots.clone();
+                copy[index] = replacement;
+                result = new BitmapNode<K, V>(this.bitmap, copy);
+            } else if (this.slots.length == 1) {
+                result = null;
+            } else {
+                Object[] copy = new Object[this.slots.length - 1];
+                System.arraycopy(this.slots, 0, copy, 0, index);
+                System.arraycopy(this.slots, index + 1, copy, index,
+                        copy.length - index);
+                result = new BitmapNode<K, V>(this.bitmap & ~bit, copy);
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Entry<K, V> singleEntry() {
+            Entry<K, V> result = null;
+            if (this.slots.length == 1 && this.slots[0] instanceof Entry) {
+                result = (Entry<K, V>) this.slots[0];
+            }
+            return result;
+        }
+
+        @Override
+        int slotCount() {
+            return this.slots.length;
+        }
+
+        @Override
+        Object slot(int i) {
+            return this.slots[i];
+        }
+
+    }
+
+    /**
+     * Node holding entries whose keys have equal hash codes.
+     */
+    private static final class CollisionNode<K, V> extends Node<K, V> {
+
+        /**
+         * The hash code shared by all entries.
+         */
+        private final int hash;
+
+        /**
+         * The entries, at least two of them.
+         */
+        private final Entry<K, V>[] entries;
+
+        /**
+         * Constructor.
+         *
+         * @param hash
+         *            the shared hash code
+         * @param entries
+         *            the entries
+         */
+        CollisionNode(int hash, Entry<K, V>[] entries) {
+            this.hash = hash;
+            this.entries = entries;
+        }
+
+        /**
+         * Returns the index of the entry with key {@code key}, or -1.
+         *
+         * @param key
+         *            the key
+         * @return the index or -1
+         */
+        private int indexOf(K key) {
+            int i = this.entries.length - 1;
+            while (i >= 0 && !this.entries[i].key.equals(key)) {
+                i--;
+            }
+            return i;
+        }
+
+        @Override
+        Entry<K, V> find(K key, int keyHash, int shift) {
+            Entry<K, V> result = null;
+            if (keyHash == this.hash) {
+                int i = this.indexOf(key);
+                if (i >= 0) {
+                    result = this.entries[i];
+                }
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> with(Entry<K, V> e, int shift) {
+            Node<K, V> result;
+            if (e.hash != this.hash) {
+                /*
+                 * Push this node one level down, next to the new entry.
+                 */
+                int bit = 1 << ((this.hash >>> shift) & LEVEL_MASK);
+                result = new BitmapNode<K, V>(bit, new Object[] { this })
+                        .with(e, shift);
+            } else {
+                int i = this.indexOf(e.key);
+                Entry<K, V>[] copy;
+                if (i >= 0) {
+                    copy = this.entries.clone();
+                    copy[i] = e;
+                } else {
+                    copy = new Entry[this.entries.length + 1];
+                    System.arraycopy(this.entries, 0, copy, 0,
+                            this.entries.length);
+                    copy[this.entries.length] = e;
+                }
+                result = new CollisionNode<K, V>(this.hash, copy);
+            }
+            return result;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        Node<K, V> without(K key, int keyHash, int shift) {
+            int i = this.indexOf(key);
+            Entry<K, V>[] copy = new Entry[this.entries.length - 1];
+            System.arraycopy(this.entries, 0, copy, 0, i);
+            System.arraycopy(this.entries, i + 1, copy, i, copy.length - i);
+            return new CollisionNode<K, V>(this.hash, copy);
+        }
+
+        @Override
+        Entry<K, V> singleEntry() {
+            Entry<K, V> result = null;
+            if (this.entries.length == 1) {
+                result = this.entries[0];
+            }
+            return result;
+        }
+
+        @Override
+        int slotCount() {
+            return this.entries.length;
+        }
+
+        @Override
+        Object slot(int i) {
+            return this.entries[i];
+        }
+
+    }
+
+    /**
+     * Root of the trie, or null if this is empty.
+     */
+    private final Node<K, V> root;
+
+    /**
+     * Number of entries.
+     */
+    private final int size;
+
+    /**
+     * Constructor from representation.
+     *
+     * @param root
+     *            the root of the trie, or null
+     * @param size
+     *            the number of entries in the trie
+     */
+    private PersistentMap(Node<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the entry with key {@code key}, or null if there is none.
+     *
+     * @param key
+     *            the key
+     * @return the entry or null
+     */
+    private Entry<K, V> find(K key) {
+        Entry<K, V> result = null;
+        if (this.root != null) {
+            result = this.root.find(key, key.hashCode(), 0);
+        }
+        return result;
+    }
+
+    /*
+     * Factory ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the empty {@code PersistentMap}.
+     *
+     * @param <K>
+     *            type of keys
+     * @param <V>
+     *            type of values
+     * @return the empty map
+     * @ensures empty = {}
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /*
+     * Functional update methods ----------------------------------------------
+     */
+
+    /**
+     * Returns a map like {@code this} except that {@code key} is associated
+     * with {@code value}. {@code this} is not changed.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @return the updated map
+     * @requires key is not null and value is not null
+     * @ensures <pre>
+     * with = (this \ {(key, this(key))}) union {(key, value)}
+     * </pre>
+     */
+    public PersistentMap<K, V> with(K key, V value) {
+        assert key != null : "Violation of: key is not null";
+        assert value != null : "Violation of: value is not null";
+
+        int hash = key.hashCode();
+        Entry<K, V> e = new Entry<K, V>(key, value, hash);
+        PersistentMap<K, V> result;
+        if (this.root == null) {
+            result = new PersistentMap<K, V>(new BitmapNode<K, V>(
+                    1 << (hash & LEVEL_MASK), new Object[] { e }), 1);
+        } else {
+            int newSize = this.size;
+            if (this.root.find(key, hash, 0) == null) {
+                newSize++;
+            }
+            result = new PersistentMap<K, V>(this.root.with(e, 0), newSize);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a map like {@code this} except that {@code key} is not in its
+     * domain. {@code this} is not changed.
+     *
+     * @param key
+     *            the key
+     * @return the updated map
+     * @requires key is in DOMAIN(this)
+     * @ensures without = this \ {(key, this(key))}
+     */
+    public PersistentMap<K, V> without(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        Node<K, V> newRoot = this.root.without(key, key.hashCode(), 0);
+        PersistentMap<K, V> result;
+        if (newRoot == null) {
+            result = empty();
+        } else {
+            result = new PersistentMap<K, V>(newRoot, this.size - 1);
+        }
+        return result;
+    }
+
+    /*
+     * Read methods -----------------------------------------------------------
+     */
+
+    /**
+     * Reports the value associated with {@code key} in {@code this}.
+     *
+     * @param key
+     *            the key whose associated value is to be reported
+     * @return the value associated with key
+     * @requires key is in DOMAIN(this)
+     * @ensures (key, value) is in this
+     */
+    public V value(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.find(key).value;
+    }
+
+    /**
+     * Reports the pair in {@code this} whose first component is {@code key}.
+     *
+     * @param key
+     *            the key whose pair is to be reported
+     * @return the pair with first component key
+     * @requires key is in DOMAIN(this)
+     * @ensures pair is in this  and  pair.key = key
+     */
+    public Pair<K, V> pair(K key) {
+        assert key != null : "Violation of: key is not null";
+        assert this.hasKey(key) : "Violation of: key is in DOMAIN(this)";
+
+        return this.find(key);
+    }
+
+    /**
+     * Reports whether there is a pair in {@code this} whose first component is
+     * {@code key}.
+     *
+     * @param key
+     *            the key to be checked
+     * @return true iff there is a pair in this whose first component is key
+     * @ensures hasKey = (key is in DOMAIN(this))
+     */
+    public boolean hasKey(K key) {
+        assert key != null : "Violation of: key is not null";
+
+        return this.find(key) != null;
+    }
+
+    /**
+     * Reports whether there is a pair in {@code this} whose second component
+     * is {@code value}.
+     *
+     * @param value
+     *            the value to be checked
+     * @return true iff there is a pair in this whose second component is value
+     * @ensures hasValue = (value is in RANGE(this))
+     */
+    public boolean hasValue(V value) {
+        assert value != null : "Violation of: value is not null";
+
+        boolean found = false;
+        Iterator<Pair<K, V>> it = this.iterator();
+        while (!found && it.hasNext()) {
+            found = it.next().value().equals(value);
+        }
+        return found;
+    }
+
+    /**
+     * Reports the size of {@code this}.
+     *
+     * @return the number of (key, value) pairs in this
+     * @ensures size = |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<Pair<K, V>> iterator() {
+        return new PersistentMapIterator();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        boolean first = true;
+        for (Pair<K, V> p : this) {
+            if (!first) {
+                result.append(",");
+            }
+            result.append("(").append(p.key()).append(",").append(p.value())
+                    .append(")");
+            first = false;
+        }
+        return result.append("}").toString();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code PersistentMap},
+     * walking the trie depth-first with an explicit stack of (node, next slot)
+     * positions.
+     */
+    private final class PersistentMapIterator implements Iterator<Pair<K, V>> {
+
+        /**
+         * Nodes on the path from the root to the current node.
+         */
+        private final Object[] nodes;
+
+        /**
+         * Next slot to visit in each node of {@code nodes}.
+         */
+        private final int[] positions;
+
+        /**
+         * Index of the top of the stack, or -1 if it is empty.
+         */
+        private int top;
+
+        /**
+         * Number of elements seen already.
+         */
+        private int numberSeen;
+
+        /**
+         * No-argument constructor.
+         */
+        PersistentMapIterator() {
+            this.nodes = new Object[MAX_DEPTH];
+            this.positions = new int[MAX_DEPTH];
+            this.top = -1;
+            if (PersistentMap.this.root != null) {
+                this.top = 0;
+                this.nodes[0] = PersistentMap.this.root;
+            }
+            this.numberSeen = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.numberSeen < PersistentMap.this.size;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Pair<K, V> next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            Entry<K, V> next = null;
+            while (next == null) {
+                Node<K, V> node = (Node<K, V>) this.nodes[this.top];
+                int pos = this.positions[this.top];
+                if (pos == node.slotCount()) {
+                    this.nodes[this.top] = null;
+                    this.top--;
+                } else {
+                    this.positions[this.top] = pos + 1;
+                    Object s = node.slot(pos);
+                    if (s instanceof Entry) {
+                        next = (Entry<K, V>) s;
+                    } else {
+                        this.top++;
+                        this.nodes[this.top] = s;
+                        this.positions[this.top] = 0;
+                    }
+                }
+            }
+            this.numberSeen++;
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,177 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map.Pair;
+
+/**
+ * JUnit test fixture for {@code Cache4}.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Cache4Test {
+
+    /**
+     * Capacity used by the admission tests.
+     */
+    private static final int ADMISSION_CAPACITY = 100;
+
+    /**
+     * Tests that a cached value is returned and counted as a hit.
+     */
+    @Test
+    public void testGetHit() {
+        Cache4<String, String> cache = new Cache4<String, String>(2);
+        cache.put("a", "1");
+        assertEquals("1", cache.get("a"));
+        assertEquals(1, cache.hits());
+        assertEquals(0, cache.misses());
+    }
+
+    /**
+     * Tests that a missing key returns null and is counted as a miss.
+     */
+    @Test
+    public void testGetMiss() {
+        Cache4<String, String> cache = new Cache4<String, String>(2);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    /**
+     * Tests that putting an existing key replaces its value without growing.
+     */
+    @Test
+    public void testPutReplaces() {
+        Cache4<String, String> cache = new Cache4<String, String>(2);
+        cache.put("a", "1");
+        cache.put("a", "2");
+        assertEquals(1, cache.size());
+        assertEquals("2", cache.get("a"));
+    }
+
+    /**
+     * Tests that the least recently used entry is evicted first.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        Cache4<String, String> cache = new Cache4<String, String>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertTrue(cache.hasKey("a"));
+        assertFalse(cache.hasKey("b"));
+        assertTrue(cache.hasKey("c"));
+        assertEquals(1, cache.evictions());
+    }
+
+    /**
+     * Tests that the size never exceeds the capacity.
+     */
+    @Test
+    public void testSizeBoundedByCapacity() {
+        Cache4<Integer, Integer> cache = new Cache4<Integer, Integer>(3);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(7, cache.evictions());
+    }
+
+    /**
+     * Tests removing an entry.
+     */
+    @Test
+    public void testRemove() {
+        Cache4<String, String> cache = new Cache4<String, String>(2);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        Pair<String, String> p = cache.remove("a");
+        assertEquals("a", p.key());
+        assertEquals("1", p.value());
+        assertEquals(1, cache.size());
+        assertFalse(cache.hasKey("a"));
+        assertEquals(0, cache.evictions());
+    }
+
+    /**
+     * Tests that clear empties the cache and resets the counters.
+     */
+    @Test
+    public void testClear() {
+        Cache4<String, String> cache = new Cache4<String, String>(1);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("b");
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.hits());
+        assertEquals(0, cache.evictions());
+    }
+
+    /**
+     * Tests that with admission a scan of one-off keys does not flush keys
+     * that are requested often.
+     */
+    @Test
+    public void testAdmissionResistsScan() {
+        Cache4<Integer, Integer> cache = new Cache4<Integer, Integer>(
+                ADMISSION_CAPACITY, true);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < ADMISSION_CAPACITY; i++) {
+                cache.put(i, i);
+                cache.get(i);
+            }
+        }
+        for (int i = ADMISSION_CAPACITY; i < 10 * ADMISSION_CAPACITY; i++) {
+            cache.put(i, i);
+        }
+        int kept = 0;
+        for (int i = 0; i < ADMISSION_CAPACITY; i++) {
+            if (cache.hasKey(i)) {
+                kept++;
+            }
+        }
+        assertTrue(kept >= ADMISSION_CAPACITY - 2);
+        assertTrue(cache.size() <= ADMISSION_CAPACITY);
+    }
+
+    /**
+     * Tests that a plain LRU cache is flushed by the same scan.
+     */
+    @Test
+    public void testNoAdmissionFlushedByScan() {
+        Cache4<Integer, Integer> cache = new Cache4<Integer, Integer>(
+                ADMISSION_CAPACITY);
+        for (int i = 0; i < ADMISSION_CAPACITY; i++) {
+            cache.put(i, i);
+            cache.get(i);
+        }
+        for (int i = ADMISSION_CAPACITY; i < 2 * ADMISSION_CAPACITY; i++) {
+            cache.put(i, i);
+        }
+        for (int i = 0; i < ADMISSION_CAPACITY; i++) {
+            assertFalse(cache.hasKey(i));
+        }
+    }
+
+    /**
+     * Tests a capacity-one cache with admission.
+     */
+    @Test
+    public void testAdmissionCapacityOne() {
+        Cache4<String, String> cache = new Cache4<String, String>(1, true);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals(1, cache.size());
+        assertTrue(cache.hasKey("b"));
+    }
+
+}
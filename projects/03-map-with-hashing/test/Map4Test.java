@@ -1,3 +1,15 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
 import components.map.Map;
 import components.map.Map1L;
 
@@ -6,6 +18,98 @@ import components.map.Map1L;
  */
 public class Map4Test extends MapTest {
 
+    /**
+     * Number of entries used by the traversal tests.
+     */
+    private static final int MANY = 1000;
+
+    /**
+     * Number of operations in the randomized single-bucket test.
+     */
+    private static final int OPERATIONS = 20_000;
+
+    /**
+     * Number of entries in a bucket too small to be indexed by a tree.
+     */
+    private static final int SMALL_BUCKET = 6;
+
+    /**
+     * Key whose hash code is always the same and which is not
+     * {@code Comparable}, so that only the hash-ordered fallback applies.
+     */
+    private static final class Colliding {
+
+        /**
+         * Identifying number.
+         */
+        private final int id;
+
+        /**
+         * Constructor.
+         *
+         * @param id
+         *            identifying number
+         */
+        Colliding(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 0;
+        }
+
+    }
+
+    /**
+     * Key that counts the calls to its {@code hashCode} and {@code equals}.
+     */
+    private static final class Counted {
+
+        /**
+         * Number of calls to {@code hashCode} on any {@code Counted}.
+         */
+        private static int hashCodeCalls = 0;
+
+        /**
+         * Number of calls to {@code equals} on any {@code Counted}.
+         */
+        private static int equalsCalls = 0;
+
+        /**
+         * Identifying number.
+         */
+        private final int id;
+
+        /**
+         * Constructor.
+         *
+         * @param id
+         *            identifying number
+         */
+        Counted(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            equalsCalls++;
+            return o instanceof Counted && ((Counted) o).id == this.id;
+        }
+
+        @Override
+        public int hashCode() {
+            hashCodeCalls++;
+            return this.id;
+        }
+
+    }
+
     @Override
     protected final Map<String, String> constructorTest() {
         return new Map4<String, String>();
@@ -16,4 +120,177 @@ public class Map4Test extends MapTest {
         return new Map1L<String, String>();
     }
 
+    /**
+     * Creates a {@code Map4} mapping 0 through {@code n} - 1 to their squares.
+     *
+     * @param n
+     *            number of entries
+     * @return the map
+     */
+    private static Map4<Integer, Integer> squares(int n) {
+        Map4<Integer, Integer> map = new Map4<Integer, Integer>();
+        for (int i = 0; i < n; i++) {
+            map.add(i, i * i);
+        }
+        return map;
+    }
+
+    /**
+     * Tests forEach on an empty map.
+     */
+    @Test
+    public void testForEachEmpty() {
+        Map4<Integer, Integer> map = squares(0);
+        int[] count = { 0 };
+        map.forEach((k, v) -> count[0]++);
+        assertEquals(0, count[0]);
+    }
+
+    /**
+     * Tests that forEach visits every pair exactly once.
+     */
+    @Test
+    public void testForEachVisitsAll() {
+        Map4<Integer, Integer> map = squares(MANY);
+        long[] sums = { 0, 0 };
+        map.forEach((k, v) -> {
+            sums[0] += k;
+            sums[1] += v - k * k;
+        });
+        assertEquals((long) MANY * (MANY - 1) / 2, sums[0]);
+        assertEquals(0, sums[1]);
+    }
+
+    /**
+     * Tests that the pieces of a split spliterator together visit every pair
+     * exactly once.
+     */
+    @Test
+    public void testSpliteratorSplitCoversAll() {
+        Map4<Integer, Integer> map = squares(MANY);
+        Spliterator<Map.Pair<Integer, Integer>> rest = map.spliterator();
+        Spliterator<Map.Pair<Integer, Integer>> split = rest.trySplit();
+        long[] sum = { 0 };
+        int[] count = { 0 };
+        Consumer<Map.Pair<Integer, Integer>> tally = p -> {
+            sum[0] += p.key();
+            count[0]++;
+        };
+        split.forEachRemaining(tally);
+        boolean more = true;
+        while (more) {
+            more = rest.tryAdvance(tally);
+        }
+        assertEquals(MANY, count[0]);
+        assertEquals((long) MANY * (MANY - 1) / 2, sum[0]);
+    }
+
+    /**
+     * Tests that the spliterator reports exact sizes before and after a split.
+     */
+    @Test
+    public void testSpliteratorExactSizes() {
+        Map4<Integer, Integer> map = squares(MANY);
+        Spliterator<Map.Pair<Integer, Integer>> rest = map.spliterator();
+        assertEquals(MANY, rest.getExactSizeIfKnown());
+        Spliterator<Map.Pair<Integer, Integer>> split = rest.trySplit();
+        assertEquals(MANY, split.estimateSize() + rest.estimateSize());
+        long splitSize = split.estimateSize();
+        assertEquals(splitSize, split.getExactSizeIfKnown());
+        assertEquals(splitSize, StreamSupport.stream(split, false).count());
+    }
+
+    /**
+     * Tests a parallel stream over the spliterator.
+     */
+    @Test
+    public void testParallelStream() {
+        Map4<Integer, Integer> map = squares(MANY);
+        long sum = StreamSupport.stream(map.spliterator(), true)
+                .mapToLong(p -> p.key()).sum();
+        assertEquals((long) MANY * (MANY - 1) / 2, sum);
+    }
+
+    /**
+     * Tests a long random sequence of adds and removes in a single-bucket
+     * table, so the bucket repeatedly grows into a tree and shrinks back.
+     */
+    @Test
+    public void testSingleBucketRandomOperations() {
+        Map4<Integer, Integer> map = new Map4<Integer, Integer>(1);
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int key = random.nextInt(MANY);
+            if (expected.containsKey(key)) {
+                assertEquals(expected.remove(key), map.remove(key).value());
+            } else {
+                expected.put(key, i);
+                map.add(key, i);
+            }
+            if (i % MANY == 0) {
+                while (map.size() > 0) {
+                    Map.Pair<Integer, Integer> p = map.removeAny();
+                    assertEquals(expected.remove(p.key()), p.value());
+                }
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < MANY; key++) {
+            assertEquals(expected.containsKey(key), map.hasKey(key));
+            if (expected.containsKey(key)) {
+                assertEquals(expected.get(key), map.value(key));
+            }
+        }
+    }
+
+    /**
+     * Tests many non-{@code Comparable} keys with equal hash codes.
+     */
+    @Test
+    public void testEqualHashCodesNotComparable() {
+        Map4<Colliding, Integer> map = new Map4<Colliding, Integer>();
+        for (int i = 0; i < MANY; i++) {
+            map.add(new Colliding(i), i);
+        }
+        for (int i = 0; i < MANY; i += 2) {
+            assertEquals(i, (int) map.remove(new Colliding(i)).value());
+        }
+        assertEquals(MANY / 2, map.size());
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i % 2 == 1, map.hasKey(new Colliding(i)));
+        }
+        assertFalse(map.hasKey(new Colliding(MANY)));
+        assertTrue(map.value(new Colliding(1)) == 1);
+    }
+
+    /**
+     * Tests that a lookup in a bucket shared by keys with different hash codes
+     * calls {@code hashCode} once and {@code equals} only on the matching key.
+     */
+    @Test
+    public void testLookupComparesCachedHashesFirst() {
+        Map4<Counted, Integer> map = new Map4<Counted, Integer>(1);
+        for (int i = 0; i < SMALL_BUCKET; i++) {
+            map.add(new Counted(i), i);
+        }
+        for (int i = 0; i <= SMALL_BUCKET; i++) {
+            Counted.hashCodeCalls = 0;
+            Counted.equalsCalls = 0;
+            boolean found = map.hasKey(new Counted(i));
+            assertEquals(i < SMALL_BUCKET, found);
+            assertEquals(1, Counted.hashCodeCalls);
+            if (found) {
+                assertEquals(1, Counted.equalsCalls);
+            } else {
+                assertEquals(0, Counted.equalsCalls);
+            }
+        }
+        Counted key = new Counted(SMALL_BUCKET);
+        map.add(key, -1);
+        Counted.equalsCalls = 0;
+        assertTrue(map.hasKey(key));
+        assertEquals(0, Counted.equalsCalls);
+    }
+
 }
@@ -0,0 +1,110 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map6} using default constructor.
+ */
+public class Map6Test extends MapTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 50_000;
+
+    /**
+     * Range of keys in the randomized test.
+     */
+    private static final int KEY_RANGE = 10_000;
+
+    /**
+     * Number of "Aa"/"BB" blocks in each colliding key.
+     */
+    private static final int COLLIDING_BLOCKS = 6;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map6<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Tests a long random sequence of adds and removes against
+     * {@code java.util.HashMap}.
+     */
+    @Test
+    public void testRandomOperations() {
+        Map6<Integer, Integer> map = new Map6<Integer, Integer>();
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int key = random.nextInt(KEY_RANGE);
+            if (expected.containsKey(key)) {
+                assertEquals(expected.remove(key), map.remove(key).value());
+            } else {
+                expected.put(key, i);
+                map.add(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < KEY_RANGE; key++) {
+            assertEquals(expected.containsKey(key), map.hasKey(key));
+            if (expected.containsKey(key)) {
+                assertEquals(expected.get(key), map.value(key));
+            }
+        }
+        int count = 0;
+        for (Map.Pair<Integer, Integer> p : map) {
+            assertEquals(expected.get(p.key()), p.value());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    /**
+     * Tests many keys with equal hash codes, which only the stash can hold.
+     */
+    @Test
+    public void testEqualHashCodes() {
+        Map6<String, Integer> map = new Map6<String, Integer>();
+        int n = 1 << COLLIDING_BLOCKS;
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int b = 0; b < COLLIDING_BLOCKS; b++) {
+                if ((i & (1 << b)) == 0) {
+                    key.append("Aa");
+                } else {
+                    key.append("BB");
+                }
+            }
+            keys[i] = key.toString();
+            assertEquals(keys[0].hashCode(), keys[i].hashCode());
+            map.add(keys[i], i);
+        }
+        assertEquals(n, map.size());
+        for (int i = 0; i < n; i += 2) {
+            assertEquals(i, (int) map.remove(keys[i]).value());
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 2 == 1, map.hasKey(keys[i]));
+        }
+        while (map.size() > 0) {
+            assertTrue(map.removeAny().value() % 2 == 1);
+        }
+        assertFalse(map.hasKey(keys[1]));
+    }
+
+}
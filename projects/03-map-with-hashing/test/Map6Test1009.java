@@ -0,0 +1,25 @@
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map6} using non-default constructor
+ * and expected size 1009.
+ */
+public class Map6Test1009 extends MapTest {
+
+    /**
+     * Expected size to be used in tests.
+     */
+    private static final int TEST_EXPECTED_SIZE = 1009;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map6<String, String>(TEST_EXPECTED_SIZE);
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.map.Map;
+import components.map.Map1L;
+
+/**
+ * Customized JUnit test fixture for {@code Map7} using default constructor.
+ */
+public class Map7Test extends MapTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 50_000;
+
+    /**
+     * Range of keys in the randomized test.
+     */
+    private static final int KEY_RANGE = 10_000;
+
+    /**
+     * Number of keys kept in the map by the tombstone churn test.
+     */
+    private static final int LIVE_KEYS = 50;
+
+    /**
+     * Number of "Aa"/"BB" blocks in each colliding key.
+     */
+    private static final int COLLIDING_BLOCKS = 7;
+
+    @Override
+    protected final Map<String, String> constructorTest() {
+        return new Map7<String, String>();
+    }
+
+    @Override
+    protected final Map<String, String> constructorRef() {
+        return new Map1L<String, String>();
+    }
+
+    /**
+     * Tests a long random sequence of adds and removes against
+     * {@code java.util.HashMap}.
+     */
+    @Test
+    public void testRandomOperations() {
+        Map7<Integer, Integer> map = new Map7<Integer, Integer>();
+        HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        Random random = new Random(1);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int key = random.nextInt(KEY_RANGE);
+            if (expected.containsKey(key)) {
+                assertEquals(expected.remove(key), map.remove(key).value());
+            } else {
+                expected.put(key, i);
+                map.add(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < KEY_RANGE; key++) {
+            assertEquals(expected.containsKey(key), map.hasKey(key));
+            if (expected.containsKey(key)) {
+                assertEquals(expected.get(key), map.value(key));
+            }
+        }
+        int count = 0;
+        for (Map.Pair<Integer, Integer> p : map) {
+            assertEquals(expected.get(p.key()), p.value());
+            count++;
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    /**
+     * Tests a small map through many generations of keys, so that removed
+     * slots are left as tombstones and the table is rebuilt in place.
+     */
+    @Test
+    public void testTombstoneChurn() {
+        Map7<Integer, Integer> map = new Map7<Integer, Integer>();
+        for (int i = 0; i < LIVE_KEYS; i++) {
+            map.add(i, i);
+        }
+        for (int i = LIVE_KEYS; i < OPERATIONS; i++) {
+            assertEquals(i - LIVE_KEYS, (int) map.remove(i - LIVE_KEYS).key());
+            map.add(i, i);
+            assertEquals(LIVE_KEYS, map.size());
+        }
+        for (int i = 0; i < OPERATIONS; i++) {
+            assertEquals(i >= OPERATIONS - LIVE_KEYS, map.hasKey(i));
+        }
+    }
+
+    /**
+     * Tests many keys with equal hash codes, which all share one probe
+     * sequence and one control byte fragment.
+     */
+    @Test
+    public void testEqualHashCodes() {
+        Map7<String, Integer> map = new Map7<String, Integer>();
+        int n = 1 << COLLIDING_BLOCKS;
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            StringBuilder key = new StringBuilder();
+            for (int b = 0; b < COLLIDING_BLOCKS; b++) {
+                if ((i & (1 << b)) == 0) {
+                    key.append("Aa");
+                } else {
+                    key.append("BB");
+                }
+            }
+            keys[i] = key.toString();
+            assertEquals(keys[0].hashCode(), keys[i].hashCode());
+            map.add(keys[i], i);
+        }
+        assertEquals(n, map.size());
+        for (int i = 0; i < n; i += 2) {
+            assertEquals(i, (int) map.remove(keys[i]).value());
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 2 == 1, map.hasKey(keys[i]));
+        }
+        while (map.size() > 0) {
+            assertTrue(map.removeAny().value() % 2 == 1);
+        }
+        assertFalse(map.hasKey(keys[1]));
+    }
+
+}
@@ -0,0 +1,141 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.map.Map.Pair;
+
+/**
+ * JUnit test fixture for {@code PersistentMap}.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class PersistentMapTest {
+
+    /**
+     * Number of keys used by the larger tests.
+     */
+    private static final int MANY = 5000;
+
+    /**
+     * Tests the empty map.
+     */
+    @Test
+    public void testEmpty() {
+        PersistentMap<String, String> map = PersistentMap.empty();
+        assertEquals(0, map.size());
+        assertFalse(map.hasKey("a"));
+        assertFalse(map.iterator().hasNext());
+    }
+
+    /**
+     * Tests that an update leaves the original map unchanged.
+     */
+    @Test
+    public void testWithLeavesOriginalUnchanged() {
+        PersistentMap<String, String> before = PersistentMap
+                .<String, String> empty().with("a", "1");
+        PersistentMap<String, String> after = before.with("b", "2");
+        assertEquals(1, before.size());
+        assertFalse(before.hasKey("b"));
+        assertEquals(2, after.size());
+        assertEquals("1", after.value("a"));
+        assertEquals("2", after.value("b"));
+    }
+
+    /**
+     * Tests replacing the value of an existing key.
+     */
+    @Test
+    public void testWithReplaces() {
+        PersistentMap<String, String> before = PersistentMap
+                .<String, String> empty().with("a", "1");
+        PersistentMap<String, String> after = before.with("a", "2");
+        assertEquals(1, after.size());
+        assertEquals("2", after.value("a"));
+        assertEquals("1", before.value("a"));
+    }
+
+    /**
+     * Tests that a removal leaves the original map unchanged.
+     */
+    @Test
+    public void testWithoutLeavesOriginalUnchanged() {
+        PersistentMap<String, String> before = PersistentMap
+                .<String, String> empty().with("a", "1").with("b", "2");
+        PersistentMap<String, String> after = before.without("a");
+        assertEquals(2, before.size());
+        assertTrue(before.hasKey("a"));
+        assertEquals(1, after.size());
+        assertFalse(after.hasKey("a"));
+        assertEquals("2", after.value("b"));
+    }
+
+    /**
+     * Tests keys with equal hash codes ("Aa" and "BB" collide).
+     */
+    @Test
+    public void testHashCollisions() {
+        PersistentMap<String, String> map = PersistentMap
+                .<String, String> empty().with("Aa", "1").with("BB", "2")
+                .with("C", "3");
+        assertEquals(3, map.size());
+        assertEquals("1", map.value("Aa"));
+        assertEquals("2", map.value("BB"));
+        PersistentMap<String, String> removed = map.without("Aa");
+        assertEquals(2, removed.size());
+        assertFalse(removed.hasKey("Aa"));
+        assertEquals("2", removed.value("BB"));
+        assertEquals("3", removed.value("C"));
+        assertEquals(0, removed.without("BB").without("C").size());
+    }
+
+    /**
+     * Tests adding and removing many keys, checking every version in between
+     * through iteration.
+     */
+    @Test
+    public void testManyKeys() {
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < MANY; i++) {
+            map = map.with(i, -i);
+        }
+        PersistentMap<Integer, Integer> full = map;
+        assertEquals(MANY, full.size());
+        long keySum = 0;
+        int count = 0;
+        for (Pair<Integer, Integer> p : full) {
+            assertEquals(-p.key(), (int) p.value());
+            keySum += p.key();
+            count++;
+        }
+        assertEquals(MANY, count);
+        assertEquals((long) MANY * (MANY - 1) / 2, keySum);
+        for (int i = 0; i < MANY; i += 2) {
+            map = map.without(i);
+        }
+        assertEquals(MANY / 2, map.size());
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i % 2 == 1, map.hasKey(i));
+            assertTrue(full.hasKey(i));
+        }
+    }
+
+    /**
+     * Tests that a {@code Map5} snapshot does not see later changes.
+     */
+    @Test
+    public void testMap5Snapshot() {
+        Map5<String, String> map = new Map5<String, String>();
+        map.add("a", "1");
+        PersistentMap<String, String> snapshot = map.snapshot();
+        map.add("b", "2");
+        map.remove("a");
+        assertEquals(1, snapshot.size());
+        assertEquals("1", snapshot.value("a"));
+        assertFalse(snapshot.hasKey("b"));
+    }
+
+}
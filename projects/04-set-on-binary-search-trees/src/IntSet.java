@@ -0,0 +1,1083 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sorted set of primitive {@code int}s in compressed ("roaring bitmap")
+ * storage, for sets such as dense ranges of IDs that would cost a boxed
+ * {@code Integer} and a tree node per element in a {@code Set<Integer>}.
+ *
+ * <p>
+ * Elements are grouped into chunks of 2^16 consecutive values by their high
+ * 16 bits; each non-empty chunk stores its low 16 bits in the smallest of
+ * three kinds of container: a sorted {@code char} array (2 bytes per element,
+ * at most {@code ARRAY_MAX} elements), a 2^16-bit bitmap (8 KB, for denser
+ * chunks), or, after {@code runOptimize}, a list of runs of consecutive
+ * values (4 bytes per run). {@code add}, {@code remove} and {@code contains}
+ * take O(log(number of chunks) + log(container size)) time; {@code and} and
+ * {@code or} work a container at a time, with word-wide operations between
+ * bitmaps. Elements are kept (and iterated) in increasing signed order.
+ *
+ * @convention <pre>
+ * 0 <= $this.count <= |$this.keys| = |$this.containers|  and
+ * $this.keys[0, $this.count) is strictly increasing, with entries in
+ *  [0, 2^16)  and
+ * for all i: integer where (0 <= i < $this.count)
+ *   ($this.containers[i] is not empty  and
+ *    [if $this.containers[i] is a bitmap then it holds more than
+ *     ARRAY_MAX elements])  and
+ * $this.size = sum of the cardinalities of $this.containers[0, $this.count)
+ * </pre>
+ * @correspondence <pre>
+ * this = {x: integer where (there exists i: integer
+ *           where (0 <= i < $this.count)
+ *           ((x + 2^31) / 2^16 = $this.keys[i]  and
+ *            (x + 2^31) mod 2^16 is in $this.containers[i]))}
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class IntSet {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of low bits stored in a container.
+     */
+    private static final int CHUNK_BITS = 16;
+
+    /**
+     * Mask of the low bits stored in a container.
+     */
+    private static final int LOW_MASK = (1 << CHUNK_BITS) - 1;
+
+    /**
+     * Number of values in a chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * Largest number of elements kept in an array container.
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    /**
+     * Number of {@code long} words of a bitmap container.
+     */
+    private static final int BITMAP_WORDS = CHUNK_SIZE / Long.SIZE;
+
+    /**
+     * log2 of {@code Long.SIZE}.
+     */
+    private static final int LOG_WORD_BITS = 6;
+
+    /**
+     * Approximate size in bytes of an object header plus an array header.
+     */
+    private static final int OVERHEAD_BYTES = 32;
+
+    /**
+     * Initial capacity of the chunk arrays and of array containers.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * Container of the low 16 bits of the elements of one chunk.
+     */
+    private abstract static class Container {
+
+        /**
+         * Reports the number of elements.
+         *
+         * @return the cardinality
+         */
+        abstract int cardinality();
+
+        /**
+         * Reports whether {@code low} is in this container.
+         *
+         * @param low
+         *            the value, in [0, 2^16)
+         * @return true iff low is in this
+         */
+        abstract boolean contains(int low);
+
+        /**
+         * Returns the smallest element at least {@code from}, or -1.
+         *
+         * @param from
+         *            the bound, in [0, 2^16]
+         * @return the next element, or -1 if there is none
+         */
+        abstract int nextValue(int from);
+
+        /**
+         * Adds {@code low} and returns the container now holding this
+         * container's elements (this one or a replacement).
+         *
+         * @param low
+         *            the value, not in this container
+         * @return the updated container
+         */
+        abstract Container add(int low);
+
+        /**
+         * Removes {@code low} and returns the container now holding this
+         * container's elements (this one or a replacement).
+         *
+         * @param low
+         *            the value, in this container
+         * @return the updated container
+         */
+        abstract Container remove(int low);
+
+        /**
+         * Returns an independent copy.
+         *
+         * @return the copy
+         */
+        abstract Container copy();
+
+        /**
+         * Returns the approximate memory footprint in bytes.
+         *
+         * @return the size in bytes
+         */
+        abstract long sizeInBytes();
+
+        /**
+         * Returns a new bitmap container with the same elements.
+         *
+         * @return the bitmap
+         */
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            int v = this.nextValue(0);
+            while (v >= 0) {
+                b.words[v >>> LOG_WORD_BITS] |= 1L << v;
+                v = this.nextValue(v + 1);
+            }
+            b.cardinality = this.cardinality();
+            return b;
+        }
+
+        /**
+         * Returns a new array container with the same elements.
+         *
+         * @return the array container
+         * @requires cardinality() <= ARRAY_MAX
+         */
+        ArrayContainer toArray() {
+            ArrayContainer a = new ArrayContainer(this.cardinality());
+            int v = this.nextValue(0);
+            while (v >= 0) {
+                a.values[a.n] = (char) v;
+                a.n++;
+                v = this.nextValue(v + 1);
+            }
+            return a;
+        }
+
+        /**
+         * Returns the number of runs of consecutive elements.
+         *
+         * @return the number of runs
+         */
+        int runCount() {
+            int runs = 0;
+            int previous = -2;
+            int v = this.nextValue(0);
+            while (v >= 0) {
+                if (v != previous + 1) {
+                    runs++;
+                }
+                previous = v;
+                v = this.nextValue(v + 1);
+            }
+            return runs;
+        }
+
+        /**
+         * Returns the smallest container (array, bitmap or runs) holding the
+         * same elements; this one if it is already the smallest.
+         *
+         * @return the smallest container
+         */
+        Container optimize() {
+            Container result = this;
+            int runs = this.runCount();
+            long runBytes = RunContainer.bytesFor(runs);
+            if (runBytes < this.sizeInBytes()) {
+                RunContainer r = new RunContainer(runs);
+                int v = this.nextValue(0);
+                while (v >= 0) {
+                    r.append(v);
+                    v = this.nextValue(v + 1);
+                }
+                result = r;
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Container storing its elements in a sorted array.
+     */
+    private static final class ArrayContainer extends Container {
+
+        /**
+         * Elements; the first {@code n} are in use, in increasing order.
+         */
+        private char[] values;
+
+        /**
+         * Number of elements.
+         */
+        private int n;
+
+        /**
+         * Constructor of an empty container.
+         *
+         * @param capacity
+         *            initial capacity
+         */
+        ArrayContainer(int capacity) {
+            this.values = new char[Math.max(1, capacity)];
+            this.n = 0;
+        }
+
+        /**
+         * Returns the position of the first element at least {@code from}.
+         *
+         * @param from
+         *            the bound
+         * @return the position, in [0, n]
+         */
+        private int lowerBound(int from) {
+            int lo = 0;
+            int hi = this.n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.values[mid] < from) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        @Override
+        int cardinality() {
+            return this.n;
+        }
+
+        @Override
+        boolean contains(int low) {
+            int i = this.lowerBound(low);
+            return i < this.n && this.values[i] == low;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int i = this.lowerBound(from);
+            int v = -1;
+            if (i < this.n) {
+                v = this.values[i];
+            }
+            return v;
+        }
+
+        @Override
+        Container add(int low) {
+            Container result = this;
+            if (this.n == ARRAY_MAX) {
+                result = this.toBitmap().add(low);
+            } else {
+                if (this.n == this.values.length) {
+                    this.values = Arrays.copyOf(this.values,
+                            Math.min(ARRAY_MAX, 2 * this.n));
+                }
+                int i = this.lowerBound(low);
+                System.arraycopy(this.values, i, this.values, i + 1,
+                        this.n - i);
+                this.values[i] = (char) low;
+                this.n++;
+            }
+            return result;
+        }
+
+        @Override
+        Container remove(int low) {
+            int i = this.lowerBound(low);
+            System.arraycopy(this.values, i + 1, this.values, i,
+                    this.n - i - 1);
+            this.n--;
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer c = new ArrayContainer(this.n);
+            System.arraycopy(this.values, 0, c.values, 0, this.n);
+            c.n = this.n;
+            return c;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return OVERHEAD_BYTES + (long) Character.BYTES * this.values.length;
+        }
+
+    }
+
+    /**
+     * Container storing its elements as a bitmap of 2^16 bits.
+     */
+    private static final class BitmapContainer extends Container {
+
+        /**
+         * The bitmap: value v is present iff bit v mod 64 of word v / 64 is
+         * set.
+         */
+        private final long[] words;
+
+        /**
+         * Number of elements.
+         */
+        private int cardinality;
+
+        /**
+         * Constructor of an empty bitmap.
+         */
+        BitmapContainer() {
+            this.words = new long[BITMAP_WORDS];
+            this.cardinality = 0;
+        }
+
+        /**
+         * Returns this container, or an array container with the same
+         * elements if there are few enough of them.
+         *
+         * @return the normalized container
+         */
+        Container normalize() {
+            Container result = this;
+            if (this.cardinality <= ARRAY_MAX) {
+                result = this.toArray();
+            }
+            return result;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return (this.words[low >>> LOG_WORD_BITS] & (1L << low)) != 0;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int v = -1;
+            int w = from >>> LOG_WORD_BITS;
+            if (w < BITMAP_WORDS) {
+                long bits = this.words[w] & (-1L << from);
+                while (bits == 0 && w + 1 < BITMAP_WORDS) {
+                    w++;
+                    bits = this.words[w];
+                }
+                if (bits != 0) {
+                    v = (w << LOG_WORD_BITS) + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return v;
+        }
+
+        @Override
+        Container add(int low) {
+            this.words[low >>> LOG_WORD_BITS] |= 1L << low;
+            this.cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            this.words[low >>> LOG_WORD_BITS] &= ~(1L << low);
+            this.cardinality--;
+            return this.normalize();
+        }
+
+        @Override
+        Container copy() {
+            BitmapContainer c = new BitmapContainer();
+            System.arraycopy(this.words, 0, c.words, 0, BITMAP_WORDS);
+            c.cardinality = this.cardinality;
+            return c;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return OVERHEAD_BYTES + (long) Long.BYTES * BITMAP_WORDS;
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            return (BitmapContainer) this.copy();
+        }
+
+    }
+
+    /**
+     * Container storing its elements as runs of consecutive values. It is
+     * only produced by {@code optimize}; updating it turns it back into an
+     * array or bitmap container.
+     */
+    private static final class RunContainer extends Container {
+
+        /**
+         * First value of each run, in increasing order.
+         */
+        private final char[] starts;
+
+        /**
+         * Last value of each run.
+         */
+        private final char[] ends;
+
+        /**
+         * Number of runs.
+         */
+        private int runs;
+
+        /**
+         * Number of elements.
+         */
+        private int cardinality;
+
+        /**
+         * Constructor of an empty container.
+         *
+         * @param capacity
+         *            number of runs it will hold
+         */
+        RunContainer(int capacity) {
+            this.starts = new char[capacity];
+            this.ends = new char[capacity];
+            this.runs = 0;
+            this.cardinality = 0;
+        }
+
+        /**
+         * Returns the approximate size in bytes of a run container with
+         * {@code runs} runs.
+         *
+         * @param runs
+         *            number of runs
+         * @return the size in bytes
+         */
+        static long bytesFor(int runs) {
+            return 2 * OVERHEAD_BYTES + 2L * Character.BYTES * runs;
+        }
+
+        /**
+         * Appends {@code v}, which is larger than every element.
+         *
+         * @param v
+         *            the value
+         */
+        void append(int v) {
+            if (this.runs > 0 && this.ends[this.runs - 1] + 1 == v) {
+                this.ends[this.runs - 1] = (char) v;
+            } else {
+                this.starts[this.runs] = (char) v;
+                this.ends[this.runs] = (char) v;
+                this.runs++;
+            }
+            this.cardinality++;
+        }
+
+        /**
+         * Returns the position of the first run ending at or after
+         * {@code from}.
+         *
+         * @param from
+         *            the bound
+         * @return the position, in [0, runs]
+         */
+        private int runAtOrAfter(int from) {
+            int lo = 0;
+            int hi = this.runs;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (this.ends[mid] < from) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Returns an updatable (array or bitmap) container with the same
+         * elements.
+         *
+         * @return the container
+         */
+        private Container expand() {
+            Container result;
+            if (this.cardinality <= ARRAY_MAX) {
+                result = this.toArray();
+            } else {
+                result = this.toBitmap();
+            }
+            return result;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int low) {
+            int i = this.runAtOrAfter(low);
+            return i < this.runs && this.starts[i] <= low;
+        }
+
+        @Override
+        int nextValue(int from) {
+            int i = this.runAtOrAfter(from);
+            int v = -1;
+            if (i < this.runs) {
+                v = Math.max(from, this.starts[i]);
+            }
+            return v;
+        }
+
+        @Override
+        Container add(int low) {
+            return this.expand().add(low);
+        }
+
+        @Override
+        Container remove(int low) {
+            return this.expand().remove(low);
+        }
+
+        @Override
+        Container copy() {
+            RunContainer c = new RunContainer(this.runs);
+            System.arraycopy(this.starts, 0, c.starts, 0, this.runs);
+            System.arraycopy(this.ends, 0, c.ends, 0, this.runs);
+            c.runs = this.runs;
+            c.cardinality = this.cardinality;
+            return c;
+        }
+
+        @Override
+        long sizeInBytes() {
+            return bytesFor(this.starts.length);
+        }
+
+        @Override
+        BitmapContainer toBitmap() {
+            BitmapContainer b = new BitmapContainer();
+            for (int i = 0; i < this.runs; i++) {
+                for (int v = this.starts[i]; v <= this.ends[i]; v++) {
+                    b.words[v >>> LOG_WORD_BITS] |= 1L << v;
+                }
+            }
+            b.cardinality = this.cardinality;
+            return b;
+        }
+
+    }
+
+    /**
+     * High 16 bits (of the elements offset by 2^31) of each chunk.
+     */
+    private int[] keys;
+
+    /**
+     * Container of each chunk.
+     */
+    private Container[] containers;
+
+    /**
+     * Number of chunks.
+     */
+    private int count;
+
+    /**
+     * Number of elements.
+     */
+    private int size;
+
+    /**
+     * Maps {@code x} to the unsigned value whose order matches the signed
+     * order of {@code x}.
+     *
+     * @param x
+     *            the element
+     * @return x + 2^31, as an unsigned int
+     */
+    private static int unsigned(int x) {
+        return x ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns the intersection of {@code a} and {@code b}, or null if it is
+     * empty.
+     *
+     * @param a
+     *            a container
+     * @param b
+     *            a container
+     * @return the intersection, or null
+     */
+    private static Container and(Container a, Container b) {
+        Container result;
+        if (a instanceof ArrayContainer || b instanceof ArrayContainer) {
+            Container small = a;
+            Container other = b;
+            if (!(a instanceof ArrayContainer)) {
+                small = b;
+                other = a;
+            }
+            ArrayContainer both = new ArrayContainer(small.cardinality());
+            int v = small.nextValue(0);
+            while (v >= 0) {
+                if (other.contains(v)) {
+                    both.values[both.n] = (char) v;
+                    both.n++;
+                }
+                v = small.nextValue(v + 1);
+            }
+            result = both;
+        } else {
+            BitmapContainer both = a.toBitmap();
+            BitmapContainer bb = b.toBitmap();
+            both.cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                both.words[i] &= bb.words[i];
+                both.cardinality += Long.bitCount(both.words[i]);
+            }
+            result = both.normalize();
+        }
+        if (result.cardinality() == 0) {
+            result = null;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of {@code a} and {@code b}.
+     *
+     * @param a
+     *            a container
+     * @param b
+     *            a container
+     * @return the union
+     */
+    private static Container or(Container a, Container b) {
+        Container result;
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer
+                && a.cardinality() + b.cardinality() <= ARRAY_MAX) {
+            ArrayContainer either = new ArrayContainer(
+                    a.cardinality() + b.cardinality());
+            int x = a.nextValue(0);
+            int y = b.nextValue(0);
+            while (x >= 0 || y >= 0) {
+                int v;
+                if (y < 0 || (x >= 0 && x <= y)) {
+                    v = x;
+                } else {
+                    v = y;
+                }
+                either.values[either.n] = (char) v;
+                either.n++;
+                if (x == v) {
+                    x = a.nextValue(v + 1);
+                }
+                if (y == v) {
+                    y = b.nextValue(v + 1);
+                }
+            }
+            result = either;
+        } else {
+            BitmapContainer either = a.toBitmap();
+            BitmapContainer bb = b.toBitmap();
+            either.cardinality = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                either.words[i] |= bb.words[i];
+                either.cardinality += Long.bitCount(either.words[i]);
+            }
+            result = either.normalize();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the position of the chunk with high bits {@code high}, as
+     * {@code Arrays.binarySearch} does.
+     *
+     * @param high
+     *            the high bits
+     * @return the position of the chunk, or -(i + 1) where i is the number of
+     *         chunks before it
+     */
+    private int chunk(int high) {
+        return Arrays.binarySearch(this.keys, 0, this.count, high);
+    }
+
+    /**
+     * Appends a chunk, which must come after every existing chunk.
+     *
+     * @param high
+     *            the high bits
+     * @param c
+     *            the container, not empty
+     */
+    private void appendChunk(int high, Container c) {
+        this.insertChunk(this.count, high, c);
+    }
+
+    /**
+     * Inserts a chunk at position {@code i}.
+     *
+     * @param i
+     *            the position
+     * @param high
+     *            the high bits
+     * @param c
+     *            the container, not empty
+     */
+    private void insertChunk(int i, int high, Container c) {
+        if (this.count == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, 2 * this.count);
+            this.containers = Arrays.copyOf(this.containers, 2 * this.count);
+        }
+        System.arraycopy(this.keys, i, this.keys, i + 1, this.count - i);
+        System.arraycopy(this.containers, i, this.containers, i + 1,
+                this.count - i);
+        this.keys[i] = high;
+        this.containers[i] = c;
+        this.count++;
+        this.size += c.cardinality();
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.containers = new Container[INITIAL_CAPACITY];
+        this.count = 0;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public IntSet() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    /**
+     * Resets {@code this} to an empty set.
+     *
+     * @clears this
+     */
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        PrimitiveIterator.OfInt it = this.iterator();
+        while (it.hasNext()) {
+            sb.append(it.nextInt());
+            if (it.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds {@code x} to {@code this}.
+     *
+     * @param x
+     *            the element to be added
+     * @updates this
+     * @requires x is not in this
+     * @ensures this = #this union {x}
+     */
+    public final void add(int x) {
+        assert !this.contains(x) : "Violation of: x is not in this";
+        int u = unsigned(x);
+        int high = u >>> CHUNK_BITS;
+        int i = this.chunk(high);
+        if (i < 0) {
+            ArrayContainer c = new ArrayContainer(INITIAL_CAPACITY);
+            c.values[0] = (char) (u & LOW_MASK);
+            c.n = 1;
+            this.insertChunk(-(i + 1), high, c);
+        } else {
+            this.containers[i] = this.containers[i].add(u & LOW_MASK);
+            this.size++;
+        }
+    }
+
+    /**
+     * Removes {@code x} from {@code this}.
+     *
+     * @param x
+     *            the element to be removed
+     * @updates this
+     * @requires x is in this
+     * @ensures this = #this \ {x}
+     */
+    public final void remove(int x) {
+        assert this.contains(x) : "Violation of: x is in this";
+        int u = unsigned(x);
+        int i = this.chunk(u >>> CHUNK_BITS);
+        this.containers[i] = this.containers[i].remove(u & LOW_MASK);
+        this.size--;
+        if (this.containers[i].cardinality() == 0) {
+            System.arraycopy(this.keys, i + 1, this.keys, i,
+                    this.count - i - 1);
+            System.arraycopy(this.containers, i + 1, this.containers, i,
+                    this.count - i - 1);
+            this.count--;
+            this.containers[this.count] = null;
+        }
+    }
+
+    /**
+     * Removes and returns the smallest element of {@code this}.
+     *
+     * @return the element removed
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this  and  this = #this \ {removeAny}  and
+     * for all y: integer where (y is in #this) (removeAny <= y)
+     * </pre>
+     */
+    public final int removeAny() {
+        assert this.size > 0 : "Violation of: this /= empty_set";
+        int low = this.containers[0].nextValue(0);
+        int x = unsigned((this.keys[0] << CHUNK_BITS) | low);
+        this.remove(x);
+        return x;
+    }
+
+    /**
+     * Reports whether {@code x} is in {@code this}.
+     *
+     * @param x
+     *            the element to be checked
+     * @return true iff element is in this
+     * @ensures contains = (x is in this)
+     */
+    public final boolean contains(int x) {
+        int u = unsigned(x);
+        int i = this.chunk(u >>> CHUNK_BITS);
+        return i >= 0 && this.containers[i].contains(u & LOW_MASK);
+    }
+
+    /**
+     * Reports size (cardinality) of {@code this}.
+     *
+     * @return the number of elements in this
+     * @ensures size = |this|
+     */
+    public final int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an iterator over the elements of {@code this} in increasing
+     * order.
+     *
+     * @return the iterator
+     */
+    public final PrimitiveIterator.OfInt iterator() {
+        return new IntSetIterator();
+    }
+
+    /**
+     * Implementation of {@code PrimitiveIterator.OfInt} for {@code IntSet}.
+     */
+    private final class IntSetIterator implements PrimitiveIterator.OfInt {
+
+        /**
+         * Position of the chunk of the next element.
+         */
+        private int chunk;
+
+        /**
+         * Low bits of the next element, or -1 if there is none.
+         */
+        private int low;
+
+        /**
+         * No-argument constructor.
+         */
+        IntSetIterator() {
+            this.chunk = 0;
+            this.low = -1;
+            if (IntSet.this.count > 0) {
+                this.low = IntSet.this.containers[0].nextValue(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.low >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            int x = unsigned(
+                    (IntSet.this.keys[this.chunk] << CHUNK_BITS) | this.low);
+            this.low = IntSet.this.containers[this.chunk]
+                    .nextValue(this.low + 1);
+            if (this.low < 0 && this.chunk + 1 < IntSet.this.count) {
+                this.chunk++;
+                this.low = IntSet.this.containers[this.chunk].nextValue(0);
+            }
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    /**
+     * Returns the intersection of {@code this} and {@code s}.
+     *
+     * @param s
+     *            the other set
+     * @return the intersection
+     * @ensures and = this intersection s
+     */
+    public final IntSet and(IntSet s) {
+        assert s != null : "Violation of: s is not null";
+        IntSet result = new IntSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.count && j < s.count) {
+            if (this.keys[i] < s.keys[j]) {
+                i++;
+            } else if (this.keys[i] > s.keys[j]) {
+                j++;
+            } else {
+                Container c = and(this.containers[i], s.containers[j]);
+                if (c != null) {
+                    result.appendChunk(this.keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of {@code this} and {@code s}.
+     *
+     * @param s
+     *            the other set
+     * @return the union
+     * @ensures or = this union s
+     */
+    public final IntSet or(IntSet s) {
+        assert s != null : "Violation of: s is not null";
+        IntSet result = new IntSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.count || j < s.count) {
+            if (j == s.count
+                    || (i < this.count && this.keys[i] < s.keys[j])) {
+                result.appendChunk(this.keys[i], this.containers[i].copy());
+                i++;
+            } else if (i == this.count || this.keys[i] > s.keys[j]) {
+                result.appendChunk(s.keys[j], s.containers[j].copy());
+                j++;
+            } else {
+                result.appendChunk(this.keys[i],
+                        or(this.containers[i], s.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Re-encodes every chunk in the smallest of the three container kinds,
+     * turning long stretches of consecutive elements into runs. Best called
+     * once a set is fully built, since updating a chunk stored as runs turns
+     * it back into an array or bitmap.
+     */
+    public final void runOptimize() {
+        for (int i = 0; i < this.count; i++) {
+            this.containers[i] = this.containers[i].optimize();
+        }
+    }
+
+    /**
+     * Returns the approximate memory footprint of {@code this} in bytes.
+     *
+     * @return the size in bytes
+     */
+    public final long sizeInBytes() {
+        long bytes = 2 * OVERHEAD_BYTES
+                + (long) (Integer.BYTES + Long.BYTES) * this.keys.length;
+        for (int i = 0; i < this.count; i++) {
+            bytes += this.containers[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+}
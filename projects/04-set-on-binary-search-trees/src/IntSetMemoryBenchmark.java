@@ -0,0 +1,150 @@
+import java.util.Random;
+
+import components.set.Set;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Compares the heap used by an {@code IntSet} and by a {@code Set3a<Integer>}
+ * holding the same 1M IDs: a consecutive range, a random quarter of a range
+ * four times as wide, and values scattered over the whole int range. Heap use
+ * is measured as the growth in used memory after garbage collection, so run
+ * with assertions disabled, a fixed heap (e.g., -Xms2g -Xmx2g) and nothing
+ * else running in the JVM.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class IntSetMemoryBenchmark {
+
+    /**
+     * Number of elements of each set.
+     */
+    private static final int N = 1_000_000;
+
+    /**
+     * Inverse density of the "random quarter" input.
+     */
+    private static final int SPREAD = 4;
+
+    /**
+     * Number of garbage collection requests before reading the used heap.
+     */
+    private static final int GC_CALLS = 5;
+
+    /**
+     * Bytes per megabyte.
+     */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private IntSetMemoryBenchmark() {
+    }
+
+    /**
+     * Returns the used heap in bytes after requesting garbage collection.
+     *
+     * @return the used heap
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_CALLS; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns {@code N} distinct elements in random order, following
+     * {@code kind}: 0 for a consecutive range, 1 for a random quarter of a
+     * range four times as wide, 2 for values scattered over the int range.
+     *
+     * @param kind
+     *            the kind of input
+     * @param random
+     *            the source of randomness
+     * @return the elements
+     */
+    private static int[] elements(int kind, Random random) {
+        int[] elements = new int[N];
+        int x = 0;
+        for (int i = 0; i < N; i++) {
+            if (kind == 0) {
+                x++;
+            } else if (kind == 1) {
+                x += 1 + random.nextInt(2 * SPREAD - 1);
+            } else {
+                x += 1 + random.nextInt(Integer.MAX_VALUE / N);
+            }
+            elements[i] = x;
+        }
+        for (int i = N - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = elements[i];
+            elements[i] = elements[j];
+            elements[j] = tmp;
+        }
+        return elements;
+    }
+
+    /**
+     * Reports on {@code out} the heap used by an {@code IntSet} (before and
+     * after {@code runOptimize}) and a {@code Set3a<Integer>} holding
+     * {@code elements} (inserted in random order so that {@code Set3a} stays
+     * reasonably shallow).
+     *
+     * @param out
+     *            the output stream
+     * @param name
+     *            the name of the input
+     * @param elements
+     *            the elements
+     * @updates out
+     */
+    private static void measure(SimpleWriter out, String name,
+            int[] elements) {
+        long before = usedHeap();
+        IntSet ints = new IntSet();
+        for (int x : elements) {
+            ints.add(x);
+        }
+        long intSetBytes = usedHeap() - before;
+        ints.runOptimize();
+        long optimizedBytes = usedHeap() - before;
+        long estimate = ints.sizeInBytes();
+        ints = null;
+
+        before = usedHeap();
+        Set<Integer> boxed = new Set3a<Integer>();
+        for (int x : elements) {
+            boxed.add(x);
+        }
+        long boxedBytes = usedHeap() - before;
+
+        out.println(String.format(
+                "  %-10s IntSet %7.2f MB  optimized %7.2f MB (estimate"
+                        + " %7.2f MB)  Set3a<Integer> %7.2f MB  (%d elements)",
+                name, intSetBytes / BYTES_PER_MB,
+                optimizedBytes / BYTES_PER_MB, estimate / BYTES_PER_MB,
+                boxedBytes / BYTES_PER_MB, boxed.size()));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(0);
+        String[] names = { "range", "quarter", "scattered" };
+        for (int kind = 0; kind < names.length; kind++) {
+            measure(out, names[kind], elements(kind, random));
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,479 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Sorted set of primitive {@code long}s in compressed storage, layered on
+ * {@code IntSet}: elements are grouped by their high 32 bits, and the low 32
+ * bits of the elements of each group are kept in an {@code IntSet}, so dense
+ * ranges get the same array, bitmap and run containers.
+ *
+ * <p>
+ * {@code add}, {@code remove} and {@code contains} take O(log(number of
+ * groups)) time plus the time of the same operation on the group's
+ * {@code IntSet}; {@code and} and {@code or} work a group at a time. Elements
+ * are kept (and iterated) in increasing signed order. Since {@code IntSet}
+ * orders its elements as signed {@code int}s, the low bits are stored with
+ * their sign bit flipped, which turns their unsigned order into signed order.
+ *
+ * @convention <pre>
+ * 0 <= $this.count <= |$this.keys| = |$this.groups|  and
+ * $this.keys[0, $this.count) is strictly increasing  and
+ * for all i: integer where (0 <= i < $this.count)
+ *   ($this.groups[i] is not null  and  |$this.groups[i]| > 0)  and
+ * $this.size = sum of the sizes of $this.groups[0, $this.count)
+ * </pre>
+ * @correspondence <pre>
+ * this = {x: integer where (there exists i: integer
+ *           where (0 <= i < $this.count)
+ *           (floor(x / 2^32) = $this.keys[i]  and
+ *            (x mod 2^32) - 2^31 is in $this.groups[i]))}
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class LongSet {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of low bits stored in a group.
+     */
+    private static final int GROUP_BITS = 32;
+
+    /**
+     * Mask of the low bits stored in a group.
+     */
+    private static final long LOW_MASK = (1L << GROUP_BITS) - 1;
+
+    /**
+     * Approximate size in bytes of an object header plus an array header.
+     */
+    private static final int OVERHEAD_BYTES = 32;
+
+    /**
+     * Initial capacity of the group arrays.
+     */
+    private static final int INITIAL_CAPACITY = 4;
+
+    /**
+     * High 32 bits of the elements of each group, in increasing order.
+     */
+    private int[] keys;
+
+    /**
+     * Low 32 bits (sign bit flipped) of the elements of each group.
+     */
+    private IntSet[] groups;
+
+    /**
+     * Number of groups.
+     */
+    private int count;
+
+    /**
+     * Number of elements.
+     */
+    private long size;
+
+    /**
+     * Returns the high 32 bits of {@code x}.
+     *
+     * @param x
+     *            the element
+     * @return the high bits
+     */
+    private static int high(long x) {
+        return (int) (x >> GROUP_BITS);
+    }
+
+    /**
+     * Returns the low 32 bits of {@code x}, sign bit flipped, as stored in
+     * its group.
+     *
+     * @param x
+     *            the element
+     * @return the stored low bits
+     */
+    private static int low(long x) {
+        return (int) x ^ Integer.MIN_VALUE;
+    }
+
+    /**
+     * Returns the element with high bits {@code high} and stored low bits
+     * {@code low}.
+     *
+     * @param high
+     *            the high bits
+     * @param low
+     *            the stored low bits
+     * @return the element
+     */
+    private static long element(int high, int low) {
+        return ((long) high << GROUP_BITS)
+                | ((low ^ Integer.MIN_VALUE) & LOW_MASK);
+    }
+
+    /**
+     * Returns an independent copy of {@code s}.
+     *
+     * @param s
+     *            the set
+     * @return the copy
+     */
+    private static IntSet copy(IntSet s) {
+        return s.or(new IntSet());
+    }
+
+    /**
+     * Returns the position of the group with high bits {@code high}.
+     *
+     * @param high
+     *            the high bits
+     * @return the position of the group, or -(p + 1) if there is none and p
+     *         groups come before it
+     */
+    private int group(int high) {
+        return Arrays.binarySearch(this.keys, 0, this.count, high);
+    }
+
+    /**
+     * Inserts a group at position {@code i}.
+     *
+     * @param i
+     *            the position
+     * @param high
+     *            the high bits
+     * @param s
+     *            the group, not empty
+     */
+    private void insertGroup(int i, int high, IntSet s) {
+        if (this.count == this.keys.length) {
+            this.keys = Arrays.copyOf(this.keys, 2 * this.count);
+            this.groups = Arrays.copyOf(this.groups, 2 * this.count);
+        }
+        System.arraycopy(this.keys, i, this.keys, i + 1, this.count - i);
+        System.arraycopy(this.groups, i, this.groups, i + 1, this.count - i);
+        this.keys[i] = high;
+        this.groups[i] = s;
+        this.count++;
+        this.size += s.size();
+    }
+
+    /**
+     * Appends a group, which must come after every existing group.
+     *
+     * @param high
+     *            the high bits
+     * @param s
+     *            the group, not empty
+     */
+    private void appendGroup(int high, IntSet s) {
+        this.insertGroup(this.count, high, s);
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.groups = new IntSet[INITIAL_CAPACITY];
+        this.count = 0;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public LongSet() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    /**
+     * Resets {@code this} to an empty set.
+     *
+     * @clears this
+     */
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        PrimitiveIterator.OfLong it = this.iterator();
+        while (it.hasNext()) {
+            sb.append(it.nextLong());
+            if (it.hasNext()) {
+                sb.append(',');
+            }
+        }
+        return sb.append('}').toString();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    /**
+     * Adds {@code x} to {@code this}.
+     *
+     * @param x
+     *            the element to be added
+     * @updates this
+     * @requires x is not in this
+     * @ensures this = #this union {x}
+     */
+    public final void add(long x) {
+        assert !this.contains(x) : "Violation of: x is not in this";
+        int high = high(x);
+        int i = this.group(high);
+        if (i < 0) {
+            IntSet s = new IntSet();
+            s.add(low(x));
+            this.insertGroup(-(i + 1), high, s);
+        } else {
+            this.groups[i].add(low(x));
+            this.size++;
+        }
+    }
+
+    /**
+     * Removes {@code x} from {@code this}.
+     *
+     * @param x
+     *            the element to be removed
+     * @updates this
+     * @requires x is in this
+     * @ensures this = #this \ {x}
+     */
+    public final void remove(long x) {
+        assert this.contains(x) : "Violation of: x is in this";
+        int i = this.group(high(x));
+        this.groups[i].remove(low(x));
+        this.size--;
+        if (this.groups[i].size() == 0) {
+            System.arraycopy(this.keys, i + 1, this.keys, i,
+                    this.count - i - 1);
+            System.arraycopy(this.groups, i + 1, this.groups, i,
+                    this.count - i - 1);
+            this.count--;
+            this.groups[this.count] = null;
+        }
+    }
+
+    /**
+     * Removes and returns the smallest element of {@code this}.
+     *
+     * @return the element removed
+     * @updates this
+     * @requires |this| > 0
+     * @ensures <pre>
+     * removeAny is in #this  and  this = #this \ {removeAny}  and
+     * for all y: integer where (y is in #this) (removeAny <= y)
+     * </pre>
+     */
+    public final long removeAny() {
+        assert this.size > 0 : "Violation of: this /= empty_set";
+        long x = element(this.keys[0], this.groups[0].iterator().nextInt());
+        this.remove(x);
+        return x;
+    }
+
+    /**
+     * Reports whether {@code x} is in {@code this}.
+     *
+     * @param x
+     *            the element to be checked
+     * @return true iff element is in this
+     * @ensures contains = (x is in this)
+     */
+    public final boolean contains(long x) {
+        int i = this.group(high(x));
+        return i >= 0 && this.groups[i].contains(low(x));
+    }
+
+    /**
+     * Reports size (cardinality) of {@code this}.
+     *
+     * @return the number of elements in this
+     * @ensures size = |this|
+     */
+    public final long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an iterator over the elements of {@code this} in increasing
+     * order.
+     *
+     * @return the iterator
+     */
+    public final PrimitiveIterator.OfLong iterator() {
+        return new LongSetIterator();
+    }
+
+    /**
+     * Implementation of {@code PrimitiveIterator.OfLong} for
+     * {@code LongSet}.
+     */
+    private final class LongSetIterator implements PrimitiveIterator.OfLong {
+
+        /**
+         * Position of the group of the next element.
+         */
+        private int group;
+
+        /**
+         * Iterator over the rest of that group, or null if there is none.
+         */
+        private PrimitiveIterator.OfInt lows;
+
+        /**
+         * No-argument constructor.
+         */
+        LongSetIterator() {
+            this.group = 0;
+            this.lows = null;
+            if (LongSet.this.count > 0) {
+                this.lows = LongSet.this.groups[0].iterator();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.lows != null;
+        }
+
+        @Override
+        public long nextLong() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            long x = element(LongSet.this.keys[this.group],
+                    this.lows.nextInt());
+            if (!this.lows.hasNext()) {
+                this.group++;
+                this.lows = null;
+                if (this.group < LongSet.this.count) {
+                    this.lows = LongSet.this.groups[this.group].iterator();
+                }
+            }
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    /**
+     * Returns the intersection of {@code this} and {@code s}.
+     *
+     * @param s
+     *            the other set
+     * @return the intersection
+     * @ensures and = this intersection s
+     */
+    public final LongSet and(LongSet s) {
+        assert s != null : "Violation of: s is not null";
+        LongSet result = new LongSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.count && j < s.count) {
+            if (this.keys[i] < s.keys[j]) {
+                i++;
+            } else if (this.keys[i] > s.keys[j]) {
+                j++;
+            } else {
+                IntSet both = this.groups[i].and(s.groups[j]);
+                if (both.size() > 0) {
+                    result.appendGroup(this.keys[i], both);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of {@code this} and {@code s}.
+     *
+     * @param s
+     *            the other set
+     * @return the union
+     * @ensures or = this union s
+     */
+    public final LongSet or(LongSet s) {
+        assert s != null : "Violation of: s is not null";
+        LongSet result = new LongSet();
+        int i = 0;
+        int j = 0;
+        while (i < this.count || j < s.count) {
+            if (j == s.count
+                    || (i < this.count && this.keys[i] < s.keys[j])) {
+                result.appendGroup(this.keys[i], copy(this.groups[i]));
+                i++;
+            } else if (i == this.count || this.keys[i] > s.keys[j]) {
+                result.appendGroup(s.keys[j], copy(s.groups[j]));
+                j++;
+            } else {
+                result.appendGroup(this.keys[i],
+                        this.groups[i].or(s.groups[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Re-encodes every group in its smallest containers, as
+     * {@code IntSet.runOptimize} does.
+     */
+    public final void runOptimize() {
+        for (int i = 0; i < this.count; i++) {
+            this.groups[i].runOptimize();
+        }
+    }
+
+    /**
+     * Returns the approximate memory footprint of {@code this} in bytes.
+     *
+     * @return the size in bytes
+     */
+    public final long sizeInBytes() {
+        long bytes = 2 * OVERHEAD_BYTES
+                + (long) (Integer.BYTES + Long.BYTES) * this.keys.length;
+        for (int i = 0; i < this.count; i++) {
+            bytes += this.groups[i].sizeInBytes();
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,455 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set represented as an AVL tree. Updates return a new
+ * {@code PersistentSet} that copies only the nodes on the path to the updated
+ * element (and the few nodes rebalancing touches) and shares every other
+ * subtree with the original, so an update costs O(log n) time and space and
+ * keeping an old version around (a snapshot) costs nothing. Since nodes never
+ * change once built, any number of threads can read a version while another
+ * thread derives new ones from it.
+ *
+ * @param <T>
+ *            type of {@code PersistentSet} entries
+ * @convention <pre>
+ * [$this.root is null iff $this.size = 0]  and
+ * [the tree rooted at $this.root is a binary search tree with no two equal
+ *  labels]  and
+ * [for every node, the heights of its subtrees differ by at most 1, and
+ *  height = 1 + the larger of them (0 for an empty subtree)]  and
+ * $this.size = [number of nodes in the tree rooted at $this.root]
+ * </pre>
+ * @correspondence this = labels($this.root)
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class PersistentSet<T extends Comparable<T>>
+        implements Iterable<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * The empty set.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final PersistentSet EMPTY = new PersistentSet<>(null, 0);
+
+    /**
+     * Immutable tree node.
+     */
+    private static final class Node<T> {
+
+        /**
+         * Label.
+         */
+        private final T label;
+
+        /**
+         * Left subtree, or null.
+         */
+        private final Node<T> left;
+
+        /**
+         * Right subtree, or null.
+         */
+        private final Node<T> right;
+
+        /**
+         * Height of the subtree rooted here.
+         */
+        private final int height;
+
+        /**
+         * Constructor.
+         *
+         * @param left
+         *            the left subtree, or null
+         * @param label
+         *            the label
+         * @param right
+         *            the right subtree, or null
+         */
+        Node(Node<T> left, T label, Node<T> right) {
+            this.left = left;
+            this.label = label;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+        }
+
+    }
+
+    /**
+     * Root of the tree, or null if this is empty.
+     */
+    private final Node<T> root;
+
+    /**
+     * Number of elements.
+     */
+    private final int size;
+
+    /**
+     * Constructor from representation.
+     *
+     * @param root
+     *            the root of the tree, or null
+     * @param size
+     *            the number of nodes in the tree
+     */
+    private PersistentSet(Node<T> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the height of {@code t}.
+     *
+     * @param t
+     *            the subtree, or null
+     * @return the height (0 for null)
+     */
+    private static int height(Node<?> t) {
+        int h = 0;
+        if (t != null) {
+            h = t.height;
+        }
+        return h;
+    }
+
+    /**
+     * Returns an AVL tree with the labels of {@code left}, then {@code label},
+     * then the labels of {@code right}, using at most two rotations.
+     *
+     * @param <T>
+     *            type of labels
+     * @param left
+     *            the left subtree, or null
+     * @param label
+     *            the label
+     * @param right
+     *            the right subtree, or null
+     * @return the balanced tree
+     * @requires <pre>
+     * left and right are AVL trees whose heights differ by at most 2
+     * </pre>
+     */
+    private static <T> Node<T> balance(Node<T> left, T label,
+            Node<T> right) {
+        Node<T> result;
+        if (height(left) > height(right) + 1) {
+            if (height(left.left) >= height(left.right)) {
+                result = new Node<T>(left.left, left.label,
+                        new Node<T>(left.right, label, right));
+            } else {
+                Node<T> lr = left.right;
+                result = new Node<T>(
+                        new Node<T>(left.left, left.label, lr.left), lr.label,
+                        new Node<T>(lr.right, label, right));
+            }
+        } else if (height(right) > height(left) + 1) {
+            if (height(right.right) >= height(right.left)) {
+                result = new Node<T>(new Node<T>(left, label, right.left),
+                        right.label, right.right);
+            } else {
+                Node<T> rl = right.left;
+                result = new Node<T>(new Node<T>(left, label, rl.left),
+                        rl.label,
+                        new Node<T>(rl.right, right.label, right.right));
+            }
+        } else {
+            result = new Node<T>(left, label, right);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tree {@code t} with {@code x} inserted.
+     *
+     * @param <T>
+     *            type of labels
+     * @param t
+     *            the tree, or null
+     * @param x
+     *            the label to insert
+     * @return the new tree
+     * @requires x is not in labels(t)
+     */
+    private static <T extends Comparable<T>> Node<T> insert(Node<T> t, T x) {
+        Node<T> result;
+        if (t == null) {
+            result = new Node<T>(null, x, null);
+        } else if (x.compareTo(t.label) < 0) {
+            result = balance(insert(t.left, x), t.label, t.right);
+        } else {
+            result = balance(t.left, t.label, insert(t.right, x));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the nonempty tree {@code t} without its smallest label.
+     *
+     * @param <T>
+     *            type of labels
+     * @param t
+     *            the tree
+     * @return the new tree, or null
+     */
+    private static <T> Node<T> deleteMin(Node<T> t) {
+        Node<T> result;
+        if (t.left == null) {
+            result = t.right;
+        } else {
+            result = balance(deleteMin(t.left), t.label, t.right);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tree {@code t} with {@code x} deleted.
+     *
+     * @param <T>
+     *            type of labels
+     * @param t
+     *            the tree
+     * @param x
+     *            the label to delete
+     * @return the new tree, or null
+     * @requires x is in labels(t)
+     */
+    private static <T extends Comparable<T>> Node<T> delete(Node<T> t, T x) {
+        Node<T> result;
+        int cmp = x.compareTo(t.label);
+        if (cmp < 0) {
+            result = balance(delete(t.left, x), t.label, t.right);
+        } else if (cmp > 0) {
+            result = balance(t.left, t.label, delete(t.right, x));
+        } else if (t.left == null) {
+            result = t.right;
+        } else if (t.right == null) {
+            result = t.left;
+        } else {
+            Node<T> m = t.right;
+            while (m.left != null) {
+                m = m.left;
+            }
+            result = balance(t.left, m.label, deleteMin(t.right));
+        }
+        return result;
+    }
+
+    /*
+     * Factory ----------------------------------------------------------------
+     */
+
+    /**
+     * Returns the empty {@code PersistentSet}.
+     *
+     * @param <T>
+     *            type of entries
+     * @return the empty set
+     * @ensures empty = {}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Comparable<T>> PersistentSet<T> empty() {
+        return EMPTY;
+    }
+
+    /*
+     * Functional update methods ----------------------------------------------
+     */
+
+    /**
+     * Returns a set like {@code this} except that {@code x} is in it.
+     * {@code this} is not changed.
+     *
+     * @param x
+     *            the element to be added
+     * @return the updated set
+     * @requires x is not in this
+     * @ensures with = this union {x}
+     */
+    public PersistentSet<T> with(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert !this.contains(x) : "Violation of: x is not in this";
+
+        return new PersistentSet<T>(insert(this.root, x), this.size + 1);
+    }
+
+    /**
+     * Returns a set like {@code this} except that {@code x} is not in it.
+     * {@code this} is not changed.
+     *
+     * @param x
+     *            the element to be removed
+     * @return the updated set
+     * @requires x is in this
+     * @ensures without = this \ {x}
+     */
+    public PersistentSet<T> without(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.contains(x) : "Violation of: x is in this";
+
+        PersistentSet<T> result;
+        if (this.size == 1) {
+            result = empty();
+        } else {
+            result = new PersistentSet<T>(delete(this.root, x), this.size - 1);
+        }
+        return result;
+    }
+
+    /*
+     * Read methods -----------------------------------------------------------
+     */
+
+    /**
+     * Reports whether {@code x} is in {@code this}.
+     *
+     * @param x
+     *            the element to be checked
+     * @return true iff element is in this
+     * @ensures contains = (x is in this)
+     */
+    public boolean contains(T x) {
+        assert x != null : "Violation of: x is not null";
+
+        Node<T> t = this.root;
+        int cmp = -1;
+        while (t != null && cmp != 0) {
+            cmp = x.compareTo(t.label);
+            if (cmp < 0) {
+                t = t.left;
+            } else if (cmp > 0) {
+                t = t.right;
+            }
+        }
+        return t != null;
+    }
+
+    /**
+     * Reports the smallest element of {@code this}.
+     *
+     * @return the smallest element
+     * @requires |this| > 0
+     * @ensures <pre>
+     * min is in this  and  for all y: T where (y is in this) (min <= y)
+     * </pre>
+     */
+    public T min() {
+        assert this.size > 0 : "Violation of: this /= empty_set";
+
+        Node<T> t = this.root;
+        while (t.left != null) {
+            t = t.left;
+        }
+        return t.label;
+    }
+
+    /**
+     * Reports the size of {@code this}.
+     *
+     * @return the number of elements in this
+     * @ensures size = |this|
+     */
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PersistentSetIterator();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        boolean first = true;
+        for (T x : this) {
+            if (!first) {
+                result.append(",");
+            }
+            result.append(x);
+            first = false;
+        }
+        return result.append("}").toString();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code PersistentSet},
+     * visiting the elements in increasing order with an explicit stack of the
+     * nodes whose labels and right subtrees are still to be visited.
+     */
+    private final class PersistentSetIterator implements Iterator<T> {
+
+        /**
+         * Stack of pending nodes, deepest on top.
+         */
+        private final Object[] stack;
+
+        /**
+         * Number of nodes on the stack.
+         */
+        private int top;
+
+        /**
+         * No-argument constructor.
+         */
+        PersistentSetIterator() {
+            this.stack = new Object[height(PersistentSet.this.root)];
+            this.top = 0;
+            this.pushLeftSpine(PersistentSet.this.root);
+        }
+
+        /**
+         * Pushes {@code t} and its chain of left descendants.
+         *
+         * @param t
+         *            the subtree, or null
+         */
+        private void pushLeftSpine(Node<T> t) {
+            Node<T> n = t;
+            while (n != null) {
+                this.stack[this.top] = n;
+                this.top++;
+                n = n.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.top > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.top--;
+            Node<T> n = (Node<T>) this.stack[this.top];
+            this.stack[this.top] = null;
+            this.pushLeftSpine(n.right);
+            return n.label;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,1192 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import components.set.Set;
+import components.set.SetSecondary;
+
+/**
+ * {@code Set} represented as an AVL tree (a height-balanced binary search tree)
+ * of linked nodes with implementations of primary methods. Unlike
+ * {@code Set3a}, whose tree can degenerate into a list when elements arrive in
+ * sorted order, the height of the tree stays O(log |this|) for any order of
+ * insertions and removals, and so does the cost of {@code add}, {@code remove}
+ * and {@code contains}. All three walk the node links iteratively (each node
+ * knows its parent, so rebalancing goes back up without recursion), and
+ * {@code contains} neither allocates nor modifies the tree. No method of
+ * {@code Set4} recurses, so none needs more than a small, fixed amount of
+ * stack.
+ *
+ * <p>
+ * Each node also records the size of its subtree, which supports the ordered
+ * queries {@code min}, {@code max}, {@code floor}, {@code ceiling},
+ * {@code rank} and {@code select} in O(log |this|) time and iteration over a
+ * range [lo, hi) in O(log |this| + k) time for k elements.
+ *
+ * <p>
+ * The iterators walk the tree lazily with an explicit stack of at most
+ * height-many nodes, without copying it, in increasing or (with
+ * {@code descendingIterator}) decreasing order; {@code spliterator} splits by
+ * rank, so parallel streams get halves of exactly known sizes.
+ *
+ * <p>
+ * The bulk operations {@code add(Set)}, {@code remove(Set)} and
+ * {@code isSubset} take O(|this| + |s|) time when {@code s} is also a
+ * {@code Set4}: they merge the two sorted sequences and build the (perfectly
+ * balanced) results directly.
+ *
+ * @param <T>
+ *            type of {@code Set} elements
+ * @mathdefinitions <pre>
+ * IS_AVL(
+ *   t: binary tree of T
+ *  ): boolean satisfies
+ *  [t satisfies the binary search tree properties with the ordering reported
+ *   by compareTo for T, including that it has no duplicate labels, and for
+ *   every node of t the heights of its two subtrees differ by at most 1]
+ * </pre>
+ * @convention <pre>
+ * IS_AVL($this.root)  and
+ * [every node's parent field is its parent in $this.root, or null for the
+ *  root]  and
+ * [every node's height field is the height of the subtree rooted there]  and
+ * [every node's count field is the number of nodes of the subtree rooted
+ *  there]  and
+ * $this.size = |labels($this.root)|
+ * </pre>
+ * @correspondence this = labels($this.root)
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Set4<T extends Comparable<T>> extends SetSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial size of the buffer collecting the elements of a sorted
+     * iterator.
+     */
+    private static final int INITIAL_BUFFER_SIZE = 16;
+
+    /**
+     * Node of the AVL tree.
+     */
+    private static final class Node<T> {
+
+        /**
+         * Label.
+         */
+        private T label;
+
+        /**
+         * Left subtree, or null if empty.
+         */
+        private Node<T> left;
+
+        /**
+         * Right subtree, or null if empty.
+         */
+        private Node<T> right;
+
+        /**
+         * Parent, or null for the root.
+         */
+        private Node<T> parent;
+
+        /**
+         * Height of the subtree rooted here (a leaf has height 1).
+         */
+        private int height;
+
+        /**
+         * Number of nodes in the subtree rooted here.
+         */
+        private int count;
+
+        /**
+         * Constructor of a leaf.
+         *
+         * @param label
+         *            the label
+         * @param parent
+         *            the parent, or null for the root
+         */
+        Node(T label, Node<T> parent) {
+            this.label = label;
+            this.parent = parent;
+            this.height = 1;
+            this.count = 1;
+        }
+
+    }
+
+    /**
+     * Root of the tree, or null if {@code this} is empty.
+     */
+    private Node<T> root;
+
+    /**
+     * Number of elements in {@code this}.
+     */
+    private int size;
+
+    /**
+     * Returns the height of {@code t}.
+     *
+     * @param t
+     *            the tree, or null
+     * @return the height of t (0 if t is empty)
+     */
+    private static int height(Node<?> t) {
+        int h = 0;
+        if (t != null) {
+            h = t.height;
+        }
+        return h;
+    }
+
+    /**
+     * Returns the number of nodes of {@code t}.
+     *
+     * @param t
+     *            the tree, or null
+     * @return |labels(t)|
+     */
+    private static int count(Node<?> t) {
+        int c = 0;
+        if (t != null) {
+            c = t.count;
+        }
+        return c;
+    }
+
+    /**
+     * Recomputes the height and node count of {@code t} from those of its
+     * subtrees.
+     *
+     * @param t
+     *            the tree
+     * @updates t.height, t.count
+     */
+    private static void update(Node<?> t) {
+        t.height = 1 + Math.max(height(t.left), height(t.right));
+        t.count = 1 + count(t.left) + count(t.right);
+    }
+
+    /**
+     * Makes {@code replacement} take the place of {@code old} as a child of
+     * {@code parent} (or as the root if {@code parent} is null).
+     *
+     * @param parent
+     *            the parent of {@code old}
+     * @param old
+     *            the subtree being replaced
+     * @param replacement
+     *            the new subtree, or null
+     */
+    private void replaceChild(Node<T> parent, Node<T> old,
+            Node<T> replacement) {
+        if (parent == null) {
+            this.root = replacement;
+        } else if (parent.left == old) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+        if (replacement != null) {
+            replacement.parent = parent;
+        }
+    }
+
+    /**
+     * Rotates the subtree rooted at {@code t} to the left and returns its new
+     * root.
+     *
+     * @param t
+     *            the subtree root, with a nonempty right subtree
+     * @return the new subtree root
+     */
+    private Node<T> rotateLeft(Node<T> t) {
+        Node<T> r = t.right;
+        this.replaceChild(t.parent, t, r);
+        t.right = r.left;
+        if (r.left != null) {
+            r.left.parent = t;
+        }
+        r.left = t;
+        t.parent = r;
+        update(t);
+        update(r);
+        return r;
+    }
+
+    /**
+     * Rotates the subtree rooted at {@code t} to the right and returns its new
+     * root.
+     *
+     * @param t
+     *            the subtree root, with a nonempty left subtree
+     * @return the new subtree root
+     */
+    private Node<T> rotateRight(Node<T> t) {
+        Node<T> l = t.left;
+        this.replaceChild(t.parent, t, l);
+        t.left = l.right;
+        if (l.right != null) {
+            l.right.parent = t;
+        }
+        l.right = t;
+        t.parent = l;
+        update(t);
+        update(l);
+        return l;
+    }
+
+    /**
+     * Restores heights and the AVL balance on the path from {@code n} to the
+     * root, after a single insertion or removal below {@code n}.
+     *
+     * @param n
+     *            the lowest node whose subtree changed, or null
+     */
+    private void rebalanceUp(Node<T> n) {
+        Node<T> p = n;
+        while (p != null) {
+            update(p);
+            int balance = height(p.left) - height(p.right);
+            if (balance > 1) {
+                if (height(p.left.left) < height(p.left.right)) {
+                    this.rotateLeft(p.left);
+                }
+                p = this.rotateRight(p);
+            } else if (balance < -1) {
+                if (height(p.right.right) < height(p.right.left)) {
+                    this.rotateRight(p.right);
+                }
+                p = this.rotateLeft(p);
+            }
+            p = p.parent;
+        }
+    }
+
+    /**
+     * Returns the node labeled {@code x}, or null. Only follows links, so it
+     * neither allocates nor changes the tree.
+     *
+     * @param x
+     *            the label to be searched for
+     * @return the node labeled x, or null if x is not in this
+     */
+    private Node<T> find(T x) {
+        Node<T> found = null;
+        Node<T> n = this.root;
+        while (found == null && n != null) {
+            int compareResult = x.compareTo(n.label);
+            if (compareResult == 0) {
+                found = n;
+            } else if (compareResult < 0) {
+                n = n.left;
+            } else {
+                n = n.right;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Inserts a node labeled {@code x}.
+     *
+     * @param x
+     *            the label to be inserted
+     * @aliases reference {@code x}
+     * @requires x is not in labels($this.root)
+     */
+    private void insert(T x) {
+        if (this.root == null) {
+            this.root = new Node<T>(x, null);
+        } else {
+            Node<T> p = this.root;
+            Node<T> added = null;
+            while (added == null) {
+                if (x.compareTo(p.label) < 0) {
+                    if (p.left == null) {
+                        added = new Node<T>(x, p);
+                        p.left = added;
+                    } else {
+                        p = p.left;
+                    }
+                } else {
+                    if (p.right == null) {
+                        added = new Node<T>(x, p);
+                        p.right = added;
+                    } else {
+                        p = p.right;
+                    }
+                }
+            }
+            this.rebalanceUp(p);
+        }
+    }
+
+    /**
+     * Removes node {@code z} from the tree.
+     *
+     * @param z
+     *            the node, in the tree
+     */
+    private void delete(Node<T> z) {
+        Node<T> victim = z;
+        if (z.left != null && z.right != null) {
+            /*
+             * Move the label of the in-order successor, which has no left
+             * subtree, into z and remove the successor's node instead.
+             */
+            victim = z.right;
+            while (victim.left != null) {
+                victim = victim.left;
+            }
+            z.label = victim.label;
+        }
+        Node<T> child = victim.left;
+        if (child == null) {
+            child = victim.right;
+        }
+        Node<T> parent = victim.parent;
+        this.replaceChild(parent, victim, child);
+        this.rebalanceUp(parent);
+    }
+
+    /**
+     * Returns the labels of {@code this} in increasing order.
+     *
+     * @return the sorted labels
+     * @ensures elements = [entries of this in increasing order]
+     */
+    @SuppressWarnings("unchecked")
+    private T[] elements() {
+        T[] sorted = (T[]) new Comparable[this.size];
+        int i = 0;
+        for (T x : this) {
+            sorted[i] = x;
+            i++;
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns a new node labeled with the middle element of
+     * {@code sorted[lo, hi)}, with the height and count of the perfectly
+     * balanced tree that {@code build} makes from that range.
+     *
+     * @param <T>
+     *            type of labels
+     * @param sorted
+     *            labels in increasing order
+     * @param lo
+     *            first index of the range
+     * @param hi
+     *            index one past the end of the range
+     * @param parent
+     *            the parent of the new node, or null
+     * @return the node
+     * @requires lo < hi
+     */
+    private static <T> Node<T> balancedNode(T[] sorted, int lo, int hi,
+            Node<T> parent) {
+        Node<T> t = new Node<T>(sorted[(lo + hi) >>> 1], parent);
+        t.count = hi - lo;
+        // the left half is never smaller, so height(c) = 1 + height(c / 2)
+        t.height = Integer.SIZE - Integer.numberOfLeadingZeros(t.count);
+        return t;
+    }
+
+    /**
+     * Builds a perfectly balanced tree from {@code sorted[0, n)} and returns
+     * its root. The subtrees still to be built are kept on an explicit stack
+     * (of at most height + 1 entries), so no recursion is involved.
+     *
+     * @param <T>
+     *            type of labels
+     * @param sorted
+     *            labels in increasing order, without duplicates
+     * @param n
+     *            number of labels to use
+     * @return the root, or null if n = 0
+     * @ensures IS_AVL(build) and labels(build) = entries(sorted[0, n))
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Node<T> build(T[] sorted, int n) {
+        Node<T> root = null;
+        if (n > 0) {
+            root = balancedNode(sorted, 0, n, null);
+            Node<T>[] nodes = new Node[root.height + 1];
+            int[] los = new int[root.height + 1];
+            nodes[0] = root;
+            los[0] = 0;
+            int depth = 1;
+            while (depth > 0) {
+                depth--;
+                Node<T> t = nodes[depth];
+                int lo = los[depth];
+                nodes[depth] = null;
+                int mid = lo + count(t) / 2;
+                int hi = lo + count(t);
+                if (lo < mid) {
+                    t.left = balancedNode(sorted, lo, mid, t);
+                    nodes[depth] = t.left;
+                    los[depth] = lo;
+                    depth++;
+                }
+                if (mid + 1 < hi) {
+                    t.right = balancedNode(sorted, mid + 1, hi, t);
+                    nodes[depth] = t.right;
+                    los[depth] = mid + 1;
+                    depth++;
+                }
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Replaces the contents of {@code this} by {@code sorted[0, n)}.
+     *
+     * @param sorted
+     *            labels in increasing order, without duplicates
+     * @param n
+     *            number of labels to use
+     * @replaces this
+     * @ensures this = entries(sorted[0, n))
+     */
+    private void assign(T[] sorted, int n) {
+        this.root = build(sorted, n);
+        this.size = n;
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.root = null;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Set4() {
+        this.createNewRep();
+    }
+
+    /**
+     * Constructor from elements delivered in increasing order, which builds a
+     * perfectly balanced tree in O(n) time without searching for any element.
+     *
+     * @param sorted
+     *            the elements, in increasing order
+     * @requires [sorted delivers its elements in strictly increasing order]
+     * @ensures this = [elements delivered by sorted]
+     */
+    @SuppressWarnings("unchecked")
+    public Set4(Iterator<T> sorted) {
+        assert sorted != null : "Violation of: sorted is not null";
+        T[] elements = (T[]) new Comparable[INITIAL_BUFFER_SIZE];
+        int n = 0;
+        while (sorted.hasNext()) {
+            T x = sorted.next();
+            assert x != null : "Violation of: elements are not null";
+            assert n == 0 || elements[n - 1].compareTo(x) < 0 : ""
+                    + "Violation of: [sorted is in strictly increasing order]";
+            if (n == elements.length) {
+                elements = Arrays.copyOf(elements, 2 * n);
+            }
+            elements[n] = x;
+            n++;
+        }
+        this.assign(elements, n);
+    }
+
+    /**
+     * Constructor from elements in any order: sorts a copy of
+     * {@code elements}, drops duplicates and builds a perfectly balanced tree,
+     * in O(n log n) time (O(n) if {@code elements} is already sorted).
+     *
+     * @param elements
+     *            the elements
+     * @ensures this = entries(elements)
+     */
+    public Set4(T[] elements) {
+        assert elements != null : "Violation of: elements is not null";
+        T[] sorted = Arrays.copyOf(elements, elements.length);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (T x : sorted) {
+            assert x != null : "Violation of: elements are not null";
+            if (n == 0 || sorted[n - 1].compareTo(x) != 0) {
+                sorted[n] = x;
+                n++;
+            }
+        }
+        this.assign(sorted, n);
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Set<T> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Set<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Set4<?> : ""
+                + "Violation of: source is of dynamic type Set4<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Set4<?>, and
+         * the ? must be T or the call would not have compiled.
+         */
+        Set4<T> localSource = (Set4<T>) source;
+        this.root = localSource.root;
+        this.size = localSource.size;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert !this.contains(x) : "Violation of: x is not in this";
+        this.insert(x);
+        this.size++;
+    }
+
+    @Override
+    public final T remove(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.contains(x) : "Violation of: x is in this";
+        Node<T> n = this.find(x);
+        T removed = n.label;
+        this.delete(n);
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final T removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Node<T> n = this.root;
+        while (n.left != null) {
+            n = n.left;
+        }
+        T removed = n.label;
+        this.delete(n);
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final boolean contains(T x) {
+        assert x != null : "Violation of: x is not null";
+        return this.find(x) != null;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new Set4Iterator(null, null);
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Set4}, visiting
+     * the elements in a range [lo, hi) in increasing order.
+     */
+    private final class Set4Iterator implements Iterator<T> {
+
+        /**
+         * Nodes whose labels and right subtrees are still to be visited; the
+         * top one holds the next label.
+         */
+        private final Node<T>[] stack;
+
+        /**
+         * Number of nodes in {@code stack}.
+         */
+        private int depth;
+
+        /**
+         * Exclusive upper bound of the range, or null if there is none.
+         */
+        private final T hi;
+
+        /**
+         * Constructor.
+         *
+         * @param lo
+         *            inclusive lower bound of the range, or null if there is
+         *            none
+         * @param hi
+         *            exclusive upper bound of the range, or null if there is
+         *            none
+         */
+        @SuppressWarnings("unchecked")
+        Set4Iterator(T lo, T hi) {
+            this.stack = new Node[height(Set4.this.root)];
+            this.depth = 0;
+            this.hi = hi;
+            if (lo == null) {
+                this.pushLeftSpine(Set4.this.root);
+            } else {
+                /*
+                 * Push the nodes on the search path for lo whose labels are
+                 * at least lo: the top one is then the ceiling of lo.
+                 */
+                Node<T> n = Set4.this.root;
+                while (n != null) {
+                    if (n.label.compareTo(lo) >= 0) {
+                        this.stack[this.depth] = n;
+                        this.depth++;
+                        n = n.left;
+                    } else {
+                        n = n.right;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Pushes {@code t} and its chain of left descendants.
+         *
+         * @param t
+         *            the tree, or null
+         */
+        private void pushLeftSpine(Node<T> t) {
+            Node<T> n = t;
+            while (n != null) {
+                this.stack[this.depth] = n;
+                this.depth++;
+                n = n.left;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.depth > 0 && (this.hi == null
+                    || this.stack[this.depth - 1].label.compareTo(this.hi) < 0);
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.depth--;
+            Node<T> n = this.stack[this.depth];
+            this.stack[this.depth] = null;
+            this.pushLeftSpine(n.right);
+            return n.label;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /*
+     * Secondary methods ------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void add(Set<T> s) {
+        assert s != null : "Violation of: s is not null";
+        assert s != this : "Violation of: s is not this";
+        if (s instanceof Set4<?>) {
+            Set4<T> other = (Set4<T>) s;
+            T[] a = this.elements();
+            T[] b = other.elements();
+            T[] union = (T[]) new Comparable[a.length + b.length];
+            T[] common = (T[]) new Comparable[Math.min(a.length, b.length)];
+            int i = 0;
+            int j = 0;
+            int u = 0;
+            int c = 0;
+            while (i < a.length || j < b.length) {
+                int compareResult;
+                if (i == a.length) {
+                    compareResult = 1;
+                } else if (j == b.length) {
+                    compareResult = -1;
+                } else {
+                    compareResult = a[i].compareTo(b[j]);
+                }
+                if (compareResult < 0) {
+                    union[u] = a[i];
+                    i++;
+                } else if (compareResult > 0) {
+                    union[u] = b[j];
+                    j++;
+                } else {
+                    union[u] = a[i];
+                    common[c] = b[j];
+                    c++;
+                    i++;
+                    j++;
+                }
+                u++;
+            }
+            this.assign(union, u);
+            other.assign(common, c);
+        } else {
+            super.add(s);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Set<T> remove(Set<T> s) {
+        assert s != null : "Violation of: s is not null";
+        assert s != this : "Violation of: s is not this";
+        Set<T> removed;
+        if (s instanceof Set4<?>) {
+            T[] a = this.elements();
+            T[] b = ((Set4<T>) s).elements();
+            T[] rest = (T[]) new Comparable[a.length];
+            T[] common = (T[]) new Comparable[Math.min(a.length, b.length)];
+            int j = 0;
+            int r = 0;
+            int c = 0;
+            for (T x : a) {
+                while (j < b.length && b[j].compareTo(x) < 0) {
+                    j++;
+                }
+                if (j < b.length && b[j].compareTo(x) == 0) {
+                    common[c] = x;
+                    c++;
+                    j++;
+                } else {
+                    rest[r] = x;
+                    r++;
+                }
+            }
+            this.assign(rest, r);
+            Set4<T> result = (Set4<T>) this.newInstance();
+            result.assign(common, c);
+            removed = result;
+        } else {
+            removed = super.remove(s);
+        }
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final boolean isSubset(Set<T> s) {
+        assert s != null : "Violation of: s is not null";
+        boolean subset;
+        if (s instanceof Set4<?>) {
+            subset = this.size <= s.size();
+            Iterator<T> mine = this.iterator();
+            Iterator<T> theirs = s.iterator();
+            while (subset && mine.hasNext()) {
+                T x = mine.next();
+                int compareResult = -1;
+                if (theirs.hasNext()) {
+                    compareResult = theirs.next().compareTo(x);
+                }
+                while (compareResult < 0 && theirs.hasNext()) {
+                    compareResult = theirs.next().compareTo(x);
+                }
+                subset = compareResult == 0;
+            }
+        } else {
+            subset = super.isSubset(s);
+        }
+        return subset;
+    }
+
+    /*
+     * Ordered methods --------------------------------------------------------
+     */
+
+    /**
+     * Reports the smallest element of {@code this}.
+     *
+     * @return the smallest element
+     * @requires |this| > 0
+     * @ensures min is in this and for all y: T where (y is in this) (min <= y)
+     */
+    public final T min() {
+        assert this.size() > 0 : "Violation of: |this| > 0";
+        Node<T> n = this.root;
+        while (n.left != null) {
+            n = n.left;
+        }
+        return n.label;
+    }
+
+    /**
+     * Reports the largest element of {@code this}.
+     *
+     * @return the largest element
+     * @requires |this| > 0
+     * @ensures max is in this and for all y: T where (y is in this) (y <= max)
+     */
+    public final T max() {
+        assert this.size() > 0 : "Violation of: |this| > 0";
+        Node<T> n = this.root;
+        while (n.right != null) {
+            n = n.right;
+        }
+        return n.label;
+    }
+
+    /**
+     * Reports the largest element of {@code this} that is at most {@code x},
+     * or null if there is none.
+     *
+     * @param x
+     *            the bound
+     * @return the floor of x in this, or null
+     * @ensures <pre>
+     * if there exists y: T where (y is in this and y <= x)
+     *  then floor = [the largest such y]
+     *  else floor = null
+     * </pre>
+     */
+    public final T floor(T x) {
+        assert x != null : "Violation of: x is not null";
+        T result = null;
+        Node<T> n = this.root;
+        while (n != null) {
+            int compareResult = x.compareTo(n.label);
+            if (compareResult < 0) {
+                n = n.left;
+            } else {
+                result = n.label;
+                if (compareResult == 0) {
+                    n = null;
+                } else {
+                    n = n.right;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the smallest element of {@code this} that is at least {@code x},
+     * or null if there is none.
+     *
+     * @param x
+     *            the bound
+     * @return the ceiling of x in this, or null
+     * @ensures <pre>
+     * if there exists y: T where (y is in this and x <= y)
+     *  then ceiling = [the smallest such y]
+     *  else ceiling = null
+     * </pre>
+     */
+    public final T ceiling(T x) {
+        assert x != null : "Violation of: x is not null";
+        T result = null;
+        Node<T> n = this.root;
+        while (n != null) {
+            int compareResult = x.compareTo(n.label);
+            if (compareResult > 0) {
+                n = n.right;
+            } else {
+                result = n.label;
+                if (compareResult == 0) {
+                    n = null;
+                } else {
+                    n = n.left;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of elements of {@code this} smaller than {@code x}.
+     *
+     * @param x
+     *            the bound
+     * @return the rank of x in this
+     * @ensures rank = |{y: T where (y is in this and y < x)}|
+     */
+    public final int rank(T x) {
+        assert x != null : "Violation of: x is not null";
+        int rank = 0;
+        Node<T> n = this.root;
+        while (n != null) {
+            if (x.compareTo(n.label) <= 0) {
+                n = n.left;
+            } else {
+                rank += count(n.left) + 1;
+                n = n.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Reports the element of {@code this} with rank {@code k}, i.e., the
+     * (k+1)-th smallest.
+     *
+     * @param k
+     *            the rank
+     * @return the element of rank k
+     * @requires 0 <= k < |this|
+     * @ensures select is in this and rank(select) = k
+     */
+    public final T select(int k) {
+        assert 0 <= k && k < this.size() : "Violation of: 0 <= k < |this|";
+        int remaining = k;
+        Node<T> n = this.root;
+        int leftCount = count(n.left);
+        while (remaining != leftCount) {
+            if (remaining < leftCount) {
+                n = n.left;
+            } else {
+                remaining -= leftCount + 1;
+                n = n.right;
+            }
+            leftCount = count(n.left);
+        }
+        return n.label;
+    }
+
+    /**
+     * Returns an iterator over the elements of {@code this} in the range [lo,
+     * hi), in increasing order.
+     *
+     * @param lo
+     *            inclusive lower bound
+     * @param hi
+     *            exclusive upper bound
+     * @return the iterator
+     * @requires lo <= hi
+     * @ensures [iterator visits {y: T where (y is in this and lo <= y < hi)}
+     *          in increasing order]
+     */
+    public final Iterator<T> iterator(T lo, T hi) {
+        assert lo != null : "Violation of: lo is not null";
+        assert hi != null : "Violation of: hi is not null";
+        assert lo.compareTo(hi) <= 0 : "Violation of: lo <= hi";
+        return new Set4Iterator(lo, hi);
+    }
+
+    /**
+     * Returns an iterator over the elements of {@code this} in decreasing
+     * order.
+     *
+     * @return the iterator
+     * @ensures [iterator visits the elements of this in decreasing order]
+     */
+    public final Iterator<T> descendingIterator() {
+        return new Set4DescendingIterator();
+    }
+
+    @Override
+    public final Spliterator<T> spliterator() {
+        return new Set4Spliterator(0, this.size);
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Set4}, visiting
+     * the elements in decreasing order.
+     */
+    private final class Set4DescendingIterator implements Iterator<T> {
+
+        /**
+         * Nodes whose labels and left subtrees are still to be visited; the
+         * top one holds the next label.
+         */
+        private final Node<T>[] stack;
+
+        /**
+         * Number of nodes in {@code stack}.
+         */
+        private int depth;
+
+        /**
+         * No-argument constructor.
+         */
+        @SuppressWarnings("unchecked")
+        Set4DescendingIterator() {
+            this.stack = new Node[height(Set4.this.root)];
+            this.depth = 0;
+            this.pushRightSpine(Set4.this.root);
+        }
+
+        /**
+         * Pushes {@code t} and its chain of right descendants.
+         *
+         * @param t
+         *            the tree, or null
+         */
+        private void pushRightSpine(Node<T> t) {
+            Node<T> n = t;
+            while (n != null) {
+                this.stack[this.depth] = n;
+                this.depth++;
+                n = n.right;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.depth > 0;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            this.depth--;
+            Node<T> n = this.stack[this.depth];
+            this.stack[this.depth] = null;
+            this.pushRightSpine(n.left);
+            return n.label;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /**
+     * Implementation of {@code Spliterator} interface for {@code Set4},
+     * covering the elements with ranks in [from, to); splitting hands off the
+     * lower half of the ranks, found with {@code select}.
+     */
+    private final class Set4Spliterator implements Spliterator<T> {
+
+        /**
+         * Rank of the first element covered.
+         */
+        private int from;
+
+        /**
+         * Rank one past the last element covered.
+         */
+        private final int to;
+
+        /**
+         * Iterator over the covered elements, created on the first traversal.
+         */
+        private Iterator<T> elements;
+
+        /**
+         * Constructor.
+         *
+         * @param from
+         *            rank of the first element covered
+         * @param to
+         *            rank one past the last element covered
+         */
+        Set4Spliterator(int from, int to) {
+            this.from = from;
+            this.to = to;
+            this.elements = null;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            boolean advanced = false;
+            if (this.from < this.to) {
+                if (this.elements == null) {
+                    T first = Set4.this.select(this.from);
+                    this.elements = new Set4Iterator(first, null);
+                }
+                action.accept(this.elements.next());
+                this.from++;
+                advanced = true;
+            }
+            return advanced;
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            Spliterator<T> prefix = null;
+            if (this.elements == null && this.to - this.from > 1) {
+                int mid = (this.from + this.to) >>> 1;
+                prefix = new Set4Spliterator(this.from, mid);
+                this.from = mid;
+            }
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return this.to - this.from;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SORTED
+                    | Spliterator.DISTINCT | Spliterator.NONNULL
+                    | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+
+        @Override
+        public Comparator<? super T> getComparator() {
+            // null means the natural order of T
+            return null;
+        }
+
+    }
+
+}
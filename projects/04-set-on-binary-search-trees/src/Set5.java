@@ -0,0 +1,607 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.set.Set;
+import components.set.SetSecondary;
+
+/**
+ * {@code Set} represented as a B-tree of elements with implementations of
+ * primary methods. Each node holds up to {@code MAX_KEYS} elements in a sorted
+ * array (and, unless it is a leaf, one more child than elements), so the tree
+ * has only about log_32(|this|) levels and a search touches one node, i.e., a
+ * few adjacent cache lines, per level instead of one scattered node per
+ * comparison as in a binary tree. Insertion splits full nodes and removal
+ * merges or borrows from siblings on the way down, so every operation is a
+ * single iterative pass from the root.
+ *
+ * @param <T>
+ *            type of {@code Set} elements
+ * @mathdefinitions <pre>
+ * IS_B_TREE(
+ *   t: B-tree of T
+ *  ): boolean satisfies
+ *  [every node holds its elements in strictly increasing order, between
+ *   MIN_DEGREE - 1 and MAX_KEYS of them (the root may hold fewer), and an
+ *   internal node holding k elements has k + 1 children, all of whose
+ *   elements lie between the elements around them; all leaves are at the
+ *   same depth]
+ * </pre>
+ * @convention <pre>
+ * IS_B_TREE($this.root)  and
+ * $this.height = [number of levels of $this.root]  and
+ * $this.size = |labels($this.root)|
+ * </pre>
+ * @correspondence this = labels($this.root)
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Set5<T extends Comparable<T>> extends SetSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Minimum number of children of a non-root internal node.
+     */
+    private static final int MIN_DEGREE = 32;
+
+    /**
+     * Maximum number of elements in a node.
+     */
+    private static final int MAX_KEYS = 2 * MIN_DEGREE - 1;
+
+    /**
+     * Node of the B-tree.
+     */
+    private static final class Node<T> {
+
+        /**
+         * Elements; the first {@code n} are in use, in increasing order.
+         */
+        private final T[] keys;
+
+        /**
+         * Children (the first {@code n + 1} are in use), or null for a leaf.
+         */
+        private final Node<T>[] children;
+
+        /**
+         * Number of elements.
+         */
+        private int n;
+
+        /**
+         * Constructor of an empty node.
+         *
+         * @param leaf
+         *            whether the node is a leaf
+         */
+        @SuppressWarnings("unchecked")
+        Node(boolean leaf) {
+            this.keys = (T[]) new Comparable[MAX_KEYS];
+            if (leaf) {
+                this.children = null;
+            } else {
+                this.children = new Node[MAX_KEYS + 1];
+            }
+            this.n = 0;
+        }
+
+        /**
+         * Reports whether this node is a leaf.
+         *
+         * @return true iff this node has no children
+         */
+        boolean isLeaf() {
+            return this.children == null;
+        }
+
+    }
+
+    /**
+     * Root of the tree (an empty leaf if {@code this} is empty).
+     */
+    private Node<T> root;
+
+    /**
+     * Number of levels of the tree.
+     */
+    private int height;
+
+    /**
+     * Number of elements in {@code this}.
+     */
+    private int size;
+
+    /**
+     * Returns the position of {@code x} among the elements of {@code t}, as
+     * {@code Arrays.binarySearch} does.
+     *
+     * @param <T>
+     *            type of elements
+     * @param t
+     *            the node
+     * @param x
+     *            the element to be searched for
+     * @return the index of x in t.keys[0, t.n) if it is there, else -(i + 1)
+     *         where i is the number of elements of t smaller than x
+     */
+    private static <T extends Comparable<T>> int search(Node<T> t, T x) {
+        return Arrays.binarySearch(t.keys, 0, t.n, x);
+    }
+
+    /**
+     * Inserts {@code x} at position {@code i} of {@code t}, shifting the
+     * elements after it (and, if {@code right} is not null, inserts
+     * {@code right} as the child following {@code x}).
+     *
+     * @param <T>
+     *            type of elements
+     * @param t
+     *            the node, not full
+     * @param i
+     *            the position
+     * @param x
+     *            the element
+     * @param right
+     *            the new child to the right of x, or null for a leaf
+     */
+    private static <T> void insertAt(Node<T> t, int i, T x, Node<T> right) {
+        System.arraycopy(t.keys, i, t.keys, i + 1, t.n - i);
+        t.keys[i] = x;
+        if (right != null) {
+            System.arraycopy(t.children, i + 1, t.children, i + 2, t.n - i);
+            t.children[i + 1] = right;
+        }
+        t.n++;
+    }
+
+    /**
+     * Removes the element at position {@code i} of {@code t} and, if
+     * {@code t} is internal, the child following it.
+     *
+     * @param <T>
+     *            type of elements
+     * @param t
+     *            the node
+     * @param i
+     *            the position
+     */
+    private static <T> void removeAt(Node<T> t, int i) {
+        System.arraycopy(t.keys, i + 1, t.keys, i, t.n - i - 1);
+        t.keys[t.n - 1] = null;
+        if (!t.isLeaf()) {
+            System.arraycopy(t.children, i + 2, t.children, i + 1,
+                    t.n - i - 1);
+            t.children[t.n] = null;
+        }
+        t.n--;
+    }
+
+    /**
+     * Splits the full child {@code i} of {@code parent} in two around its
+     * median element, which moves up into {@code parent}.
+     *
+     * @param <T>
+     *            type of elements
+     * @param parent
+     *            the parent, not full
+     * @param i
+     *            the position of the full child
+     */
+    private static <T> void split(Node<T> parent, int i) {
+        Node<T> left = parent.children[i];
+        Node<T> right = new Node<T>(left.isLeaf());
+        int half = MIN_DEGREE - 1;
+        System.arraycopy(left.keys, MIN_DEGREE, right.keys, 0, half);
+        if (!left.isLeaf()) {
+            System.arraycopy(left.children, MIN_DEGREE, right.children, 0,
+                    MIN_DEGREE);
+            Arrays.fill(left.children, MIN_DEGREE, MAX_KEYS + 1, null);
+        }
+        right.n = half;
+        T median = left.keys[half];
+        Arrays.fill(left.keys, half, MAX_KEYS, null);
+        left.n = half;
+        insertAt(parent, i, median, right);
+    }
+
+    /**
+     * Merges child {@code i + 1} of {@code parent} and the element between
+     * them into child {@code i}.
+     *
+     * @param <T>
+     *            type of elements
+     * @param parent
+     *            the parent
+     * @param i
+     *            the position of the left child
+     * @requires [children i and i + 1 of parent hold MIN_DEGREE - 1 elements
+     *           each]
+     */
+    private static <T> void merge(Node<T> parent, int i) {
+        Node<T> left = parent.children[i];
+        Node<T> right = parent.children[i + 1];
+        left.keys[left.n] = parent.keys[i];
+        System.arraycopy(right.keys, 0, left.keys, left.n + 1, right.n);
+        if (!left.isLeaf()) {
+            System.arraycopy(right.children, 0, left.children, left.n + 1,
+                    right.n + 1);
+        }
+        left.n += right.n + 1;
+        removeAt(parent, i);
+    }
+
+    /**
+     * Makes sure child {@code i} of {@code parent} holds at least
+     * {@code MIN_DEGREE} elements, by borrowing one through {@code parent}
+     * from a sibling or by merging with a sibling, and returns the position of
+     * the child that now covers the old child's range.
+     *
+     * @param <T>
+     *            type of elements
+     * @param parent
+     *            the parent, holding at least MIN_DEGREE elements unless it
+     *            is the root
+     * @param i
+     *            the position of the child
+     * @return the position of the (possibly merged) child
+     */
+    private static <T> int fill(Node<T> parent, int i) {
+        int result = i;
+        Node<T> child = parent.children[i];
+        if (child.n < MIN_DEGREE) {
+            if (i > 0 && parent.children[i - 1].n >= MIN_DEGREE) {
+                Node<T> left = parent.children[i - 1];
+                Node<T> moved = null;
+                if (!left.isLeaf()) {
+                    moved = left.children[left.n];
+                }
+                T borrowed = left.keys[left.n - 1];
+                removeAt(left, left.n - 1);
+                if (moved != null) {
+                    System.arraycopy(child.children, 0, child.children, 1,
+                            child.n + 1);
+                    child.children[0] = moved;
+                }
+                System.arraycopy(child.keys, 0, child.keys, 1, child.n);
+                child.keys[0] = parent.keys[i - 1];
+                child.n++;
+                parent.keys[i - 1] = borrowed;
+            } else if (i < parent.n
+                    && parent.children[i + 1].n >= MIN_DEGREE) {
+                Node<T> right = parent.children[i + 1];
+                child.keys[child.n] = parent.keys[i];
+                if (!right.isLeaf()) {
+                    child.children[child.n + 1] = right.children[0];
+                    System.arraycopy(right.children, 1, right.children, 0,
+                            right.n);
+                    right.children[right.n] = null;
+                }
+                child.n++;
+                parent.keys[i] = right.keys[0];
+                System.arraycopy(right.keys, 1, right.keys, 0, right.n - 1);
+                right.keys[right.n - 1] = null;
+                right.n--;
+            } else if (i < parent.n) {
+                merge(parent, i);
+            } else {
+                merge(parent, i - 1);
+                result = i - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the root by its only child if it has become an empty internal
+     * node.
+     */
+    private void shrinkRoot() {
+        if (this.root.n == 0 && !this.root.isLeaf()) {
+            this.root = this.root.children[0];
+            this.height--;
+        }
+    }
+
+    /**
+     * Inserts {@code x}, splitting full nodes on the way down.
+     *
+     * @param x
+     *            the element to be inserted
+     * @aliases reference {@code x}
+     * @requires x is not in labels($this.root)
+     */
+    private void insert(T x) {
+        if (this.root.n == MAX_KEYS) {
+            Node<T> newRoot = new Node<T>(false);
+            newRoot.children[0] = this.root;
+            split(newRoot, 0);
+            this.root = newRoot;
+            this.height++;
+        }
+        Node<T> t = this.root;
+        int i = -(search(t, x) + 1);
+        while (!t.isLeaf()) {
+            if (t.children[i].n == MAX_KEYS) {
+                split(t, i);
+                if (x.compareTo(t.keys[i]) > 0) {
+                    i++;
+                }
+            }
+            t = t.children[i];
+            i = -(search(t, x) + 1);
+        }
+        insertAt(t, i, x, null);
+    }
+
+    /**
+     * Deletes {@code x}, making sure on the way down that every node entered
+     * below the root can spare an element.
+     *
+     * @param x
+     *            the element to be deleted
+     * @requires x is in labels($this.root)
+     */
+    private void delete(T x) {
+        T target = x;
+        Node<T> t = this.root;
+        boolean done = false;
+        while (!done) {
+            int i = search(t, target);
+            if (t.isLeaf()) {
+                removeAt(t, i);
+                done = true;
+            } else if (i >= 0) {
+                Node<T> left = t.children[i];
+                Node<T> right = t.children[i + 1];
+                if (left.n >= MIN_DEGREE) {
+                    // replace target by its predecessor, then delete that
+                    Node<T> p = left;
+                    while (!p.isLeaf()) {
+                        p = p.children[p.n];
+                    }
+                    t.keys[i] = p.keys[p.n - 1];
+                    target = t.keys[i];
+                    t = left;
+                } else if (right.n >= MIN_DEGREE) {
+                    // replace target by its successor, then delete that
+                    Node<T> s = right;
+                    while (!s.isLeaf()) {
+                        s = s.children[0];
+                    }
+                    t.keys[i] = s.keys[0];
+                    target = t.keys[i];
+                    t = right;
+                } else {
+                    merge(t, i);
+                    this.shrinkRoot();
+                    t = left;
+                }
+            } else {
+                int c = fill(t, -(i + 1));
+                Node<T> child = t.children[c];
+                this.shrinkRoot();
+                t = child;
+            }
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.root = new Node<T>(true);
+        this.height = 1;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Set5() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Set<T> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Set<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Set5<?> : ""
+                + "Violation of: source is of dynamic type Set5<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Set5<?>, and
+         * the ? must be T or the call would not have compiled.
+         */
+        Set5<T> localSource = (Set5<T>) source;
+        this.root = localSource.root;
+        this.height = localSource.height;
+        this.size = localSource.size;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert !this.contains(x) : "Violation of: x is not in this";
+        this.insert(x);
+        this.size++;
+    }
+
+    @Override
+    public final T remove(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.contains(x) : "Violation of: x is in this";
+        Node<T> t = this.root;
+        int i = search(t, x);
+        while (i < 0) {
+            t = t.children[-(i + 1)];
+            i = search(t, x);
+        }
+        T removed = t.keys[i];
+        this.delete(x);
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final T removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        Node<T> t = this.root;
+        while (!t.isLeaf()) {
+            t = t.children[0];
+        }
+        T removed = t.keys[0];
+        this.delete(removed);
+        this.size--;
+        return removed;
+    }
+
+    @Override
+    public final boolean contains(T x) {
+        assert x != null : "Violation of: x is not null";
+        Node<T> t = this.root;
+        int i = search(t, x);
+        while (i < 0 && !t.isLeaf()) {
+            t = t.children[-(i + 1)];
+            i = search(t, x);
+        }
+        return i >= 0;
+    }
+
+    @Override
+    public final int size() {
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new Set5Iterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Set5}, visiting
+     * the elements in increasing order.
+     */
+    private final class Set5Iterator implements Iterator<T> {
+
+        /**
+         * Nodes on the path to the next element, from the root down.
+         */
+        private final Node<T>[] nodes;
+
+        /**
+         * Position in each node of {@code nodes} of its next element.
+         */
+        private final int[] positions;
+
+        /**
+         * Number of nodes on the path.
+         */
+        private int depth;
+
+        /**
+         * No-argument constructor.
+         */
+        @SuppressWarnings("unchecked")
+        Set5Iterator() {
+            this.nodes = new Node[Set5.this.height];
+            this.positions = new int[Set5.this.height];
+            this.depth = 0;
+            if (Set5.this.size > 0) {
+                this.pushLeftmost(Set5.this.root);
+            }
+        }
+
+        /**
+         * Pushes {@code t} and its chain of first children.
+         *
+         * @param t
+         *            the node
+         */
+        private void pushLeftmost(Node<T> t) {
+            Node<T> n = t;
+            while (n != null) {
+                this.nodes[this.depth] = n;
+                this.positions[this.depth] = 0;
+                this.depth++;
+                if (n.isLeaf()) {
+                    n = null;
+                } else {
+                    n = n.children[0];
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.depth > 0;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            int top = this.depth - 1;
+            Node<T> t = this.nodes[top];
+            int i = this.positions[top];
+            T x = t.keys[i];
+            this.positions[top] = i + 1;
+            if (i + 1 == t.n) {
+                this.nodes[top] = null;
+                this.depth--;
+            }
+            if (!t.isLeaf()) {
+                this.pushLeftmost(t.children[i + 1]);
+            }
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
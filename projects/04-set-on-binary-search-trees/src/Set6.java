@@ -0,0 +1,576 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+import components.set.Set;
+import components.set.SetSecondary;
+
+/**
+ * {@code Set} represented as a lock-free skip list of elements with
+ * implementations of primary methods, which may be called by many threads at
+ * once.
+ *
+ * <p>
+ * Every node is linked at level 0 and, with probability 1/2^k, also at levels
+ * 1 through k, so a search skips ahead on the higher levels and takes
+ * O(log |this|) expected time. Links are {@code AtomicMarkableReference}s: a
+ * node is removed by first marking its outgoing links (which logically
+ * deletes it and stops anyone from linking after it) and then swinging its
+ * predecessors' links past it with compare-and-set; any thread that comes
+ * across a marked node helps unlink it. {@code contains} never writes and never
+ * waits. Because the kernel {@code add} and {@code remove} have preconditions
+ * that other threads could invalidate at any moment, concurrent callers should
+ * use {@code addIfAbsent} and {@code removeIfPresent}, which check and update
+ * in one atomic step.
+ *
+ * <p>
+ * Iterators (including the range iterator) walk level 0 in increasing order
+ * and are weakly consistent: they never fail because of concurrent updates,
+ * and they report each element that is in the set for the whole iteration
+ * exactly once. {@code size} is exact when no update is in progress.
+ * {@code clear}, {@code transferFrom} and {@code newInstance} are not meant
+ * to be called while other threads use the set.
+ *
+ * @param <T>
+ *            type of {@code Set} elements
+ * @convention <pre>
+ * [the unmarked nodes reachable from $this.head at level 0, in order, have
+ *  strictly increasing labels and end at $this.tail]  and
+ * [the nodes linked at each level k > 0 are a subsequence of those linked
+ *  at level k - 1]  and
+ * [when no update is in progress, $this.size is the number of unmarked
+ *  nodes at level 0]
+ * </pre>
+ * @correspondence <pre>
+ * this = [set of labels of the unmarked nodes reachable from $this.head at
+ *         level 0, other than $this.head and $this.tail]
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Set6<T extends Comparable<T>> extends SetSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Number of levels of the skip list.
+     */
+    private static final int MAX_LEVEL = 32;
+
+    /**
+     * Node of the skip list.
+     */
+    private static final class Node<T> {
+
+        /**
+         * Label (null for the head and tail sentinels).
+         */
+        private final T label;
+
+        /**
+         * Links to the next node on each level at which this node is linked;
+         * a mark means this node is being removed.
+         */
+        private final AtomicMarkableReference<Node<T>>[] next;
+
+        /**
+         * Constructor.
+         *
+         * @param label
+         *            the label
+         * @param levels
+         *            number of levels at which the node is linked
+         */
+        @SuppressWarnings("unchecked")
+        Node(T label, int levels) {
+            this.label = label;
+            this.next = new AtomicMarkableReference[levels];
+            for (int i = 0; i < levels; i++) {
+                this.next[i] = new AtomicMarkableReference<Node<T>>(null,
+                        false);
+            }
+        }
+
+    }
+
+    /**
+     * Head sentinel, before every element.
+     */
+    private Node<T> head;
+
+    /**
+     * Tail sentinel, after every element.
+     */
+    private Node<T> tail;
+
+    /**
+     * Number of elements in {@code this}.
+     */
+    private AtomicInteger size;
+
+    /**
+     * Returns a random number of levels: k with probability 1/2^k.
+     *
+     * @return the number of levels, in [1, MAX_LEVEL]
+     */
+    private static int randomLevels() {
+        int trailingOnes = Integer
+                .numberOfTrailingZeros(~ThreadLocalRandom.current().nextInt());
+        return Math.min(MAX_LEVEL, 1 + trailingOnes);
+    }
+
+    /**
+     * Reports whether the label of {@code n} is smaller than {@code x}.
+     *
+     * @param n
+     *            a node other than the head
+     * @param x
+     *            the element
+     * @return true iff n is not the tail and n.label < x
+     */
+    private boolean before(Node<T> n, T x) {
+        return n != this.tail && n.label.compareTo(x) < 0;
+    }
+
+    /**
+     * Reports whether {@code n} is labeled {@code x}.
+     *
+     * @param n
+     *            a node other than the head
+     * @param x
+     *            the element
+     * @return true iff n is not the tail and n.label = x
+     */
+    private boolean labeled(Node<T> n, T x) {
+        return n != this.tail && n.label.compareTo(x) == 0;
+    }
+
+    /**
+     * Makes one attempt to find, on every level, the last node before
+     * {@code x} and the node after it, unlinking marked nodes on the way. The
+     * attempt fails if another thread changes a link it is trying to fix.
+     *
+     * @param x
+     *            the element
+     * @param preds
+     *            receives the last node before x on each level
+     * @param succs
+     *            receives the first node at or after x on each level
+     * @return whether the attempt succeeded
+     */
+    private boolean tryFind(T x, Node<T>[] preds, Node<T>[] succs) {
+        boolean[] marked = { false };
+        boolean ok = true;
+        Node<T> pred = this.head;
+        int level = MAX_LEVEL - 1;
+        while (ok && level >= 0) {
+            Node<T> curr = pred.next[level].getReference();
+            boolean more = true;
+            while (ok && more) {
+                Node<T> succ = curr.next[level].get(marked);
+                while (ok && marked[0]) {
+                    ok = pred.next[level].compareAndSet(curr, succ, false,
+                            false);
+                    curr = pred.next[level].getReference();
+                    succ = curr.next[level].get(marked);
+                }
+                if (ok && this.before(curr, x)) {
+                    pred = curr;
+                    curr = succ;
+                } else {
+                    more = false;
+                }
+            }
+            preds[level] = pred;
+            succs[level] = curr;
+            level--;
+        }
+        return ok;
+    }
+
+    /**
+     * Finds, on every level, the last node before {@code x} and the node
+     * after it, unlinking marked nodes on the way.
+     *
+     * @param x
+     *            the element
+     * @param preds
+     *            receives the last node before x on each level
+     * @param succs
+     *            receives the first node at or after x on each level
+     * @return whether succs[0] is labeled x
+     */
+    private boolean find(T x, Node<T>[] preds, Node<T>[] succs) {
+        boolean done = false;
+        while (!done) {
+            done = this.tryFind(x, preds, succs);
+        }
+        return this.labeled(succs[0], x);
+    }
+
+    /**
+     * Links {@code node}, already linked at level 0, at its higher levels.
+     *
+     * @param node
+     *            the node
+     * @param preds
+     *            the last node before node.label on each level
+     * @param succs
+     *            the first node at or after node.label on each level
+     */
+    private void linkUpperLevels(Node<T> node, Node<T>[] preds,
+            Node<T>[] succs) {
+        int level = 1;
+        while (level < node.next.length) {
+            Node<T> succ = succs[level];
+            AtomicMarkableReference<Node<T>> link = node.next[level];
+            if (link.isMarked()) {
+                // node is already being removed: stop linking it
+                level = node.next.length;
+            } else if (link.getReference() != succ) {
+                link.compareAndSet(link.getReference(), succ, false, false);
+            } else if (preds[level].next[level].compareAndSet(succ, node,
+                    false, false)) {
+                level++;
+            } else {
+                this.find(node.label, preds, succs);
+            }
+        }
+    }
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.head = new Node<T>(null, MAX_LEVEL);
+        this.tail = new Node<T>(null, MAX_LEVEL);
+        for (int i = 0; i < MAX_LEVEL; i++) {
+            this.head.next[i].set(this.tail, false);
+        }
+        this.size = new AtomicInteger(0);
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Set6() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Set<T> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Set<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Set6<?> : ""
+                + "Violation of: source is of dynamic type Set6<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Set6<?>, and
+         * the ? must be T or the call would not have compiled.
+         */
+        Set6<T> localSource = (Set6<T>) source;
+        this.head = localSource.head;
+        this.tail = localSource.tail;
+        this.size = localSource.size;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert !this.contains(x) : "Violation of: x is not in this";
+        this.addIfAbsent(x);
+    }
+
+    @Override
+    public final T remove(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.contains(x) : "Violation of: x is in this";
+        return this.removeIfPresent(x);
+    }
+
+    @Override
+    public final T removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+        /*
+         * Another thread may remove the first element first; then try the new
+         * first one (giving up, and returning null, only if other threads
+         * empty the set meanwhile).
+         */
+        T removed = null;
+        Node<T> first = this.head.next[0].getReference();
+        while (removed == null && first != this.tail) {
+            removed = this.removeIfPresent(first.label);
+            first = this.head.next[0].getReference();
+        }
+        return removed;
+    }
+
+    @Override
+    public final boolean contains(T x) {
+        assert x != null : "Violation of: x is not null";
+        boolean[] marked = { false };
+        Node<T> pred = this.head;
+        Node<T> curr = null;
+        for (int level = MAX_LEVEL - 1; level >= 0; level--) {
+            curr = pred.next[level].getReference();
+            boolean more = true;
+            while (more) {
+                Node<T> succ = curr.next[level].get(marked);
+                while (marked[0]) {
+                    // skip (without unlinking) nodes being removed
+                    curr = succ;
+                    succ = curr.next[level].get(marked);
+                }
+                if (this.before(curr, x)) {
+                    pred = curr;
+                    curr = succ;
+                } else {
+                    more = false;
+                }
+            }
+        }
+        return this.labeled(curr, x);
+    }
+
+    @Override
+    public final int size() {
+        return this.size.get();
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new Set6Iterator(this.head.next[0].getReference(), null);
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for {@code Set6}, visiting
+     * the elements less than a bound in increasing order along level 0.
+     */
+    private final class Set6Iterator implements Iterator<T> {
+
+        /**
+         * Next node to report, or the tail.
+         */
+        private Node<T> next;
+
+        /**
+         * Exclusive upper bound, or null if there is none.
+         */
+        private final T hi;
+
+        /**
+         * Constructor.
+         *
+         * @param start
+         *            the first node to consider
+         * @param hi
+         *            exclusive upper bound, or null if there is none
+         */
+        Set6Iterator(Node<T> start, T hi) {
+            this.next = start;
+            this.hi = hi;
+            this.skipRemoved();
+        }
+
+        /**
+         * Advances {@code next} past nodes being removed.
+         */
+        private void skipRemoved() {
+            while (this.next != Set6.this.tail
+                    && this.next.next[0].isMarked()) {
+                this.next = this.next.next[0].getReference();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != Set6.this.tail && (this.hi == null
+                    || this.next.label.compareTo(this.hi) < 0);
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T x = this.next.label;
+            this.next = this.next.next[0].getReference();
+            this.skipRemoved();
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /*
+     * Concurrent methods -----------------------------------------------------
+     */
+
+    /**
+     * Adds {@code x} to {@code this} if it is not already there, atomically.
+     *
+     * @param x
+     *            the element to be added
+     * @return whether x was added
+     * @aliases reference {@code x}
+     * @updates this
+     * @ensures <pre>
+     * addIfAbsent = (x is not in #this)  and  this = #this union {x}
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    public final boolean addIfAbsent(T x) {
+        assert x != null : "Violation of: x is not null";
+        Node<T>[] preds = new Node[MAX_LEVEL];
+        Node<T>[] succs = new Node[MAX_LEVEL];
+        Node<T> node = new Node<T>(x, randomLevels());
+        boolean added = false;
+        boolean done = false;
+        while (!done) {
+            if (this.find(x, preds, succs)) {
+                done = true;
+            } else {
+                for (int level = 0; level < node.next.length; level++) {
+                    node.next[level].set(succs[level], false);
+                }
+                if (preds[0].next[0].compareAndSet(succs[0], node, false,
+                        false)) {
+                    this.size.incrementAndGet();
+                    this.linkUpperLevels(node, preds, succs);
+                    added = true;
+                    done = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Removes {@code x} from {@code this} if it is there, atomically, and
+     * returns the removed element (or null).
+     *
+     * @param x
+     *            the element to be removed
+     * @return the removed element, or null if x was not in this
+     * @updates this
+     * @ensures <pre>
+     * this = #this \ {x}  and
+     * if x is in #this then removeIfPresent = x else removeIfPresent = null
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    public final T removeIfPresent(T x) {
+        assert x != null : "Violation of: x is not null";
+        Node<T>[] preds = new Node[MAX_LEVEL];
+        Node<T>[] succs = new Node[MAX_LEVEL];
+        T removed = null;
+        if (this.find(x, preds, succs)) {
+            Node<T> victim = succs[0];
+            boolean[] marked = { false };
+            for (int level = victim.next.length - 1; level > 0; level--) {
+                Node<T> succ = victim.next[level].get(marked);
+                while (!marked[0]) {
+                    victim.next[level].attemptMark(succ, true);
+                    succ = victim.next[level].get(marked);
+                }
+            }
+            /*
+             * Marking the level-0 link is the moment of removal; only the
+             * thread whose compare-and-set does it reports the element.
+             */
+            Node<T> succ = victim.next[0].get(marked);
+            boolean done = marked[0];
+            while (!done) {
+                if (victim.next[0].compareAndSet(succ, succ, false, true)) {
+                    removed = victim.label;
+                    this.size.decrementAndGet();
+                    this.find(x, preds, succs);
+                    done = true;
+                } else {
+                    succ = victim.next[0].get(marked);
+                    done = marked[0];
+                }
+            }
+        }
+        return removed;
+    }
+
+    /*
+     * Ordered methods --------------------------------------------------------
+     */
+
+    /**
+     * Returns a weakly consistent iterator over the elements of {@code this}
+     * in the range [lo, hi), in increasing order.
+     *
+     * @param lo
+     *            inclusive lower bound
+     * @param hi
+     *            exclusive upper bound
+     * @return the iterator
+     * @requires lo <= hi
+     * @ensures [iterator visits {y: T where (y is in this and lo <= y < hi)}
+     *          in increasing order]
+     */
+    @SuppressWarnings("unchecked")
+    public final Iterator<T> iterator(T lo, T hi) {
+        assert lo != null : "Violation of: lo is not null";
+        assert hi != null : "Violation of: hi is not null";
+        assert lo.compareTo(hi) <= 0 : "Violation of: lo <= hi";
+        Node<T>[] preds = new Node[MAX_LEVEL];
+        Node<T>[] succs = new Node[MAX_LEVEL];
+        /*
+         * Start from the node find reached through an unmarked predecessor,
+         * never from a node that may already be unlinked (whose frozen links
+         * would skip nodes added after it was unlinked).
+         */
+        this.find(lo, preds, succs);
+        return new Set6Iterator(succs[0], hi);
+    }
+
+}
@@ -0,0 +1,148 @@
+import java.util.Iterator;
+
+import components.set.Set;
+import components.set.SetSecondary;
+
+/**
+ * {@code Set} represented as a {@code PersistentSet} (an immutable AVL tree),
+ * with implementations of primary methods. Because the representation is
+ * immutable, {@code snapshot} can hand out the current contents in constant
+ * time; later changes to {@code this} do not affect a snapshot already taken,
+ * and readers of a snapshot need no lock while {@code this} keeps changing.
+ *
+ * @param <T>
+ *            type of {@code Set} entries
+ * @convention $this.tree is not null
+ * @correspondence this = $this.tree
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class Set7<T extends Comparable<T>> extends SetSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Current contents of {@code this}.
+     */
+    private PersistentSet<T> tree;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.tree = PersistentSet.empty();
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public Set7() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final Set<T> newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(Set<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof Set7<?> : ""
+                + "Violation of: source is of dynamic type Set7<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type Set7<?>, and
+         * the ? must be T or the call would not have compiled.
+         */
+        Set7<T> localSource = (Set7<T>) source;
+        this.tree = localSource.tree;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert !this.contains(x) : "Violation of: x is not in this";
+
+        this.tree = this.tree.with(x);
+    }
+
+    @Override
+    public final T remove(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.contains(x) : "Violation of: x is in this";
+
+        this.tree = this.tree.without(x);
+        return x;
+    }
+
+    @Override
+    public final T removeAny() {
+        assert this.size() > 0 : "Violation of: this /= empty_set";
+
+        T removed = this.tree.min();
+        this.tree = this.tree.without(removed);
+        return removed;
+    }
+
+    @Override
+    public final boolean contains(T x) {
+        assert x != null : "Violation of: x is not null";
+
+        return this.tree.contains(x);
+    }
+
+    @Override
+    public final int size() {
+        return this.tree.size();
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return this.tree.iterator();
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
+
+    /**
+     * Returns an immutable snapshot of the current contents of {@code this},
+     * in constant time.
+     *
+     * @return the current contents of this
+     * @ensures snapshot = this
+     */
+    public final PersistentSet<T> snapshot() {
+        return this.tree;
+    }
+
+}
@@ -0,0 +1,234 @@
+import java.util.concurrent.ThreadLocalRandom;
+
+import components.set.Set;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Measures the throughput of a mixed workload (90% {@code contains}, 5% add,
+ * 5% remove) run by 1 to 16 threads on a shared {@code Set6} (lock-free skip
+ * list) and on a {@code Set3a} guarded by a single lock. Run with assertions
+ * disabled.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class SetConcurrencyBenchmark {
+
+    /**
+     * Thread counts to measure.
+     */
+    private static final int[] THREADS = { 1, 2, 4, 8, 16 };
+
+    /**
+     * Range of the elements (the sets hold about half of it).
+     */
+    private static final int RANGE = 1_000_000;
+
+    /**
+     * Total number of operations per measurement, divided among the threads.
+     */
+    private static final int OPERATIONS = 4_000_000;
+
+    /**
+     * Percentage of operations that are lookups.
+     */
+    private static final int LOOKUP_PERCENT = 90;
+
+    /**
+     * Percentage of operations that are lookups or additions.
+     */
+    private static final int LOOKUP_OR_ADD_PERCENT = 95;
+
+    /**
+     * Number of percentage points in the whole.
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Operations on a set shared by the benchmark threads.
+     */
+    private interface SharedSet {
+
+        /**
+         * Reports whether {@code x} is in the set.
+         *
+         * @param x
+         *            the element
+         * @return whether x is in the set
+         */
+        boolean contains(Integer x);
+
+        /**
+         * Adds {@code x} to the set if it is not there.
+         *
+         * @param x
+         *            the element
+         */
+        void addIfAbsent(Integer x);
+
+        /**
+         * Removes {@code x} from the set if it is there.
+         *
+         * @param x
+         *            the element
+         */
+        void removeIfPresent(Integer x);
+
+    }
+
+    /**
+     * {@code SharedSet} on a {@code Set6}.
+     */
+    private static final class LockFree implements SharedSet {
+
+        /**
+         * The set.
+         */
+        private final Set6<Integer> set = new Set6<Integer>();
+
+        @Override
+        public boolean contains(Integer x) {
+            return this.set.contains(x);
+        }
+
+        @Override
+        public void addIfAbsent(Integer x) {
+            this.set.addIfAbsent(x);
+        }
+
+        @Override
+        public void removeIfPresent(Integer x) {
+            this.set.removeIfPresent(x);
+        }
+
+    }
+
+    /**
+     * {@code SharedSet} on a {@code Set3a} guarded by a lock ({@code contains}
+     * needs it too, since it disassembles and reassembles the tree).
+     */
+    private static final class Locked implements SharedSet {
+
+        /**
+         * The set.
+         */
+        private final Set<Integer> set = new Set3a<Integer>();
+
+        @Override
+        public synchronized boolean contains(Integer x) {
+            return this.set.contains(x);
+        }
+
+        @Override
+        public synchronized void addIfAbsent(Integer x) {
+            if (!this.set.contains(x)) {
+                this.set.add(x);
+            }
+        }
+
+        @Override
+        public synchronized void removeIfPresent(Integer x) {
+            if (this.set.contains(x)) {
+                this.set.remove(x);
+            }
+        }
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SetConcurrencyBenchmark() {
+    }
+
+    /**
+     * Runs the workload on {@code set} with {@code threads} threads and
+     * returns the elapsed time in nanoseconds.
+     *
+     * @param set
+     *            the shared set, filled with about half of the range
+     * @param threads
+     *            number of threads
+     * @return the elapsed time
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static long run(SharedSet set, int threads)
+            throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        int perThread = OPERATIONS / threads;
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < perThread; i++) {
+                    Integer x = random.nextInt(RANGE);
+                    int kind = random.nextInt(PERCENT);
+                    if (kind < LOOKUP_PERCENT) {
+                        set.contains(x);
+                    } else if (kind < LOOKUP_OR_ADD_PERCENT) {
+                        set.addIfAbsent(x);
+                    } else {
+                        set.removeIfPresent(x);
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Fills {@code set} with random even elements of the range.
+     *
+     * @param set
+     *            the shared set
+     * @return set
+     */
+    private static SharedSet fill(SharedSet set) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < RANGE / 2; i++) {
+            set.addIfAbsent(2 * random.nextInt(RANGE / 2));
+        }
+        return set;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public static void main(String[] args) throws InterruptedException {
+        SimpleWriter out = new SimpleWriter1L();
+        out.println(OPERATIONS + " operations (" + LOOKUP_PERCENT
+                + "% contains) over " + RANGE + " elements; "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        SharedSet lockFree = fill(new LockFree());
+        SharedSet locked = fill(new Locked());
+        for (int threads : THREADS) {
+            double lockFreeRate = OPERATIONS * NANOS_PER_SECOND
+                    / run(lockFree, threads);
+            double lockedRate = OPERATIONS * NANOS_PER_SECOND
+                    / run(locked, threads);
+            out.println(String.format("  %2d threads: Set6 %12.0f ops/s"
+                    + "   locked Set3a %12.0f ops/s", threads, lockFreeRate,
+                    lockedRate));
+        }
+        out.close();
+    }
+
+}
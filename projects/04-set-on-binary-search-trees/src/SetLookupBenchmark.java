@@ -0,0 +1,133 @@
+import java.util.Random;
+
+import components.set.Set;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+
+/**
+ * Compares the cost of random {@code contains} calls on {@code Set3a} (binary
+ * search tree in a {@code BinaryTree1}), {@code Set4} (AVL tree of linked
+ * nodes) and {@code Set5} (B-tree with wide array nodes) holding 1M and 10M
+ * {@code Integer}s. Elements are inserted in random order so that
+ * {@code Set3a} stays reasonably shallow. Run with assertions disabled and a
+ * large heap (e.g., -Xmx8g).
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class SetLookupBenchmark {
+
+    /**
+     * Set sizes to measure.
+     */
+    private static final int[] SIZES = { 1_000_000, 10_000_000 };
+
+    /**
+     * Number of timed lookups per set (half of them miss).
+     */
+    private static final int LOOKUPS = 2_000_000;
+
+    /**
+     * Number of timed rounds (the best one is reported).
+     */
+    private static final int ROUNDS = 5;
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SetLookupBenchmark() {
+    }
+
+    /**
+     * Returns the even numbers 0, 2, ..., 2(n - 1) in random order.
+     *
+     * @param n
+     *            number of elements
+     * @param random
+     *            the source of randomness
+     * @return the shuffled elements
+     */
+    private static int[] shuffledEvens(int n, Random random) {
+        int[] elements = new int[n];
+        for (int i = 0; i < n; i++) {
+            elements[i] = 2 * i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = elements[i];
+            elements[i] = elements[j];
+            elements[j] = tmp;
+        }
+        return elements;
+    }
+
+    /**
+     * Fills {@code set} with {@code elements}, then reports on {@code out} the
+     * time per lookup of random probes (odd probes miss).
+     *
+     * @param out
+     *            the output stream
+     * @param name
+     *            the name of the implementation
+     * @param set
+     *            an empty set of the implementation
+     * @param elements
+     *            the elements
+     * @param probes
+     *            the lookups to time
+     * @updates set, out
+     */
+    private static void measure(SimpleWriter out, String name,
+            Set<Integer> set, int[] elements, Integer[] probes) {
+        long start = System.nanoTime();
+        for (int x : elements) {
+            set.add(x);
+        }
+        double buildMillis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+
+        long best = Long.MAX_VALUE;
+        int found = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            found = 0;
+            start = System.nanoTime();
+            for (Integer probe : probes) {
+                if (set.contains(probe)) {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        out.println(String.format(
+                "  %-6s build %9.1f ms  contains %7.1f ns/op  (%d found)",
+                name, buildMillis, (double) best / probes.length, found));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(0);
+        for (int n : SIZES) {
+            int[] elements = shuffledEvens(n, random);
+            Integer[] probes = new Integer[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                probes[i] = random.nextInt(2 * n);
+            }
+            out.println(n + " elements, " + LOOKUPS + " random lookups");
+            measure(out, "Set3a", new Set3a<Integer>(), elements, probes);
+            measure(out, "Set4", new Set4<Integer>(), elements, probes);
+            measure(out, "Set5", new Set5<Integer>(), elements, probes);
+        }
+        out.close();
+    }
+
+}
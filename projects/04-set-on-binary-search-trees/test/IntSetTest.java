@@ -0,0 +1,212 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code IntSet}.
+ */
+public class IntSetTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 300_000;
+
+    /**
+     * Number of operations between full comparisons in the randomized test.
+     */
+    private static final int CHECK_INTERVAL = 30_000;
+
+    /**
+     * Width of a chunk of values sharing a container.
+     */
+    private static final int CHUNK = 1 << 16;
+
+    /**
+     * Number of elements in a dense chunk of the randomized tests (more than
+     * fit in an array container).
+     */
+    private static final int DENSE = 10_000;
+
+    /**
+     * Number of scattered elements in the randomized tests.
+     */
+    private static final int SPARSE = 2_000;
+
+    /**
+     * Length of the consecutive range in the run test.
+     */
+    private static final int RUN_LENGTH = 200_000;
+
+    /**
+     * Checks that {@code s} iterates over exactly the elements of
+     * {@code expected}, in increasing order.
+     *
+     * @param expected
+     *            the expected elements
+     * @param s
+     *            the set
+     */
+    private static void checkSame(TreeSet<Integer> expected, IntSet s) {
+        assertEquals(expected.size(), s.size());
+        PrimitiveIterator.OfInt it = s.iterator();
+        for (int x : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(x, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Returns a random element: half of the time from a dense chunk just
+     * below zero, a quarter of the time from a dense chunk far above zero,
+     * and otherwise from the whole int range.
+     *
+     * @param random
+     *            the source of randomness
+     * @return the element
+     */
+    private static int randomElement(Random random) {
+        int x;
+        int kind = random.nextInt(2 + 2);
+        if (kind < 2) {
+            x = -1 - random.nextInt(CHUNK);
+        } else if (kind == 2) {
+            x = Integer.MAX_VALUE - random.nextInt(CHUNK);
+        } else {
+            x = random.nextInt();
+        }
+        return x;
+    }
+
+    /**
+     * Fills an {@code IntSet} and a {@code TreeSet} with the same random
+     * elements: {@code DENSE} from a chunk starting at {@code base} and
+     * {@code SPARSE} from the whole int range.
+     *
+     * @param random
+     *            the source of randomness
+     * @param base
+     *            the start of the dense chunk
+     * @param expected
+     *            the tree set to fill
+     * @return the filled IntSet
+     * @updates expected
+     */
+    private static IntSet fill(Random random, int base,
+            TreeSet<Integer> expected) {
+        IntSet s = new IntSet();
+        for (int i = 0; i < DENSE + SPARSE; i++) {
+            int x;
+            if (i < DENSE) {
+                x = base + random.nextInt(CHUNK);
+            } else {
+                x = random.nextInt();
+            }
+            if (expected.add(x)) {
+                s.add(x);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Tests a long random sequence of adds, removes and lookups, with array
+     * and bitmap containers and negative elements, against
+     * {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testRandomOperations() {
+        IntSet s = new IntSet();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        Random random = new Random(0);
+        for (int i = 1; i <= OPERATIONS; i++) {
+            int x = randomElement(random);
+            assertEquals(expected.contains(x), s.contains(x));
+            if (random.nextInt(2 + 1) > 0) {
+                if (expected.add(x)) {
+                    s.add(x);
+                }
+            } else if (expected.remove(x)) {
+                s.remove(x);
+            }
+            if (i % CHECK_INTERVAL == 0) {
+                checkSame(expected, s);
+            }
+        }
+        while (expected.size() > 0) {
+            assertEquals(expected.pollFirst().intValue(), s.removeAny());
+        }
+        assertEquals(0, s.size());
+    }
+
+    /**
+     * Tests that {@code runOptimize} stores a long range as runs, in less
+     * memory, without changing the elements, and that the set stays
+     * updatable afterwards.
+     */
+    @Test
+    public void testRunOptimize() {
+        IntSet s = new IntSet();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (int x = -RUN_LENGTH / 2; x < RUN_LENGTH / 2; x++) {
+            s.add(x);
+            expected.add(x);
+        }
+        long before = s.sizeInBytes();
+        s.runOptimize();
+        assertTrue(s.sizeInBytes() < before);
+        checkSame(expected, s);
+        assertTrue(s.contains(0));
+        assertFalse(s.contains(RUN_LENGTH));
+
+        s.remove(0);
+        expected.remove(0);
+        s.add(RUN_LENGTH);
+        expected.add(RUN_LENGTH);
+        checkSame(expected, s);
+    }
+
+    /**
+     * Tests {@code and} and {@code or} on sets with overlapping dense chunks,
+     * including after {@code runOptimize}, against {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testAndOr() {
+        Random random = new Random(1);
+        TreeSet<Integer> a = new TreeSet<Integer>();
+        TreeSet<Integer> b = new TreeSet<Integer>();
+        IntSet sa = fill(random, -CHUNK / 2, a);
+        IntSet sb = fill(random, 0, b);
+        for (int i = 0; i < DENSE; i++) {
+            int x = 2 * CHUNK + i;
+            if (a.add(x)) {
+                sa.add(x);
+            }
+            if (b.add(x + DENSE / 2)) {
+                sb.add(x + DENSE / 2);
+            }
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            TreeSet<Integer> both = new TreeSet<Integer>(a);
+            both.retainAll(b);
+            TreeSet<Integer> either = new TreeSet<Integer>(a);
+            either.addAll(b);
+            checkSame(both, sa.and(sb));
+            checkSame(both, sb.and(sa));
+            checkSame(either, sa.or(sb));
+            checkSame(either, sb.or(sa));
+            checkSame(a, sa);
+            checkSame(b, sb);
+            sa.runOptimize();
+            sb.runOptimize();
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code LongSet}.
+ */
+public class LongSetTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 300_000;
+
+    /**
+     * Number of operations between full comparisons in the randomized test.
+     */
+    private static final int CHECK_INTERVAL = 30_000;
+
+    /**
+     * Width of a group of values sharing an {@code IntSet}.
+     */
+    private static final long GROUP = 1L << 32;
+
+    /**
+     * Width of the dense ranges of the randomized tests.
+     */
+    private static final int DENSE_RANGE = 1 << 16;
+
+    /**
+     * Number of elements in a dense range of the bulk test.
+     */
+    private static final int DENSE = 10_000;
+
+    /**
+     * Number of scattered elements in the bulk test.
+     */
+    private static final int SPARSE = 2_000;
+
+    /**
+     * Length of the consecutive range in the run test.
+     */
+    private static final int RUN_LENGTH = 200_000;
+
+    /**
+     * Checks that {@code s} iterates over exactly the elements of
+     * {@code expected}, in increasing order.
+     *
+     * @param expected
+     *            the expected elements
+     * @param s
+     *            the set
+     */
+    private static void checkSame(TreeSet<Long> expected, LongSet s) {
+        assertEquals(expected.size(), s.size());
+        PrimitiveIterator.OfLong it = s.iterator();
+        for (long x : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(x, it.nextLong());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Returns a random element: from a dense range straddling zero, from a
+     * dense range straddling the boundary between two groups (where the low
+     * bits change sign), near the extremes of the long range, or from the
+     * whole long range.
+     *
+     * @param random
+     *            the source of randomness
+     * @return the element
+     */
+    private static long randomElement(Random random) {
+        long x;
+        int kind = random.nextInt(2 + 2 + 1);
+        if (kind == 0) {
+            x = random.nextInt(DENSE_RANGE) - DENSE_RANGE / 2;
+        } else if (kind == 1) {
+            x = GROUP + random.nextInt(DENSE_RANGE) - DENSE_RANGE / 2;
+        } else if (kind == 2) {
+            x = Long.MIN_VALUE + random.nextInt(DENSE_RANGE);
+        } else if (kind == 2 + 1) {
+            x = Long.MAX_VALUE - random.nextInt(DENSE_RANGE);
+        } else {
+            x = random.nextLong();
+        }
+        return x;
+    }
+
+    /**
+     * Fills a {@code LongSet} and a {@code TreeSet} with the same random
+     * elements: {@code DENSE} from a range starting at {@code base} and
+     * {@code SPARSE} from the whole long range.
+     *
+     * @param random
+     *            the source of randomness
+     * @param base
+     *            the start of the dense range
+     * @param expected
+     *            the tree set to fill
+     * @return the filled LongSet
+     * @updates expected
+     */
+    private static LongSet fill(Random random, long base,
+            TreeSet<Long> expected) {
+        LongSet s = new LongSet();
+        for (int i = 0; i < DENSE + SPARSE; i++) {
+            long x;
+            if (i < DENSE) {
+                x = base + random.nextInt(DENSE_RANGE);
+            } else {
+                x = random.nextLong();
+            }
+            if (expected.add(x)) {
+                s.add(x);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Tests a long random sequence of adds, removes and lookups, across
+     * group boundaries and the extremes of the long range, against
+     * {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testRandomOperations() {
+        LongSet s = new LongSet();
+        TreeSet<Long> expected = new TreeSet<Long>();
+        Random random = new Random(0);
+        for (int i = 1; i <= OPERATIONS; i++) {
+            long x = randomElement(random);
+            assertEquals(expected.contains(x), s.contains(x));
+            if (random.nextInt(2 + 1) > 0) {
+                if (expected.add(x)) {
+                    s.add(x);
+                }
+            } else if (expected.remove(x)) {
+                s.remove(x);
+            }
+            if (i % CHECK_INTERVAL == 0) {
+                checkSame(expected, s);
+            }
+        }
+        while (expected.size() > 0) {
+            assertEquals(expected.pollFirst().longValue(), s.removeAny());
+        }
+        assertEquals(0, s.size());
+    }
+
+    /**
+     * Tests that {@code runOptimize} stores a long range crossing a group
+     * boundary in less memory, without changing the elements.
+     */
+    @Test
+    public void testRunOptimize() {
+        LongSet s = new LongSet();
+        TreeSet<Long> expected = new TreeSet<Long>();
+        for (long x = GROUP - RUN_LENGTH / 2; x < GROUP + RUN_LENGTH / 2; x++) {
+            s.add(x);
+            expected.add(x);
+        }
+        long before = s.sizeInBytes();
+        s.runOptimize();
+        assertTrue(s.sizeInBytes() < before);
+        checkSame(expected, s);
+        assertTrue(s.contains(GROUP));
+        assertFalse(s.contains(0));
+    }
+
+    /**
+     * Tests {@code and} and {@code or} on sets with overlapping dense ranges
+     * in several groups, against {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testAndOr() {
+        Random random = new Random(1);
+        TreeSet<Long> a = new TreeSet<Long>();
+        TreeSet<Long> b = new TreeSet<Long>();
+        LongSet sa = fill(random, GROUP - DENSE_RANGE / 2, a);
+        LongSet sb = fill(random, GROUP, b);
+        for (int i = 0; i < DENSE; i++) {
+            long x = -2 * GROUP + i;
+            if (a.add(x)) {
+                sa.add(x);
+            }
+            if (b.add(x + DENSE / 2)) {
+                sb.add(x + DENSE / 2);
+            }
+        }
+        TreeSet<Long> both = new TreeSet<Long>(a);
+        both.retainAll(b);
+        TreeSet<Long> either = new TreeSet<Long>(a);
+        either.addAll(b);
+        checkSame(both, sa.and(sb));
+        checkSame(both, sb.and(sa));
+        checkSame(either, sa.or(sb));
+        checkSame(either, sb.or(sa));
+        checkSame(a, sa);
+        checkSame(b, sb);
+    }
+
+}
@@ -0,0 +1,110 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+/**
+ * JUnit test fixture for {@code PersistentSet}.
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class PersistentSetTest {
+
+    /**
+     * Number of elements used by the larger tests.
+     */
+    private static final int MANY = 5000;
+
+    /**
+     * Tests the empty set.
+     */
+    @Test
+    public void testEmpty() {
+        PersistentSet<String> set = PersistentSet.empty();
+        assertEquals(0, set.size());
+        assertFalse(set.contains("a"));
+        assertFalse(set.iterator().hasNext());
+        assertEquals("{}", set.toString());
+    }
+
+    /**
+     * Tests that an addition leaves the original set unchanged.
+     */
+    @Test
+    public void testWithLeavesOriginalUnchanged() {
+        PersistentSet<String> before = PersistentSet.<String> empty()
+                .with("b");
+        PersistentSet<String> after = before.with("a");
+        assertEquals(1, before.size());
+        assertFalse(before.contains("a"));
+        assertEquals(2, after.size());
+        assertTrue(after.contains("a"));
+        assertEquals("{a,b}", after.toString());
+    }
+
+    /**
+     * Tests that a removal leaves the original set unchanged.
+     */
+    @Test
+    public void testWithoutLeavesOriginalUnchanged() {
+        PersistentSet<String> before = PersistentSet.<String> empty()
+                .with("a").with("b").with("c");
+        PersistentSet<String> after = before.without("b");
+        assertEquals(3, before.size());
+        assertTrue(before.contains("b"));
+        assertEquals("{a,c}", after.toString());
+        assertEquals(0, after.without("a").without("c").size());
+    }
+
+    /**
+     * Tests adding many elements in increasing order (which would degrade an
+     * unbalanced tree) and removing every other one, checking that every
+     * version keeps its own contents and iterates in increasing order.
+     */
+    @Test
+    public void testManyElements() {
+        PersistentSet<Integer> set = PersistentSet.empty();
+        for (int i = 0; i < MANY; i++) {
+            set = set.with(i);
+        }
+        PersistentSet<Integer> full = set;
+        for (int i = 0; i < MANY; i += 2) {
+            set = set.without(i);
+        }
+        assertEquals(MANY, full.size());
+        assertEquals(MANY / 2, set.size());
+        Iterator<Integer> all = full.iterator();
+        Iterator<Integer> odd = set.iterator();
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i, (int) all.next());
+            if (i % 2 == 1) {
+                assertEquals(i, (int) odd.next());
+            }
+            assertEquals(i % 2 == 1, set.contains(i));
+        }
+        assertFalse(all.hasNext());
+        assertFalse(odd.hasNext());
+        assertEquals(1, (int) set.min());
+    }
+
+    /**
+     * Tests that a {@code Set7} snapshot does not see later changes.
+     */
+    @Test
+    public void testSet7Snapshot() {
+        Set7<String> set = new Set7<String>();
+        set.add("a");
+        PersistentSet<String> snapshot = set.snapshot();
+        set.add("b");
+        set.remove("a");
+        assertEquals(1, snapshot.size());
+        assertTrue(snapshot.contains("a"));
+        assertFalse(snapshot.contains("b"));
+        assertEquals("{b}", set.snapshot().toString());
+    }
+
+}
@@ -0,0 +1,378 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.TreeSet;
+import java.util.stream.StreamSupport;
+
+import org.junit.Test;
+
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Customized JUnit test fixture for {@code Set4}.
+ */
+public class Set4Test extends SetTest {
+
+    /**
+     * Number of elements in the large tests.
+     */
+    private static final int MANY = 100_000;
+
+    /**
+     * Range of the elements in the ordered query test.
+     */
+    private static final int RANGE = 1000;
+
+    /**
+     * Maximum width of the ranges iterated over in the ordered query test.
+     */
+    private static final int MAX_WIDTH = 100;
+
+    /**
+     * Step between the densities of the sets in the bulk operation test.
+     */
+    private static final int DENSITY_STEP = 10;
+
+    @Override
+    protected final Set<String> constructorTest() {
+        return new Set4<String>();
+    }
+
+    @Override
+    protected final Set<String> constructorRef() {
+        return new Set1L<String>();
+    }
+
+    /**
+     * Adds {@code order} to a new {@code Set4}, checks that it iterates in
+     * increasing order, then removes every other element and drains the rest
+     * with {@code removeAny}.
+     *
+     * @param order
+     *            a permutation of 0 through |order| - 1
+     */
+    private static void checkInsertionOrder(List<Integer> order) {
+        int n = order.size();
+        Set4<Integer> s = new Set4<Integer>();
+        for (int x : order) {
+            s.add(x);
+        }
+        assertEquals(n, s.size());
+        int expected = 0;
+        for (int x : s) {
+            assertEquals(expected, x);
+            expected++;
+        }
+        assertEquals(n, expected);
+        for (int x : order) {
+            if (x % 2 == 0) {
+                assertEquals(x, (int) s.remove(x));
+            }
+        }
+        assertEquals(n / 2, s.size());
+        assertFalse(s.contains(0));
+        assertTrue(s.contains(1));
+        expected = 1;
+        while (s.size() > 0) {
+            assertEquals(expected, (int) s.removeAny());
+            expected += 2;
+        }
+    }
+
+    /**
+     * Tests many insertions in increasing order.
+     */
+    @Test
+    public void testAscendingInsertions() {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < MANY; i++) {
+            order.add(i);
+        }
+        checkInsertionOrder(order);
+    }
+
+    /**
+     * Tests many insertions in decreasing order.
+     */
+    @Test
+    public void testDescendingInsertions() {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = MANY - 1; i >= 0; i--) {
+            order.add(i);
+        }
+        checkInsertionOrder(order);
+    }
+
+    /**
+     * Tests many insertions in random order.
+     */
+    @Test
+    public void testRandomInsertions() {
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < MANY; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(1));
+        checkInsertionOrder(order);
+    }
+
+    /**
+     * Tests that {@code contains} does not change the iteration order or the
+     * size, for present and absent elements.
+     */
+    @Test
+    public void testContainsIsReadOnly() {
+        Set4<Integer> s = new Set4<Integer>();
+        for (int i = 0; i < MANY; i += 2) {
+            s.add(i);
+        }
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i % 2 == 0, s.contains(i));
+        }
+        assertEquals(MANY / 2, s.size());
+        int expected = 0;
+        for (int x : s) {
+            assertEquals(expected, x);
+            expected += 2;
+        }
+    }
+
+    /**
+     * Tests {@code min}, {@code max}, {@code floor}, {@code ceiling},
+     * {@code rank}, {@code select} and range iteration against
+     * {@code java.util.TreeSet}, while the set is built and torn down.
+     */
+    @Test
+    public void testOrderedQueries() {
+        Set4<Integer> s = new Set4<Integer>();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        Random random = new Random(2);
+        for (int round = 0; round < RANGE; round++) {
+            int x = random.nextInt(RANGE);
+            if (expected.contains(x)) {
+                expected.remove(x);
+                s.remove(x);
+            } else {
+                expected.add(x);
+                s.add(x);
+            }
+            if (expected.size() > 0) {
+                assertEquals(expected.first(), s.min());
+                assertEquals(expected.last(), s.max());
+            }
+            int y = random.nextInt(RANGE);
+            assertEquals(expected.floor(y), s.floor(y));
+            assertEquals(expected.ceiling(y), s.ceiling(y));
+            assertEquals(expected.headSet(y).size(), s.rank(y));
+            if (expected.size() > 0) {
+                int k = random.nextInt(expected.size());
+                int selected = s.select(k);
+                assertEquals(k, s.rank(selected));
+                assertTrue(expected.contains(selected));
+            }
+            int hi = y + random.nextInt(MAX_WIDTH);
+            Iterator<Integer> range = s.iterator(y, hi);
+            for (int z : expected.subSet(y, hi)) {
+                assertTrue(range.hasNext());
+                assertEquals(z, (int) range.next());
+            }
+            assertFalse(range.hasNext());
+        }
+    }
+
+    /**
+     * Tests that {@code descendingIterator} visits the elements in decreasing
+     * order.
+     */
+    @Test
+    public void testDescendingIterator() {
+        Set4<Integer> s = new Set4<Integer>();
+        for (int i = 0; i < RANGE; i++) {
+            s.add(i);
+        }
+        Iterator<Integer> it = s.descendingIterator();
+        for (int i = RANGE - 1; i >= 0; i--) {
+            assertTrue(it.hasNext());
+            assertEquals(i, (int) it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Tests that splitting the spliterator gives halves of exact sizes that
+     * together cover the set in order.
+     */
+    @Test
+    public void testSpliteratorSplits() {
+        Set4<Integer> s = new Set4<Integer>();
+        for (int i = 0; i < RANGE; i++) {
+            s.add(i);
+        }
+        Spliterator<Integer> rest = s.spliterator();
+        Spliterator<Integer> prefix = rest.trySplit();
+        assertEquals(RANGE / 2, prefix.getExactSizeIfKnown());
+        assertEquals(RANGE - RANGE / 2, rest.getExactSizeIfKnown());
+        final int[] next = { 0 };
+        prefix.forEachRemaining(x -> {
+            assertEquals(next[0], (int) x);
+            next[0]++;
+        });
+        rest.forEachRemaining(x -> {
+            assertEquals(next[0], (int) x);
+            next[0]++;
+        });
+        assertEquals(RANGE, next[0]);
+    }
+
+    /**
+     * Tests a parallel stream over the set.
+     */
+    @Test
+    public void testParallelStream() {
+        Set4<Integer> s = new Set4<Integer>();
+        for (int i = 0; i < MANY; i++) {
+            s.add(i);
+        }
+        long sum = StreamSupport.stream(s.spliterator(), true)
+                .mapToLong(x -> x).sum();
+        assertEquals((long) MANY * (MANY - 1) / 2, sum);
+    }
+
+    /**
+     * Returns a {@code Set4} of the elements of {@code elements}.
+     *
+     * @param elements
+     *            the elements
+     * @return the set
+     */
+    private static Set4<Integer> set4Of(java.util.Set<Integer> elements) {
+        Set4<Integer> s = new Set4<Integer>();
+        for (int x : elements) {
+            s.add(x);
+        }
+        return s;
+    }
+
+    /**
+     * Returns a random subset of [0, {@code RANGE}).
+     *
+     * @param random
+     *            the source of randomness
+     * @param density
+     *            percentage of the range included, on average
+     * @return the subset
+     */
+    private static TreeSet<Integer> randomSubset(Random random, int density) {
+        TreeSet<Integer> subset = new TreeSet<Integer>();
+        for (int i = 0; i < RANGE; i++) {
+            if (random.nextInt(MAX_WIDTH) < density) {
+                subset.add(i);
+            }
+        }
+        return subset;
+    }
+
+    /**
+     * Tests {@code add(Set)}, {@code remove(Set)} and {@code isSubset} between
+     * two {@code Set4}s against {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testBulkOperations() {
+        Random random = new Random(3);
+        for (int density = 0; density <= MAX_WIDTH; density += DENSITY_STEP) {
+            TreeSet<Integer> a = randomSubset(random, density);
+            TreeSet<Integer> b = randomSubset(random, MAX_WIDTH - density);
+            TreeSet<Integer> union = new TreeSet<Integer>(a);
+            union.addAll(b);
+            TreeSet<Integer> common = new TreeSet<Integer>(a);
+            common.retainAll(b);
+            TreeSet<Integer> difference = new TreeSet<Integer>(a);
+            difference.removeAll(b);
+
+            Set4<Integer> s = set4Of(a);
+            Set4<Integer> t = set4Of(b);
+            assertEquals(b.containsAll(a), s.isSubset(t));
+            assertTrue(set4Of(common).isSubset(s));
+            assertTrue(set4Of(common).isSubset(t));
+            s.add(t);
+            assertEquals(set4Of(union), s);
+            assertEquals(set4Of(common), t);
+
+            s = set4Of(a);
+            Set<Integer> removed = s.remove(set4Of(b));
+            assertEquals(set4Of(difference), s);
+            assertEquals(set4Of(common), removed);
+            assertEquals(difference.size(), s.size());
+            assertEquals(difference.size() + common.size(), a.size());
+        }
+    }
+
+    /**
+     * Tests building from a sorted iterator, then changing the result.
+     */
+    @Test
+    public void testConstructorFromSortedIterator() {
+        List<Integer> sorted = new ArrayList<Integer>();
+        for (int i = 0; i < MANY; i++) {
+            sorted.add(i);
+        }
+        Set4<Integer> s = new Set4<Integer>(sorted.iterator());
+        assertEquals(MANY, s.size());
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(i, (int) s.select(i));
+        }
+        s.add(-1);
+        s.add(MANY);
+        assertEquals(-1, (int) s.removeAny());
+        assertEquals(0, (int) s.remove(0));
+        assertEquals(MANY, (int) s.max());
+        assertEquals(MANY, s.size());
+        assertEquals(0, new Set4<Integer>(new ArrayList<Integer>().iterator())
+                .size());
+    }
+
+    /**
+     * Tests building from an unsorted array with duplicates.
+     */
+    @Test
+    public void testConstructorFromUnsortedArray() {
+        Random random = new Random(4);
+        Integer[] elements = new Integer[RANGE];
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (int i = 0; i < RANGE; i++) {
+            elements[i] = random.nextInt(RANGE);
+            expected.add(elements[i]);
+        }
+        Set4<Integer> s = new Set4<Integer>(elements);
+        assertEquals(expected.size(), s.size());
+        Iterator<Integer> it = s.iterator();
+        for (int x : expected) {
+            assertEquals(x, (int) it.next());
+        }
+        assertFalse(it.hasNext());
+        s.remove(expected.first());
+        assertEquals(expected.higher(expected.first()), s.min());
+    }
+
+    /**
+     * Tests 1M ascending insertions, lookups and removals on a thread with a
+     * small stack.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testMillionAscendingKeysOnSmallStack()
+            throws InterruptedException {
+        checkMillionAscendingKeysOnSmallStack(() -> new Set4<Integer>());
+    }
+
+}
@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Customized JUnit test fixture for {@code Set5}.
+ */
+public class Set5Test extends SetTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 200_000;
+
+    /**
+     * Range of elements in the randomized test (large enough for a B-tree
+     * with three levels).
+     */
+    private static final int RANGE = 50_000;
+
+    /**
+     * Number of operations between full comparisons in the randomized test.
+     */
+    private static final int CHECK_INTERVAL = 20_000;
+
+    @Override
+    protected final Set<String> constructorTest() {
+        return new Set5<String>();
+    }
+
+    @Override
+    protected final Set<String> constructorRef() {
+        return new Set1L<String>();
+    }
+
+    /**
+     * Checks that {@code s} iterates over exactly the elements of
+     * {@code expected}, in increasing order.
+     *
+     * @param expected
+     *            the expected elements
+     * @param s
+     *            the set
+     */
+    private static void checkSame(TreeSet<Integer> expected, Set5<Integer> s) {
+        assertEquals(expected.size(), s.size());
+        Iterator<Integer> it = s.iterator();
+        for (int x : expected) {
+            assertTrue(it.hasNext());
+            assertEquals(x, (int) it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * Tests a long random sequence of adds, removes and lookups against
+     * {@code java.util.TreeSet}.
+     */
+    @Test
+    public void testRandomOperations() {
+        Set5<Integer> s = new Set5<Integer>();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        Random random = new Random(5);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int x = random.nextInt(RANGE);
+            assertEquals(expected.contains(x), s.contains(x));
+            if (expected.contains(x)) {
+                assertEquals(x, (int) s.remove(x));
+                expected.remove(x);
+            } else {
+                s.add(x);
+                expected.add(x);
+            }
+            if (i % CHECK_INTERVAL == 0) {
+                checkSame(expected, s);
+            }
+        }
+        checkSame(expected, s);
+        while (s.size() > 0) {
+            assertEquals(expected.pollFirst(), s.removeAny());
+        }
+        assertTrue(expected.isEmpty());
+    }
+
+    /**
+     * Tests insertions in increasing and decreasing order followed by
+     * removals in increasing order.
+     */
+    @Test
+    public void testSortedInsertions() {
+        Set5<Integer> up = new Set5<Integer>();
+        Set5<Integer> down = new Set5<Integer>();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (int i = 0; i < RANGE; i++) {
+            up.add(i);
+            down.add(RANGE - 1 - i);
+            expected.add(i);
+        }
+        checkSame(expected, up);
+        checkSame(expected, down);
+        for (int i = 0; i < RANGE; i++) {
+            assertEquals(i, (int) up.remove(i));
+            assertEquals(i, (int) down.removeAny());
+        }
+        assertEquals(0, up.size());
+        assertEquals(0, down.size());
+    }
+
+    /**
+     * Tests 1M ascending insertions, lookups and removals on a thread with a
+     * small stack.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testMillionAscendingKeysOnSmallStack()
+            throws InterruptedException {
+        checkMillionAscendingKeysOnSmallStack(() -> new Set5<Integer>());
+    }
+
+}
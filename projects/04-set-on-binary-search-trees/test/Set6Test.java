@@ -0,0 +1,251 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+import components.set.Set;
+import components.set.Set1L;
+
+/**
+ * Customized JUnit test fixture for {@code Set6}, including multi-threaded
+ * stress tests.
+ */
+public class Set6Test extends SetTest {
+
+    /**
+     * Number of operations in the randomized test.
+     */
+    private static final int OPERATIONS = 100_000;
+
+    /**
+     * Range of elements in the randomized test.
+     */
+    private static final int RANGE = 10_000;
+
+    /**
+     * Number of threads in the stress tests.
+     */
+    private static final int THREADS = 8;
+
+    /**
+     * Number of elements owned by each thread in the stress tests.
+     */
+    private static final int PER_THREAD = 20_000;
+
+    /**
+     * Number of range scans by each scanning thread in the concurrent range
+     * test.
+     */
+    private static final int SCANS = 2_000;
+
+    /**
+     * Every element divisible by this stays in the set throughout the
+     * concurrent range test; the others are added and removed meanwhile.
+     */
+    private static final int STABLE_STEP = 3;
+
+    @Override
+    protected final Set<String> constructorTest() {
+        return new Set6<String>();
+    }
+
+    @Override
+    protected final Set<String> constructorRef() {
+        return new Set1L<String>();
+    }
+
+    /**
+     * Runs {@code task} on {@code THREADS} threads, passing each its number,
+     * and waits for all of them.
+     *
+     * @param task
+     *            the task, given the thread number
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    private static void runThreads(IntConsumer task)
+            throws InterruptedException {
+        Thread[] threads = new Thread[THREADS];
+        final Throwable[] failure = { null };
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> task.accept(id));
+            threads[t].setUncaughtExceptionHandler((th, e) -> {
+                synchronized (failure) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new AssertionError(failure[0]);
+            }
+        }
+    }
+
+    /**
+     * Tests a long random sequence of single-threaded operations against
+     * {@code java.util.TreeSet}, including range iteration.
+     */
+    @Test
+    public void testRandomOperations() {
+        Set6<Integer> s = new Set6<Integer>();
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        Random random = new Random(6);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int x = random.nextInt(RANGE);
+            assertEquals(expected.contains(x), s.contains(x));
+            if (expected.contains(x)) {
+                assertEquals(x, (int) s.remove(x));
+                expected.remove(x);
+            } else {
+                s.add(x);
+                expected.add(x);
+            }
+        }
+        assertEquals(expected.size(), s.size());
+        Iterator<Integer> it = s.iterator();
+        for (int x : expected) {
+            assertEquals(x, (int) it.next());
+        }
+        assertFalse(it.hasNext());
+        int lo = RANGE / 4;
+        int hi = RANGE / 2;
+        Iterator<Integer> range = s.iterator(lo, hi);
+        for (int x : expected.subSet(lo, hi)) {
+            assertEquals(x, (int) range.next());
+        }
+        assertFalse(range.hasNext());
+        assertFalse(s.addIfAbsent(expected.first()));
+        assertNull(s.removeIfPresent(-1));
+    }
+
+    /**
+     * Tests threads adding and then removing disjoint elements, interleaved
+     * with each other.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentDisjointUpdates() throws InterruptedException {
+        Set6<Integer> s = new Set6<Integer>();
+        runThreads(id -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                assertTrue(s.addIfAbsent(i * THREADS + id));
+            }
+            for (int i = 0; i < PER_THREAD; i += 2) {
+                assertEquals(i * THREADS + id,
+                        (int) s.removeIfPresent(i * THREADS + id));
+            }
+        });
+        assertEquals(THREADS * PER_THREAD / 2, s.size());
+        int count = 0;
+        int previous = -1;
+        for (int x : s) {
+            assertTrue(previous < x);
+            assertEquals(1, (x / THREADS) % 2);
+            previous = x;
+            count++;
+        }
+        assertEquals(THREADS * PER_THREAD / 2, count);
+    }
+
+    /**
+     * Tests threads racing to add and remove the same elements: each element
+     * must be added and removed by exactly one thread.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentContendedUpdates() throws InterruptedException {
+        Set6<Integer> s = new Set6<Integer>();
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger removed = new AtomicInteger();
+        runThreads(id -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                if (s.addIfAbsent(i)) {
+                    added.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(PER_THREAD, added.get());
+        assertEquals(PER_THREAD, s.size());
+        runThreads(id -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                if (s.removeIfPresent(i) != null) {
+                    removed.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(PER_THREAD, removed.get());
+        assertEquals(0, s.size());
+        assertFalse(s.iterator().hasNext());
+    }
+
+    /**
+     * Tests range iterators scanning while other threads add and remove
+     * elements next to elements that stay in the set: each scan must report,
+     * in increasing order and once each, every stable element in its range.
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    @Test
+    public void testConcurrentRangeScans() throws InterruptedException {
+        Set6<Integer> s = new Set6<Integer>();
+        for (int x = 0; x < RANGE; x += STABLE_STEP) {
+            s.add(x);
+        }
+        AtomicInteger scanning = new AtomicInteger(THREADS / 2);
+        runThreads(id -> {
+            Random random = new Random(id);
+            if (id < THREADS / 2) {
+                while (scanning.get() > 0) {
+                    int x = random.nextInt(RANGE);
+                    if (x % STABLE_STEP != 0 && s.addIfAbsent(x)) {
+                        s.removeIfPresent(x);
+                    }
+                }
+            } else {
+                try {
+                    for (int i = 0; i < SCANS; i++) {
+                        int lo = random.nextInt(RANGE);
+                        int hi = lo + random.nextInt(RANGE - lo + 1);
+                        int expected = lo + (STABLE_STEP - lo % STABLE_STEP)
+                                % STABLE_STEP;
+                        int previous = lo - 1;
+                        Iterator<Integer> it = s.iterator(lo, hi);
+                        while (it.hasNext()) {
+                            int x = it.next();
+                            assertTrue(previous < x && x < hi);
+                            if (x % STABLE_STEP == 0) {
+                                assertEquals(expected, x);
+                                expected += STABLE_STEP;
+                            }
+                            previous = x;
+                        }
+                        assertTrue(expected >= hi);
+                    }
+                } finally {
+                    scanning.decrementAndGet();
+                }
+            }
+        });
+        assertEquals((RANGE + STABLE_STEP - 1) / STABLE_STEP, s.size());
+    }
+
+}
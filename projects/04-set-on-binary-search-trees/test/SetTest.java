@@ -2,6 +2,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.function.Supplier;
+
 import org.junit.Test;
 
 import components.set.Set;
@@ -14,6 +16,16 @@ import components.set.Set;
  */
 public abstract class SetTest {
 
+    /**
+     * Number of elements in the stack safety test.
+     */
+    private static final int MILLION = 1_000_000;
+
+    /**
+     * Stack size requested for the stack safety test.
+     */
+    private static final long SMALL_STACK_BYTES = 64 * 1024;
+
     /**
      * Invokes the appropriate {@code Set} constructor for the implementation
      * under test and returns the result.
@@ -32,6 +44,52 @@ public abstract class SetTest {
      */
     protected abstract Set<String> constructorRef();
 
+    /**
+     * Runs 1M ascending insertions, lookups and removals on a set from
+     * {@code constructor} on a thread with a small stack, which any recursion
+     * per tree level would overflow if the tree degenerated. It asserts more
+     * than the {@code Set} contract does: {@code removeAny} must remove the
+     * smallest element, so it is not meant for an implementation whose
+     * {@code removeAny} removes an arbitrary one.
+     *
+     * @param constructor
+     *            supplier of empty sets of the implementation under test
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    protected static void checkMillionAscendingKeysOnSmallStack(
+            Supplier<Set<Integer>> constructor) throws InterruptedException {
+        final Throwable[] failure = { null };
+        Thread worker = new Thread(null, () -> {
+            try {
+                Set<Integer> s = constructor.get();
+                for (int i = 0; i < MILLION; i++) {
+                    s.add(i);
+                }
+                assertEquals(MILLION, s.size());
+                for (int i = 0; i < MILLION; i++) {
+                    assertTrue(s.contains(i));
+                }
+                assertFalse(s.contains(MILLION));
+                for (int i = 0; i < MILLION; i += 2) {
+                    assertEquals(i, (int) s.remove(i));
+                }
+                int expected = 1;
+                while (s.size() > 0) {
+                    assertEquals(expected, (int) s.removeAny());
+                    expected += 2;
+                }
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "small-stack", SMALL_STACK_BYTES);
+        worker.start();
+        worker.join();
+        if (failure[0] != null) {
+            throw new AssertionError(failure[0]);
+        }
+    }
+
     /**
      * Creates and returns a {@code Set<String>} of the implementation under
      * test type with the given entries.
@@ -0,0 +1,97 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of entries, used by {@code SortingMachine5e} to write
+ * entries to run files and read them back.
+ *
+ * @param <T>
+ *            type of the entries
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public interface ElementCodec<T> {
+
+    /**
+     * Writes the encoding of {@code x} to {@code out}.
+     *
+     * @param x
+     *            the entry
+     * @param out
+     *            the output
+     * @throws IOException
+     *             if writing fails
+     * @requires x is not null
+     * @ensures <pre>
+     * [out has the encoding of x appended, which read decodes into an entry
+     *  equal to x]
+     * </pre>
+     */
+    void write(T x, DataOutput out) throws IOException;
+
+    /**
+     * Reads the encoding of one entry from {@code in} and returns the entry.
+     *
+     * @param in
+     *            the input
+     * @return the entry
+     * @throws IOException
+     *             if reading fails
+     * @requires [in starts with an encoding written by write]
+     * @ensures [read is the entry encoded at the start of #in, and in is #in
+     *          without that encoding]
+     */
+    T read(DataInput in) throws IOException;
+
+    /**
+     * Returns a codec for {@code String}s (the {@code char}s, two bytes each,
+     * preceded by their number). Unlike a round trip through UTF-8, it keeps
+     * unpaired surrogates, so every string decodes equal to the original.
+     *
+     * @return the codec
+     */
+    static ElementCodec<String> strings() {
+        return new ElementCodec<String>() {
+
+            @Override
+            public void write(String x, DataOutput out) throws IOException {
+                out.writeInt(x.length());
+                out.writeChars(x);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                char[] chars = new char[in.readInt()];
+                for (int i = 0; i < chars.length; i++) {
+                    chars[i] = in.readChar();
+                }
+                return new String(chars);
+            }
+
+        };
+    }
+
+    /**
+     * Returns a codec for {@code Integer}s (four bytes each).
+     *
+     * @return the codec
+     */
+    static ElementCodec<Integer> integers() {
+        return new ElementCodec<Integer>() {
+
+            @Override
+            public void write(Integer x, DataOutput out) throws IOException {
+                out.writeInt(x);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                return in.readInt();
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,548 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} represented as a single growable array (using an
+ * embedding of heap sort), with implementations of primary methods.
+ *
+ * <p>
+ * In insertion mode the array is the insertion buffer: {@code add} stores into
+ * the next free slot, doubling the array when it is full (a capacity hint
+ * passed to the constructor avoids even that), so there is no per-entry node
+ * as in the {@code Queue} of {@code SortingMachine5a}. The same array then
+ * becomes the heap: {@code changeToExtractionMode} builds the heap in place
+ * and bottom-up in a single O(n) loop, without copying the entries anywhere.
+ * {@code siftDown} is an iterative loop that moves a "hole" down the heap
+ * instead of exchanging entries, with one comparison between the two children
+ * and one against the entry being sifted per level, so {@code removeFirst}
+ * takes O(log n) time. With assertions enabled only the O(1) parts of the
+ * convention and of the preconditions are checked; the O(n) ones (heap
+ * ordering, non-null entries) are also checked when the JVM is started with
+ * {@code -DSortingMachine5b.debug=true}.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ *
+ * SUBTREE_IS_HEAP (
+ *   a: string of T,
+ *   start: integer,
+ *   stop: integer,
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  [the subtree of a (when a is interpreted as a complete binary tree) rooted
+ *   at index start and only through entry stop of a satisfies the heap
+ *   ordering property according to the relation r]
+ *
+ * SUBTREE_ARRAY_ENTRIES (
+ *   a: string of T,
+ *   start: integer,
+ *   stop: integer
+ *  ) : finite multiset of T is
+ *  [the multiset of entries in a that belong to the subtree of a
+ *   (when a is interpreted as a complete binary tree) rooted at
+ *   index start and only through entry stop]
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * 0 <= $this.heapSize <= |$this.heap|  and
+ * for all i: integer
+ *     where (0 <= i  and  i < $this.heapSize)
+ *   ([entry at position i in $this.heap is not null])  and
+ * if not $this.insertionMode then
+ *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
+ *     [relation computed by $this.machineOrder.compare method])
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *         multiset_entries($this.heap[0, $this.heapSize)))
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class SortingMachine5b<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Whether the O(n) convention and precondition checks are enabled (they
+     * also need assertions to be enabled).
+     */
+    private static final boolean DEBUG = Boolean
+            .getBoolean("SortingMachine5b.debug");
+
+    /**
+     * Capacity of the array of a new machine without a capacity hint.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Largest array length the JVM reliably allows.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries: the insertion buffer in insertion mode, the heap in extraction
+     * mode.
+     */
+    private T[] heap;
+
+    /**
+     * Number of entries in {@code heap}.
+     */
+    private int heapSize;
+
+    /**
+     * Given an array that represents a complete binary tree and an index
+     * referring to the root of a subtree that would be a heap except for its
+     * root, sifts the root down to turn that whole subtree into a heap.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the complete binary tree
+     * @param top
+     *            the index of the root of the "subtree"
+     * @param last
+     *            the index of the last entry in the heap
+     * @param order
+     *            total preorder for sorting
+     * @updates array
+     * @requires <pre>
+     * 0 <= top  and  last < |array|  and
+     * for all i: integer
+     *     where (0 <= i  and  i <= last)
+     *   ([entry at position i in array is not null])  and
+     * [subtree rooted at {@code top} is a complete binary tree]  and
+     * SUBTREE_IS_HEAP(array, 2 * top + 1, last,
+     *     [relation computed by order.compare method])  and
+     * SUBTREE_IS_HEAP(array, 2 * top + 2, last,
+     *     [relation computed by order.compare method])  and
+     * IS_TOTAL_PREORDER([relation computed by order.compare method])
+     * </pre>
+     * @ensures <pre>
+     * SUBTREE_IS_HEAP(array, top, last,
+     *     [relation computed by order.compare method])  and
+     * perms(array, #array)  and
+     * SUBTREE_ARRAY_ENTRIES(array, top, last) =
+     *  SUBTREE_ARRAY_ENTRIES(#array, top, last)  and
+     * [the other entries in array are the same as in #array]
+     * </pre>
+     */
+    private static <T> void siftDown(T[] array, int top, int last,
+            Comparator<T> order) {
+        assert array != null : "Violation of: array is not null";
+        assert order != null : "Violation of: order is not null";
+        assert 0 <= top : "Violation of: 0 <= top";
+        assert last < array.length : "Violation of: last < |array|";
+        assert !DEBUG || isHeap(array, 2 * top + 1, last, order) : ""
+                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 1, last,"
+                + " [relation computed by order.compare method])";
+        assert !DEBUG || isHeap(array, 2 * top + 2, last, order) : ""
+                + "Violation of: SUBTREE_IS_HEAP(array, 2 * top + 2, last,"
+                + " [relation computed by order.compare method])";
+        /*
+         * Impractical to check the total preorder requires clause; no need to
+         * check the complete binary tree one, because it must be true when
+         * using the array representation for a complete binary tree.
+         */
+
+        T x = array[top];
+        int hole = top;
+        int lastParent = (last - 1) >> 1;
+        boolean done = false;
+        while (!done && hole <= lastParent) {
+            int child = 2 * hole + 1;
+            if (child < last && order.compare(array[child + 1],
+                    array[child]) < 0) {
+                child++;
+            }
+            if (order.compare(array[child], x) < 0) {
+                array[hole] = array[child];
+                hole = child;
+            } else {
+                done = true;
+            }
+        }
+        array[hole] = x;
+    }
+
+    /**
+     * Turns the first {@code n} entries of the given array into a heap,
+     * bottom-up (Floyd's method): sifts down every entry that has children,
+     * from the last one back to the root. Each sift-down only has to restore
+     * a subtree whose children are already heaps, and most subtrees are
+     * short, so this takes O(n) time in total.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the complete binary tree
+     * @param n
+     *            the number of entries to heapify
+     * @param order
+     *            the total preorder for sorting
+     * @updates array
+     * @requires <pre>
+     * 0 <= n <= |array|  and
+     * for all i: integer
+     *     where (0 <= i  and  i < n)
+     *   ([entry at position i in array is not null])  and
+     * IS_TOTAL_PREORDER([relation computed by order.compare method])
+     * </pre>
+     * @ensures <pre>
+     * SUBTREE_IS_HEAP(array, 0, n - 1,
+     *     [relation computed by order.compare method])  and
+     * perms(array, #array)  and
+     * [the entries of array from position n on are the same as in #array]
+     * </pre>
+     */
+    private static <T> void heapify(T[] array, int n, Comparator<T> order) {
+        assert array != null : "Violation of: array is not null";
+        assert order != null : "Violation of: order is not null";
+        assert 0 <= n : "Violation of: 0 <= n";
+        assert n <= array.length : "Violation of: n <= |array|";
+
+        for (int top = (n - 2) >> 1; top >= 0; top--) {
+            siftDown(array, top, n - 1, order);
+        }
+    }
+
+
+    /**
+     * Checks if the subtree of the given {@code array} rooted at the given
+     * {@code top} is a heap, visiting the subtree one level at a time.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the complete binary tree
+     * @param top
+     *            the index of the root of the "subtree"
+     * @param last
+     *            the index of the last entry in the heap
+     * @param order
+     *            total preorder for sorting
+     * @return true if the subtree of the given {@code array} rooted at the
+     *         given {@code top} is a heap; false otherwise
+     * @requires <pre>
+     * 0 <= top  and  last < |array|  and
+     * for all i: integer
+     *     where (0 <= i  and  i <= last)
+     *   ([entry at position i in array is not null])  and
+     * [subtree rooted at {@code top} is a complete binary tree]
+     * </pre>
+     * @ensures <pre>
+     * isHeap = SUBTREE_IS_HEAP(array, top, last,
+     *     [relation computed by order.compare method])
+     * </pre>
+     */
+    private static <T> boolean isHeap(T[] array, int top, int last,
+            Comparator<T> order) {
+        assert array != null : "Violation of: array is not null";
+        assert 0 <= top : "Violation of: 0 <= top";
+        assert last < array.length : "Violation of: last < |array|";
+
+        boolean isHeap = true;
+        int lastParent = (last - 1) >> 1;
+        long lo = top;
+        long hi = top;
+        while (isHeap && lo <= lastParent) {
+            long stop = Math.min(hi, lastParent);
+            for (int i = (int) lo; isHeap && i <= stop; i++) {
+                int left = 2 * i + 1;
+                isHeap = order.compare(array[i], array[left]) <= 0;
+                if (isHeap && left < last) {
+                    isHeap = order.compare(array[i], array[left + 1]) <= 0;
+                }
+            }
+            lo = 2 * lo + 1;
+            hi = 2 * hi + 2;
+        }
+        return isHeap;
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation. The O(n) clauses are checked only in debug
+     * mode.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * 0 <= $this.heapSize <= |$this.heap|  and
+     * for all i: integer
+     *     where (0 <= i  and  i < $this.heapSize)
+     *   ([entry at position i in $this.heap is not null])  and
+     * if not $this.insertionMode then
+     *   SUBTREE_IS_HEAP($this.heap, 0, $this.heapSize - 1,
+     *     [relation computed by $this.machineOrder.compare method])
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert 0 <= this.heapSize : "Violation of: 0 <= $this.heapSize";
+        assert this.heapSize <= this.heap.length : ""
+                + "Violation of: $this.heapSize <= |$this.heap|";
+        if (DEBUG) {
+            for (int i = 0; i < this.heapSize; i++) {
+                assert this.heap[i] != null : "Violation of: all entries in"
+                        + " $this.heap[0, $this.heapSize) are not null";
+            }
+            assert this.insertionMode || isHeap(this.heap, 0,
+                    this.heapSize - 1, this.machineOrder) : ""
+                            + "Violation of: if not $this.insertionMode"
+                            + " then SUBTREE_IS_HEAP($this.heap, 0,"
+                            + " $this.heapSize - 1, [relation computed by"
+                            + " $this.machineOrder.compare method])";
+        }
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param capacity
+     *            initial length of the array
+     * @requires <pre>
+     * IS_TOTAL_PREORDER([relation computed by order.compare method]  and
+     * capacity >= 0
+     * </pre>
+     * @ensures <pre>
+     * $this.insertionMode = true  and
+     * $this.machineOrder = order  and
+     * |$this.heap| = capacity  and
+     * $this.heapSize = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(Comparator<T> order, int capacity) {
+        this.machineOrder = order;
+        this.insertionMode = true;
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.heap = (T[]) (new Object[capacity]);
+        this.heapSize = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    public SortingMachine5b(Comparator<T> order) {
+        this(order, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor from order and expected number of entries. Adding up to
+     * {@code capacity} entries never grows the array.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param capacity
+     *            expected number of entries
+     * @requires capacity >= 0
+     */
+    public SortingMachine5b(Comparator<T> order, int capacity) {
+        assert capacity >= 0 : "Violation of: capacity >= 0";
+        this.createNewRep(order, capacity);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            return this.getClass().getConstructor(Comparator.class)
+                    .newInstance(this.machineOrder);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.machineOrder, DEFAULT_CAPACITY);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SortingMachine5b<?> : ""
+                + "Violation of: source is of dynamic type SortingMachine5b<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SortingMachine5b<?>, and the ? must be T or the call would not have
+         * compiled.
+         */
+        SortingMachine5b<T> localSource = (SortingMachine5b<T>) source;
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.heap = localSource.heap;
+        this.heapSize = localSource.heapSize;
+        localSource.createNewRep(localSource.machineOrder, DEFAULT_CAPACITY);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        if (this.heapSize == this.heap.length) {
+            int capacity = (int) Math.min(MAX_CAPACITY,
+                    Math.max(DEFAULT_CAPACITY, 2L * this.heap.length));
+            this.heap = Arrays.copyOf(this.heap, capacity);
+        }
+        this.heap[this.heapSize] = x;
+        this.heapSize++;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        heapify(this.heap, this.heapSize, this.machineOrder);
+        this.insertionMode = false;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        T first = this.heap[0];
+        this.heapSize--;
+        this.heap[0] = this.heap[this.heapSize];
+        this.heap[this.heapSize] = null;
+        if (this.heapSize > 1) {
+            siftDown(this.heap, 0, this.heapSize - 1, this.machineOrder);
+        }
+        assert this.conventionHolds();
+        return first;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.heapSize;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new SortingMachine5bIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code SortingMachine5b}.
+     */
+    private final class SortingMachine5bIterator implements Iterator<T> {
+
+        /**
+         * Index of the next entry to return.
+         */
+        private int arrayCurrentIndex;
+
+        /**
+         * No-argument constructor.
+         */
+        private SortingMachine5bIterator() {
+            this.arrayCurrentIndex = 0;
+            assert SortingMachine5b.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assert SortingMachine5b.this.conventionHolds();
+            return this.arrayCurrentIndex < SortingMachine5b.this.heapSize;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T next = SortingMachine5b.this.heap[this.arrayCurrentIndex];
+            this.arrayCurrentIndex++;
+            assert SortingMachine5b.this.conventionHolds();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,576 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} represented as a growable array that is sorted
+ * lazily, a batch at a time, as entries are removed, with implementations of
+ * primary methods.
+ *
+ * <p>
+ * Meant for clients that add many entries but only remove the first few:
+ * {@code changeToExtractionMode} does no work, and when {@code removeFirst}
+ * runs out of sorted entries it moves the smallest {@code batchSize}
+ * remaining entries to the front in O(remaining) expected time
+ * (introselect: quickselect with three-way partitioning that falls back to
+ * sorting the range if it recurses too deeply), sorts just those, and doubles
+ * {@code batchSize}. With a first batch of k, removing the first k entries of
+ * n costs O(n + k log k); removing all of them still costs O(n log n), since
+ * the batches grow geometrically. With assertions enabled only the O(1) parts
+ * of the convention are checked; the O(n) ones are also checked when the JVM
+ * is started with {@code -DSortingMachine5c.debug=true}.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * 0 <= $this.front <= $this.sortedEnd <= $this.end <= |$this.entries|  and
+ * $this.batchSize > 0  and
+ * for all i: integer
+ *     where ($this.front <= i  and  i < $this.end)
+ *   ([entry at position i in $this.entries is not null])  and
+ * if $this.insertionMode then
+ *   $this.front = 0  and  $this.sortedEnd = 0
+ * else
+ *   [$this.entries[$this.front, $this.sortedEnd) is sorted according to
+ *    the relation computed by $this.machineOrder.compare method]  and
+ *   [every entry of $this.entries[$this.front, $this.sortedEnd) is at most
+ *    every entry of $this.entries[$this.sortedEnd, $this.end) according to
+ *    that relation]
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *         multiset_entries($this.entries[$this.front, $this.end)))
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class SortingMachine5c<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Whether the O(n) convention checks are enabled (they also need
+     * assertions to be enabled).
+     */
+    private static final boolean DEBUG = Boolean
+            .getBoolean("SortingMachine5c.debug");
+
+    /**
+     * Capacity of the array of a new machine.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Size of the first batch when none is given.
+     */
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    /**
+     * Largest array length the JVM reliably allows.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Ranges at most this long are sorted instead of partitioned further.
+     */
+    private static final int SORT_THRESHOLD = 16;
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries; those before {@code front} have been removed.
+     */
+    private T[] entries;
+
+    /**
+     * Index of the first entry not yet removed.
+     */
+    private int front;
+
+    /**
+     * End of the sorted run starting at {@code front}.
+     */
+    private int sortedEnd;
+
+    /**
+     * Number of slots of {@code entries} in use.
+     */
+    private int end;
+
+    /**
+     * Size of the first batch, as given to the constructor.
+     */
+    private int firstBatchSize;
+
+    /**
+     * Number of entries to sort when the sorted run is next exhausted.
+     */
+    private int batchSize;
+
+    /**
+     * Exchanges entries at indices {@code i} and {@code j} of {@code array}.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array whose entries are to be exchanged
+     * @param i
+     *            one index
+     * @param j
+     *            the other index
+     * @updates array
+     * @requires 0 <= i < |array| and 0 <= j < |array|
+     * @ensures array = [#array with entries at indices i and j exchanged]
+     */
+    private static <T> void exchangeEntries(T[] array, int i, int j) {
+        T temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    /**
+     * Returns the median of {@code a}, {@code b} and {@code c}.
+     *
+     * @param <T>
+     *            type of the entries
+     * @param a
+     *            an entry
+     * @param b
+     *            an entry
+     * @param c
+     *            an entry
+     * @param order
+     *            total preorder for sorting
+     * @return the median
+     */
+    private static <T> T median(T a, T b, T c, Comparator<T> order) {
+        T lo = a;
+        T hi = b;
+        if (order.compare(a, b) > 0) {
+            lo = b;
+            hi = a;
+        }
+        T median = c;
+        if (order.compare(c, lo) < 0) {
+            median = lo;
+        } else if (order.compare(c, hi) > 0) {
+            median = hi;
+        }
+        return median;
+    }
+
+    /**
+     * Rearranges {@code array[lo, hi)} so that the entry at index {@code k}
+     * is the one that would be there if the range were sorted, no entry
+     * before it is greater and no entry after it is smaller.
+     *
+     * @param <T>
+     *            type of array entries
+     * @param array
+     *            the array
+     * @param lo
+     *            start of the range
+     * @param hi
+     *            end of the range (exclusive)
+     * @param k
+     *            the index to select
+     * @param order
+     *            total preorder for sorting
+     * @updates array
+     * @requires <pre>
+     * 0 <= lo <= k < hi <= |array|  and
+     * [entries of array[lo, hi) are not null]  and
+     * IS_TOTAL_PREORDER([relation computed by order.compare method])
+     * </pre>
+     * @ensures <pre>
+     * perms(array[lo, hi), #array[lo, hi))  and
+     * [array[k] is the entry at index k of #array[lo, hi) sorted]  and
+     * [no entry of array[lo, k) is greater than array[k], and no entry of
+     *  array[k + 1, hi) is smaller]  and
+     * [the other entries in array are the same as in #array]
+     * </pre>
+     */
+    private static <T> void select(T[] array, int lo, int hi, int k,
+            Comparator<T> order) {
+        assert 0 <= lo && lo <= k && k < hi
+                && hi <= array.length : "Violation of: 0 <= lo <= k < hi"
+                        + " <= |array|";
+
+        int left = lo;
+        int right = hi;
+        int depthLimit = 2 * (Integer.SIZE - Integer.numberOfLeadingZeros(
+                hi - lo));
+        boolean done = false;
+        while (!done && right - left > SORT_THRESHOLD && depthLimit > 0) {
+            depthLimit--;
+            T pivot = median(array[left], array[(left + right) >>> 1],
+                    array[right - 1], order);
+            /*
+             * Three-way partition: [left, lt) < pivot, [lt, gt) = pivot,
+             * [gt, right) > pivot.
+             */
+            int lt = left;
+            int i = left;
+            int gt = right;
+            while (i < gt) {
+                int c = order.compare(array[i], pivot);
+                if (c < 0) {
+                    exchangeEntries(array, lt, i);
+                    lt++;
+                    i++;
+                } else if (c > 0) {
+                    gt--;
+                    exchangeEntries(array, i, gt);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                right = lt;
+            } else if (k >= gt) {
+                left = gt;
+            } else {
+                done = true;
+            }
+        }
+        if (!done) {
+            Arrays.sort(array, left, right, order);
+        }
+    }
+
+    /**
+     * Sorts the next batch of entries, extending the sorted run at the front.
+     *
+     * @updates this
+     * @requires not $this.insertionMode  and  $this.front = $this.sortedEnd
+     *           < $this.end
+     * @ensures <pre>
+     * $this.sortedEnd =
+     *   min(#$this.front + #$this.batchSize, $this.end)  and
+     * $this.batchSize = 2 * #$this.batchSize (at most |$this.entries|)
+     * </pre>
+     */
+    private void sortNextBatch() {
+        int stop = (int) Math.min(this.end, (long) this.front + this.batchSize);
+        if (stop < this.end) {
+            select(this.entries, this.front, this.end, stop - 1,
+                    this.machineOrder);
+        }
+        Arrays.sort(this.entries, this.front, stop, this.machineOrder);
+        this.sortedEnd = stop;
+        this.batchSize = (int) Math.min(MAX_CAPACITY, 2L * this.batchSize);
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation. The O(n) clauses are checked only in debug
+     * mode.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * 0 <= $this.front <= $this.sortedEnd <= $this.end <= |$this.entries|  and
+     * $this.batchSize > 0  and
+     * for all i: integer
+     *     where ($this.front <= i  and  i < $this.end)
+     *   ([entry at position i in $this.entries is not null])  and
+     * if $this.insertionMode then
+     *   $this.front = 0  and  $this.sortedEnd = 0
+     * else
+     *   [$this.entries[$this.front, $this.sortedEnd) is sorted according to
+     *    the relation computed by $this.machineOrder.compare method]  and
+     *   [every entry of $this.entries[$this.front, $this.sortedEnd) is at
+     *    most every entry of $this.entries[$this.sortedEnd, $this.end)
+     *    according to that relation]
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert 0 <= this.front : "Violation of: 0 <= $this.front";
+        assert this.front <= this.sortedEnd : ""
+                + "Violation of: $this.front <= $this.sortedEnd";
+        assert this.sortedEnd <= this.end : ""
+                + "Violation of: $this.sortedEnd <= $this.end";
+        assert this.end <= this.entries.length : ""
+                + "Violation of: $this.end <= |$this.entries|";
+        assert this.batchSize > 0 : "Violation of: $this.batchSize > 0";
+        assert !this.insertionMode
+                || this.sortedEnd == 0 : "Violation of: if $this.insertionMode"
+                        + " then $this.front = 0 and $this.sortedEnd = 0";
+        if (DEBUG) {
+            for (int i = this.front; i < this.end; i++) {
+                assert this.entries[i] != null : "Violation of: all entries in"
+                        + " $this.entries[$this.front, $this.end) are not null";
+            }
+            for (int i = this.front + 1; i < this.sortedEnd; i++) {
+                assert this.machineOrder.compare(this.entries[i - 1],
+                        this.entries[i]) <= 0 : "Violation of:"
+                                + " [$this.entries[$this.front,"
+                                + " $this.sortedEnd) is sorted]";
+            }
+            if (this.front < this.sortedEnd) {
+                T largest = this.entries[this.sortedEnd - 1];
+                for (int i = this.sortedEnd; i < this.end; i++) {
+                    assert this.machineOrder.compare(largest,
+                            this.entries[i]) <= 0 : "Violation of: [sorted"
+                                    + " run is at most every other entry]";
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param batch
+     *            size of the first batch
+     * @requires <pre>
+     * IS_TOTAL_PREORDER([relation computed by order.compare method]  and
+     * batch > 0
+     * </pre>
+     * @ensures <pre>
+     * $this.insertionMode = true  and
+     * $this.machineOrder = order  and
+     * $this.front = 0  and  $this.sortedEnd = 0  and  $this.end = 0  and
+     * $this.firstBatchSize = batch  and  $this.batchSize = batch
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(Comparator<T> order, int batch) {
+        this.machineOrder = order;
+        this.insertionMode = true;
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.entries = (T[]) (new Object[DEFAULT_CAPACITY]);
+        this.front = 0;
+        this.sortedEnd = 0;
+        this.end = 0;
+        this.firstBatchSize = batch;
+        this.batchSize = batch;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    public SortingMachine5c(Comparator<T> order) {
+        this(order, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor from order and the number of entries expected to be
+     * removed. Removing up to {@code k} entries sorts only those.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param k
+     *            expected number of calls to {@code removeFirst}
+     * @requires k > 0
+     */
+    public SortingMachine5c(Comparator<T> order, int k) {
+        assert k > 0 : "Violation of: k > 0";
+        this.createNewRep(order, k);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            return this.getClass().getConstructor(Comparator.class, int.class)
+                    .newInstance(this.machineOrder, this.firstBatchSize);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.machineOrder, this.firstBatchSize);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SortingMachine5c<?> : ""
+                + "Violation of: source is of dynamic type SortingMachine5c<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SortingMachine5c<?>, and the ? must be T or the call would not have
+         * compiled.
+         */
+        SortingMachine5c<T> localSource = (SortingMachine5c<T>) source;
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.entries = localSource.entries;
+        this.front = localSource.front;
+        this.sortedEnd = localSource.sortedEnd;
+        this.end = localSource.end;
+        this.firstBatchSize = localSource.firstBatchSize;
+        this.batchSize = localSource.batchSize;
+        localSource.createNewRep(localSource.machineOrder,
+                localSource.firstBatchSize);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        if (this.end == this.entries.length) {
+            int capacity = (int) Math.min(MAX_CAPACITY,
+                    2L * this.entries.length);
+            this.entries = Arrays.copyOf(this.entries, capacity);
+        }
+        this.entries[this.end] = x;
+        this.end++;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        this.insertionMode = false;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        if (this.front == this.sortedEnd) {
+            this.sortNextBatch();
+        }
+        T first = this.entries[this.front];
+        this.entries[this.front] = null;
+        this.front++;
+        assert this.conventionHolds();
+        return first;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.end - this.front;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new SortingMachine5cIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code SortingMachine5c}.
+     */
+    private final class SortingMachine5cIterator implements Iterator<T> {
+
+        /**
+         * Index of the next entry to return.
+         */
+        private int arrayCurrentIndex;
+
+        /**
+         * No-argument constructor.
+         */
+        private SortingMachine5cIterator() {
+            this.arrayCurrentIndex = SortingMachine5c.this.front;
+            assert SortingMachine5c.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assert SortingMachine5c.this.conventionHolds();
+            return this.arrayCurrentIndex < SortingMachine5c.this.end;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T next = SortingMachine5c.this.entries[this.arrayCurrentIndex];
+            this.arrayCurrentIndex++;
+            assert SortingMachine5c.this.conventionHolds();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
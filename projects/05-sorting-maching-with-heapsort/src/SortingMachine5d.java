@@ -0,0 +1,607 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} represented as a growable array that is sorted in
+ * parallel when the machine changes to extraction mode, with implementations
+ * of primary methods.
+ *
+ * <p>
+ * {@code changeToExtractionMode} runs a fork/join merge sort on a
+ * {@code ForkJoinPool} (the common pool unless one is given to the
+ * constructor): ranges of up to {@code SEQUENTIAL_SORT} entries are sorted by
+ * {@code Arrays.sort}, and sorted halves are combined by a merge that itself
+ * splits into parallel tasks (cutting the larger run in the middle and the
+ * smaller one at the matching position), so that the last, largest merges
+ * also use every worker. {@code removeFirst} then just advances a cursor over
+ * the sorted array. The sort is not stable, which the {@code SortingMachine}
+ * contract does not require.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * $this.pool is not null  and
+ * 0 <= $this.front <= $this.end <= |$this.entries|  and
+ * for all i: integer
+ *     where ($this.front <= i  and  i < $this.end)
+ *   ([entry at position i in $this.entries is not null])  and
+ * if $this.insertionMode then
+ *   $this.front = 0
+ * else
+ *   [$this.entries[$this.front, $this.end) is sorted according to the
+ *    relation computed by $this.machineOrder.compare method]
+ * </pre>
+ * @correspondence <pre>
+ * this = ($this.insertionMode, $this.machineOrder,
+ *         multiset_entries($this.entries[$this.front, $this.end)))
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class SortingMachine5d<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Capacity of the array of a new machine.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Largest array length the JVM reliably allows.
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Ranges at most this long are sorted by a single task.
+     */
+    private static final int SEQUENTIAL_SORT = 1 << 13;
+
+    /**
+     * Merges producing at most this many entries are done by a single task.
+     */
+    private static final int SEQUENTIAL_MERGE = 1 << 13;
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Pool running the sort.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries; those before {@code front} have been removed.
+     */
+    private T[] entries;
+
+    /**
+     * Index of the first entry not yet removed.
+     */
+    private int front;
+
+    /**
+     * Number of slots of {@code entries} in use.
+     */
+    private int end;
+
+    /**
+     * Task sorting {@code array[lo, hi)}, using {@code buffer[lo, hi)} as
+     * scratch space.
+     */
+    private static final class SortTask<T> extends RecursiveAction {
+
+        /**
+         * Serialization version (tasks are never serialized).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The array to sort.
+         */
+        private final T[] array;
+
+        /**
+         * Scratch space, as long as {@code array}.
+         */
+        private final T[] buffer;
+
+        /**
+         * Start of the range.
+         */
+        private final int lo;
+
+        /**
+         * End of the range (exclusive).
+         */
+        private final int hi;
+
+        /**
+         * Order.
+         */
+        private final Comparator<T> order;
+
+        /**
+         * Constructor.
+         *
+         * @param array
+         *            the array to sort
+         * @param buffer
+         *            scratch space
+         * @param lo
+         *            start of the range
+         * @param hi
+         *            end of the range (exclusive)
+         * @param order
+         *            total preorder for sorting
+         */
+        SortTask(T[] array, T[] buffer, int lo, int hi, Comparator<T> order) {
+            this.array = array;
+            this.buffer = buffer;
+            this.lo = lo;
+            this.hi = hi;
+            this.order = order;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo <= SEQUENTIAL_SORT) {
+                Arrays.sort(this.array, this.lo, this.hi, this.order);
+            } else {
+                int mid = (this.lo + this.hi) >>> 1;
+                invokeAll(
+                        new SortTask<T>(this.array, this.buffer, this.lo, mid,
+                                this.order),
+                        new SortTask<T>(this.array, this.buffer, mid, this.hi,
+                                this.order));
+                /*
+                 * Halves that are already in order need no merge.
+                 */
+                if (this.order.compare(this.array[mid - 1],
+                        this.array[mid]) > 0) {
+                    System.arraycopy(this.array, this.lo, this.buffer, this.lo,
+                            this.hi - this.lo);
+                    new MergeTask<T>(this.buffer, this.lo, mid, mid, this.hi,
+                            this.array, this.lo, this.order).compute();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Task merging sorted runs {@code source[lo1, hi1)} and
+     * {@code source[lo2, hi2)} into {@code target}, starting at {@code at}.
+     */
+    private static final class MergeTask<T> extends RecursiveAction {
+
+        /**
+         * Serialization version (tasks are never serialized).
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Array holding both runs.
+         */
+        private final T[] source;
+
+        /**
+         * Start of the first run.
+         */
+        private final int lo1;
+
+        /**
+         * End of the first run (exclusive).
+         */
+        private final int hi1;
+
+        /**
+         * Start of the second run.
+         */
+        private final int lo2;
+
+        /**
+         * End of the second run (exclusive).
+         */
+        private final int hi2;
+
+        /**
+         * Array receiving the merged run.
+         */
+        private final T[] target;
+
+        /**
+         * Start of the merged run in {@code target}.
+         */
+        private final int at;
+
+        /**
+         * Order.
+         */
+        private final Comparator<T> order;
+
+        /**
+         * Constructor.
+         *
+         * @param source
+         *            array holding both runs
+         * @param lo1
+         *            start of the first run
+         * @param hi1
+         *            end of the first run (exclusive)
+         * @param lo2
+         *            start of the second run
+         * @param hi2
+         *            end of the second run (exclusive)
+         * @param target
+         *            array receiving the merged run
+         * @param at
+         *            start of the merged run in target
+         * @param order
+         *            total preorder for sorting
+         */
+        MergeTask(T[] source, int lo1, int hi1, int lo2, int hi2, T[] target,
+                int at, Comparator<T> order) {
+            this.source = source;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.target = target;
+            this.at = at;
+            this.order = order;
+        }
+
+        /**
+         * Returns the first index in {@code source[lo, hi)} whose entry is not
+         * smaller than {@code x}.
+         *
+         * @param lo
+         *            start of the sorted range
+         * @param hi
+         *            end of the sorted range (exclusive)
+         * @param x
+         *            the bound
+         * @return the index, in [lo, hi]
+         */
+        private int lowerBound(int lo, int hi, T x) {
+            int left = lo;
+            int right = hi;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (this.order.compare(this.source[mid], x) < 0) {
+                    left = mid + 1;
+                } else {
+                    right = mid;
+                }
+            }
+            return left;
+        }
+
+        /**
+         * Merges the two runs with a single task.
+         */
+        private void mergeSequentially() {
+            int i = this.lo1;
+            int j = this.lo2;
+            int k = this.at;
+            while (i < this.hi1 && j < this.hi2) {
+                if (this.order.compare(this.source[j], this.source[i]) < 0) {
+                    this.target[k] = this.source[j];
+                    j++;
+                } else {
+                    this.target[k] = this.source[i];
+                    i++;
+                }
+                k++;
+            }
+            System.arraycopy(this.source, i, this.target, k, this.hi1 - i);
+            System.arraycopy(this.source, j, this.target, k + this.hi1 - i,
+                    this.hi2 - j);
+        }
+
+        @Override
+        protected void compute() {
+            int n1 = this.hi1 - this.lo1;
+            int n2 = this.hi2 - this.lo2;
+            if (n1 + n2 <= SEQUENTIAL_MERGE) {
+                this.mergeSequentially();
+            } else if (n1 < n2) {
+                new MergeTask<T>(this.source, this.lo2, this.hi2, this.lo1,
+                        this.hi1, this.target, this.at, this.order).compute();
+            } else {
+                /*
+                 * Everything before the cuts is at most the pivot and
+                 * everything after them is at least the pivot, so the two
+                 * halves can be merged independently.
+                 */
+                int m1 = (this.lo1 + this.hi1) >>> 1;
+                int m2 = this.lowerBound(this.lo2, this.hi2, this.source[m1]);
+                int split = this.at + (m1 - this.lo1) + (m2 - this.lo2);
+                invokeAll(
+                        new MergeTask<T>(this.source, this.lo1, m1, this.lo2,
+                                m2, this.target, this.at, this.order),
+                        new MergeTask<T>(this.source, m1, this.hi1, m2,
+                                this.hi2, this.target, split, this.order));
+            }
+        }
+
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * $this.pool is not null  and
+     * 0 <= $this.front <= $this.end <= |$this.entries|  and
+     * if $this.insertionMode then
+     *   $this.front = 0
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert this.pool != null : "Violation of: $this.pool is not null";
+        assert 0 <= this.front : "Violation of: 0 <= $this.front";
+        assert this.front <= this.end : ""
+                + "Violation of: $this.front <= $this.end";
+        assert this.end <= this.entries.length : ""
+                + "Violation of: $this.end <= |$this.entries|";
+        assert !this.insertionMode || this.front == 0 : ""
+                + "Violation of: if $this.insertionMode then $this.front = 0";
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param sortPool
+     *            pool running the sort
+     * @requires IS_TOTAL_PREORDER([relation computed by order.compare method]
+     * @ensures <pre>
+     * $this.insertionMode = true  and
+     * $this.machineOrder = order  and  $this.pool = sortPool  and
+     * $this.front = 0  and  $this.end = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(Comparator<T> order, ForkJoinPool sortPool) {
+        this.machineOrder = order;
+        this.pool = sortPool;
+        this.insertionMode = true;
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.entries = (T[]) (new Object[DEFAULT_CAPACITY]);
+        this.front = 0;
+        this.end = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order, sorting on the common {@code ForkJoinPool}.
+     *
+     * @param order
+     *            total preorder for sorting
+     */
+    public SortingMachine5d(Comparator<T> order) {
+        this(order, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor from order and the pool to sort on.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param pool
+     *            pool running the sort
+     */
+    public SortingMachine5d(Comparator<T> order, ForkJoinPool pool) {
+        assert pool != null : "Violation of: pool is not null";
+        this.createNewRep(order, pool);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            return this.getClass()
+                    .getConstructor(Comparator.class, ForkJoinPool.class)
+                    .newInstance(this.machineOrder, this.pool);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep(this.machineOrder, this.pool);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SortingMachine5d<?> : ""
+                + "Violation of: source is of dynamic type SortingMachine5d<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SortingMachine5d<?>, and the ? must be T or the call would not have
+         * compiled.
+         */
+        SortingMachine5d<T> localSource = (SortingMachine5d<T>) source;
+        this.insertionMode = localSource.insertionMode;
+        this.machineOrder = localSource.machineOrder;
+        this.pool = localSource.pool;
+        this.entries = localSource.entries;
+        this.front = localSource.front;
+        this.end = localSource.end;
+        localSource.createNewRep(localSource.machineOrder, localSource.pool);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        if (this.end == this.entries.length) {
+            int capacity = (int) Math.min(MAX_CAPACITY,
+                    2L * this.entries.length);
+            this.entries = Arrays.copyOf(this.entries, capacity);
+        }
+        this.entries[this.end] = x;
+        this.end++;
+        assert this.conventionHolds();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        if (this.end > SEQUENTIAL_SORT) {
+            T[] buffer = (T[]) (new Object[this.end]);
+            this.pool.invoke(new SortTask<T>(this.entries, buffer, 0, this.end,
+                    this.machineOrder));
+        } else {
+            Arrays.sort(this.entries, 0, this.end, this.machineOrder);
+        }
+        this.insertionMode = false;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        T first = this.entries[this.front];
+        this.entries[this.front] = null;
+        this.front++;
+        assert this.conventionHolds();
+        return first;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.end - this.front;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new SortingMachine5dIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code SortingMachine5d}.
+     */
+    private final class SortingMachine5dIterator implements Iterator<T> {
+
+        /**
+         * Index of the next entry to return.
+         */
+        private int arrayCurrentIndex;
+
+        /**
+         * No-argument constructor.
+         */
+        private SortingMachine5dIterator() {
+            this.arrayCurrentIndex = SortingMachine5d.this.front;
+            assert SortingMachine5d.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            assert SortingMachine5d.this.conventionHolds();
+            return this.arrayCurrentIndex < SortingMachine5d.this.end;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T next = SortingMachine5d.this.entries[this.arrayCurrentIndex];
+            this.arrayCurrentIndex++;
+            assert SortingMachine5d.this.conventionHolds();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
@@ -0,0 +1,1153 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachineSecondary;
+
+/**
+ * {@code SortingMachine} that keeps at most a fixed number of entries in
+ * memory and spills the rest to temporary files (external merge sort), with
+ * implementations of primary methods.
+ *
+ * <p>
+ * In insertion mode entries collect in an in-memory buffer; whenever it holds
+ * {@code memoryBudget} entries it is sorted and written, encoded by an
+ * {@code ElementCodec}, to a new temporary run file through a buffered
+ * stream. {@code changeToExtractionMode} sorts what is left in the buffer and,
+ * while there are more than {@code MAX_FAN_IN} runs, merges groups of at most
+ * {@code MAX_FAN_IN} run files into longer ones. It then opens the remaining
+ * run files for buffered sequential reading and arranges the runs in a heap
+ * ordered by their first entries; {@code removeFirst} takes the first entry
+ * of the top run and sifts that run down, a k-way merge costing O(log k)
+ * comparisons per entry for k runs. Run files are deleted once they have been
+ * read to the end, or when the machine is cleared; a machine no longer needed
+ * before it is empty should be cleared so that its files do not outlive it.
+ *
+ * <p>
+ * Besides the {@code memoryBudget} entries, a machine uses at most
+ * {@code MAX_FAN_IN + 1} stream buffers of {@code STREAM_BUFFER_BYTES} bytes
+ * (about 0.5 MB) and as many open files, whatever the number of entries. An
+ * iterator over a machine that has spilled reads the run files again, at most
+ * {@code ITERATOR_CHUNK} entries at a time, and keeps no file open between
+ * calls; like any iterator over a {@code SortingMachine}, it must not be used
+ * once the machine has been changed.
+ *
+ * @param <T>
+ *            type of {@code SortingMachine} entries
+ * @mathdefinitions <pre>
+ * IS_TOTAL_PREORDER (
+ *   r: binary relation on T
+ *  ) : boolean is
+ *  for all x, y, z: T
+ *   ((r(x, y) or r(y, x))  and
+ *    (if (r(x, y) and r(y, z)) then r(x, z)))
+ * </pre>
+ * @convention <pre>
+ * IS_TOTAL_PREORDER([relation computed by $this.machineOrder.compare method]  and
+ * $this.codec is not null  and  $this.memoryBudget > 0  and
+ * 0 <= $this.buffered <= |$this.buffer| <= $this.memoryBudget  and
+ * [entries of $this.buffer[0, $this.buffered) are not null]  and
+ * [every file in $this.spilled holds the encodings of its count entries,
+ *  sorted]  and
+ * if $this.insertionMode then
+ *   $this.runCount = 0  and
+ *   $this.size = $this.buffered + [sum of the counts of $this.spilled]
+ * else
+ *   $this.buffered = 0  and  $this.spilled = <>  and
+ *   0 <= $this.runCount <= min(|$this.runs|, MAX_FAN_IN)  and
+ *   [every run in $this.runs[0, $this.runCount) is sorted and has a first
+ *    entry, and the runs form a heap ordered by their first entries]  and
+ *   $this.size = [total number of entries left in the runs]
+ * </pre>
+ * @correspondence <pre>
+ * if $this.insertionMode then
+ *   this = (true, $this.machineOrder,
+ *           multiset_entries($this.buffer[0, $this.buffered)) union
+ *           [entries encoded in the files of $this.spilled])
+ * else
+ *   this = (false, $this.machineOrder,
+ *           [entries left in the runs of $this.runs[0, $this.runCount)])
+ * </pre>
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public class SortingMachine5e<T> extends SortingMachineSecondary<T> {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Capacity of the buffer of a new machine (it grows up to the budget).
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Largest number of runs read at the same time.
+     */
+    private static final int MAX_FAN_IN = 64;
+
+    /**
+     * Size in bytes of the buffer of each run file stream.
+     */
+    private static final int STREAM_BUFFER_BYTES = 1 << 13;
+
+    /**
+     * Largest number of entries an iterator reads from a run file at a time.
+     */
+    private static final int ITERATOR_CHUNK = 256;
+
+    /**
+     * Prefix of the names of run files.
+     */
+    private static final String RUN_FILE_PREFIX = "SortingMachine5e-";
+
+    /**
+     * Suffix of the names of run files.
+     */
+    private static final String RUN_FILE_SUFFIX = ".run";
+
+    /**
+     * Sorted run file.
+     */
+    private static final class RunFile {
+
+        /**
+         * Location of the file.
+         */
+        private final Path path;
+
+        /**
+         * Number of entries in the file.
+         */
+        private final int count;
+
+        /**
+         * Constructor.
+         *
+         * @param path
+         *            location of the file
+         * @param count
+         *            number of entries in the file
+         */
+        RunFile(Path path, int count) {
+            this.path = path;
+            this.count = count;
+        }
+
+    }
+
+    /**
+     * Input stream counting the bytes read through it, so that a position in
+     * a run file can be recorded and reading resumed there later.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Position in the file of the next byte to read.
+         */
+        private long position;
+
+        /**
+         * Constructor.
+         *
+         * @param in
+         *            the underlying stream
+         * @param position
+         *            position in the file of the first byte of {@code in}
+         */
+        CountingInputStream(InputStream in, long position) {
+            super(in);
+            this.position = position;
+        }
+
+        /**
+         * Returns the position in the file of the next byte to read.
+         *
+         * @return the position
+         */
+        long position() {
+            return this.position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = this.in.read();
+            if (b >= 0) {
+                this.position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = this.in.read(b, off, len);
+            if (n > 0) {
+                this.position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = this.in.skip(n);
+            this.position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Sorted run being merged.
+     */
+    private abstract static class Run<T> {
+
+        /**
+         * First entry not yet removed, or null if the run is exhausted.
+         */
+        private T head;
+
+        /**
+         * Replaces {@code head} by the next entry of the run, or by null if
+         * there is none.
+         */
+        abstract void advance();
+
+        /**
+         * Releases the resources of the run, keeping its entries.
+         */
+        abstract void release();
+
+        /**
+         * Releases the resources of the run and discards its entries.
+         */
+        abstract void discard();
+
+        /**
+         * Returns an iterator over {@code head} and the entries after it,
+         * independent of this run's position.
+         *
+         * @return the iterator
+         */
+        abstract Iterator<T> remaining();
+
+    }
+
+    /**
+     * Run held in an array.
+     */
+    private static final class MemoryRun<T> extends Run<T> {
+
+        /**
+         * The entries.
+         */
+        private final T[] array;
+
+        /**
+         * Index of {@code head}.
+         */
+        private int position;
+
+        /**
+         * Number of entries.
+         */
+        private final int end;
+
+        /**
+         * Constructor.
+         *
+         * @param array
+         *            the sorted entries
+         * @param end
+         *            number of entries, at least 1
+         */
+        MemoryRun(T[] array, int end) {
+            this.array = array;
+            this.position = 0;
+            this.end = end;
+            ((Run<T>) this).head = array[0];
+        }
+
+        @Override
+        void advance() {
+            this.array[this.position] = null;
+            this.position++;
+            T next = null;
+            if (this.position < this.end) {
+                next = this.array[this.position];
+            }
+            ((Run<T>) this).head = next;
+        }
+
+        @Override
+        void release() {
+            /*
+             * Nothing to release: the entries are in memory.
+             */
+        }
+
+        @Override
+        void discard() {
+            ((Run<T>) this).head = null;
+        }
+
+        @Override
+        Iterator<T> remaining() {
+            return Arrays.asList(this.array).subList(this.position, this.end)
+                    .iterator();
+        }
+
+    }
+
+    /**
+     * Run read sequentially from a run file.
+     */
+    private static final class FileRun<T> extends Run<T> {
+
+        /**
+         * The file.
+         */
+        private final RunFile file;
+
+        /**
+         * Codec of the entries.
+         */
+        private final ElementCodec<T> codec;
+
+        /**
+         * Stream counting the bytes read from the file.
+         */
+        private final CountingInputStream counter;
+
+        /**
+         * Stream decoding the entries of the file.
+         */
+        private final DataInputStream in;
+
+        /**
+         * Number of entries read from the file, {@code head} included.
+         */
+        private int read;
+
+        /**
+         * Position in the file of the encoding of {@code head}.
+         */
+        private long headPosition;
+
+        /**
+         * Constructor; opens the file and reads its first entry.
+         *
+         * @param file
+         *            the file, with at least one entry
+         * @param codec
+         *            codec of the entries
+         */
+        FileRun(RunFile file, ElementCodec<T> codec) {
+            this.file = file;
+            this.codec = codec;
+            this.counter = open(file.path, 0);
+            this.in = new DataInputStream(this.counter);
+            this.read = 0;
+            this.headPosition = 0;
+            try {
+                this.advance();
+            } catch (RuntimeException e) {
+                this.release();
+                throw e;
+            }
+        }
+
+        @Override
+        void advance() {
+            T next = null;
+            if (this.read < this.file.count) {
+                this.headPosition = this.counter.position();
+                try {
+                    next = this.codec.read(this.in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.read++;
+            }
+            ((Run<T>) this).head = next;
+        }
+
+        @Override
+        void release() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        void discard() {
+            ((Run<T>) this).head = null;
+            try {
+                this.release();
+            } finally {
+                delete(this.file.path);
+            }
+        }
+
+        @Override
+        Iterator<T> remaining() {
+            return new RunFileIterator<T>(this.file, this.codec,
+                    this.headPosition, this.file.count - this.read + 1);
+        }
+
+    }
+
+    /**
+     * Iterator over the entries of a run file from a given position on. It
+     * reads at most {@code ITERATOR_CHUNK} entries at a time, reopening the
+     * file at the recorded position, and closes the file after each read.
+     */
+    private static final class RunFileIterator<T> implements Iterator<T> {
+
+        /**
+         * The file.
+         */
+        private final RunFile file;
+
+        /**
+         * Codec of the entries.
+         */
+        private final ElementCodec<T> codec;
+
+        /**
+         * Position in the file of the first entry not yet read.
+         */
+        private long position;
+
+        /**
+         * Number of entries not yet read from the file.
+         */
+        private int unread;
+
+        /**
+         * Entries read from the file but not yet returned, from index
+         * {@code next} on.
+         */
+        private final List<T> chunk;
+
+        /**
+         * Index in {@code chunk} of the next entry to return.
+         */
+        private int next;
+
+        /**
+         * Constructor.
+         *
+         * @param file
+         *            the file
+         * @param codec
+         *            codec of the entries
+         * @param position
+         *            position in the file of the first entry to iterate over
+         * @param count
+         *            number of entries to iterate over
+         */
+        RunFileIterator(RunFile file, ElementCodec<T> codec, long position,
+                int count) {
+            this.file = file;
+            this.codec = codec;
+            this.position = position;
+            this.unread = count;
+            this.chunk = new ArrayList<T>();
+            this.next = 0;
+        }
+
+        /**
+         * Replaces {@code chunk} by the next at most {@code ITERATOR_CHUNK}
+         * entries of the file.
+         */
+        private void readChunk() {
+            this.chunk.clear();
+            this.next = 0;
+            int n = Math.min(this.unread, ITERATOR_CHUNK);
+            CountingInputStream counter = open(this.file.path, this.position);
+            try (DataInputStream in = new DataInputStream(counter)) {
+                for (int i = 0; i < n; i++) {
+                    this.chunk.add(this.codec.read(in));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.position = counter.position();
+            this.unread -= n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next < this.chunk.size() || this.unread > 0;
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            if (this.next == this.chunk.size()) {
+                this.readChunk();
+            }
+            T x = this.chunk.get(this.next);
+            this.next++;
+            return x;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+    /**
+     * Order.
+     */
+    private Comparator<T> machineOrder;
+
+    /**
+     * Codec of the entries in run files.
+     */
+    private ElementCodec<T> codec;
+
+    /**
+     * Largest number of entries held in memory.
+     */
+    private int memoryBudget;
+
+    /**
+     * Insertion mode.
+     */
+    private boolean insertionMode;
+
+    /**
+     * Entries added since the last spill.
+     */
+    private T[] buffer;
+
+    /**
+     * Number of entries in {@code buffer}.
+     */
+    private int buffered;
+
+    /**
+     * Run files written so far in insertion mode.
+     */
+    private List<RunFile> spilled;
+
+    /**
+     * Heap of the runs being merged in extraction mode.
+     */
+    private Run<T>[] runs;
+
+    /**
+     * Number of runs in {@code runs}.
+     */
+    private int runCount;
+
+    /**
+     * Number of entries.
+     */
+    private int size;
+
+    /**
+     * Opens {@code path} for buffered sequential reading from
+     * {@code position} on.
+     *
+     * @param path
+     *            the file
+     * @param position
+     *            position in the file of the first byte to read
+     * @return the stream
+     */
+    private static CountingInputStream open(Path path, long position) {
+        try {
+            SeekableByteChannel channel = Files.newByteChannel(path);
+            try {
+                channel.position(position);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return new CountingInputStream(
+                    new BufferedInputStream(Channels.newInputStream(channel),
+                            STREAM_BUFFER_BYTES),
+                    position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a new, empty run file.
+     *
+     * @return the location of the file
+     */
+    private static Path createRunFile() {
+        try {
+            return Files.createTempFile(RUN_FILE_PREFIX, RUN_FILE_SUFFIX);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Opens {@code path} for buffered sequential writing.
+     *
+     * @param path
+     *            the file
+     * @return the stream
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    private static DataOutputStream create(Path path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path), STREAM_BUFFER_BYTES));
+    }
+
+    /**
+     * Deletes {@code path} if it exists.
+     *
+     * @param path
+     *            the file
+     */
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sorts the buffer, writes it to a new run file and empties it. If
+     * writing fails, the run file is deleted and this is unchanged but for
+     * the order of the buffer.
+     *
+     * @updates this
+     * @requires $this.insertionMode  and  $this.buffered > 0
+     * @ensures <pre>
+     * $this.buffered = 0  and
+     * $this.spilled = #$this.spilled * <[file holding the encodings of
+     *   #$this.buffer[0, #$this.buffered), sorted]>
+     * </pre>
+     */
+    private void spill() {
+        Arrays.sort(this.buffer, 0, this.buffered, this.machineOrder);
+        Path path = createRunFile();
+        boolean written = false;
+        try {
+            try (DataOutputStream out = create(path)) {
+                for (int i = 0; i < this.buffered; i++) {
+                    this.codec.write(this.buffer[i], out);
+                }
+            }
+            written = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (!written) {
+                delete(path);
+            }
+        }
+        this.spilled.add(new RunFile(path, this.buffered));
+        Arrays.fill(this.buffer, 0, this.buffered, null);
+        this.buffered = 0;
+    }
+
+    /**
+     * Merges the run files in {@code group} into a new run file, deleting
+     * them. If merging fails, the new run file is deleted and those in
+     * {@code group} are kept.
+     *
+     * @param group
+     *            the run files
+     * @return the new run file
+     * @requires 0 < |group| <= MAX_FAN_IN
+     * @ensures <pre>
+     * [merge holds the encodings of the entries of the files in group,
+     *  sorted, and those files are deleted]
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private RunFile merge(List<RunFile> group) {
+        Run<T>[] heap = new Run[group.size()];
+        int count = 0;
+        int merged = 0;
+        Path path = createRunFile();
+        boolean written = false;
+        try {
+            for (RunFile file : group) {
+                heap[count] = new FileRun<T>(file, this.codec);
+                count++;
+            }
+            for (int top = (count - 2) >> 1; top >= 0; top--) {
+                this.siftDown(heap, count, top);
+            }
+            try (DataOutputStream out = create(path)) {
+                while (count > 0) {
+                    Run<T> top = heap[0];
+                    this.codec.write(top.head, out);
+                    merged++;
+                    top.advance();
+                    if (top.head == null) {
+                        top.release();
+                        count--;
+                        heap[0] = heap[count];
+                        heap[count] = null;
+                    }
+                    if (count > 1) {
+                        this.siftDown(heap, count, 0);
+                    }
+                }
+            }
+            written = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                heap[i].release();
+            }
+            if (!written) {
+                delete(path);
+            }
+        }
+        for (RunFile file : group) {
+            delete(file.path);
+        }
+        return new RunFile(path, merged);
+    }
+
+    /**
+     * Sifts the run at index {@code top} of the heap of runs
+     * {@code heap[0, count)} down to its place.
+     *
+     * @param heap
+     *            the heap of runs
+     * @param count
+     *            number of runs in the heap
+     * @param top
+     *            index of the run
+     * @updates heap
+     * @requires <pre>
+     * 0 <= top < count <= |heap|  and
+     * [the subtrees of heap[0, count) below top are heaps]
+     * </pre>
+     * @ensures [the subtree of heap[0, count) rooted at top is a heap]
+     */
+    private void siftDown(Run<T>[] heap, int count, int top) {
+        Run<T> x = heap[top];
+        int hole = top;
+        int lastParent = (count - 2) >> 1;
+        boolean done = false;
+        while (!done && hole <= lastParent) {
+            int child = 2 * hole + 1;
+            if (child + 1 < count && this.machineOrder
+                    .compare(heap[child + 1].head, heap[child].head) < 0) {
+                child++;
+            }
+            if (this.machineOrder.compare(heap[child].head, x.head) < 0) {
+                heap[hole] = heap[child];
+                hole = child;
+            } else {
+                done = true;
+            }
+        }
+        heap[hole] = x;
+    }
+
+    /**
+     * Closes every open run and deletes every run file.
+     *
+     * @updates this
+     * @ensures [no run is open and no run file exists]
+     */
+    private void release() {
+        for (RunFile file : this.spilled) {
+            delete(file.path);
+        }
+        for (int i = 0; i < this.runCount; i++) {
+            this.runs[i].discard();
+        }
+    }
+
+    /**
+     * Checks that the part of the convention repeated below holds for the
+     * current representation.
+     *
+     * @return true if the convention holds (or if assertion checking is off);
+     *         otherwise reports a violated assertion
+     * @convention <pre>
+     * $this.codec is not null  and  $this.memoryBudget > 0  and
+     * 0 <= $this.buffered <= |$this.buffer| <= $this.memoryBudget  and
+     * if $this.insertionMode then
+     *   $this.runCount = 0
+     * else
+     *   $this.buffered = 0  and  $this.spilled = <>  and
+     *   0 <= $this.runCount <= min(|$this.runs|, MAX_FAN_IN)
+     * </pre>
+     */
+    private boolean conventionHolds() {
+        assert this.codec != null : "Violation of: $this.codec is not null";
+        assert this.memoryBudget > 0 : "Violation of: $this.memoryBudget > 0";
+        assert 0 <= this.buffered : "Violation of: 0 <= $this.buffered";
+        assert this.buffered <= this.buffer.length : ""
+                + "Violation of: $this.buffered <= |$this.buffer|";
+        assert this.buffer.length <= this.memoryBudget : ""
+                + "Violation of: |$this.buffer| <= $this.memoryBudget";
+        if (this.insertionMode) {
+            assert this.runCount == 0 : ""
+                    + "Violation of: if $this.insertionMode then"
+                    + " $this.runCount = 0";
+        } else {
+            assert this.buffered == 0 : "Violation of: if not"
+                    + " $this.insertionMode then $this.buffered = 0";
+            assert this.spilled.isEmpty() : "Violation of: if not"
+                    + " $this.insertionMode then $this.spilled = <>";
+            assert 0 <= this.runCount && this.runCount <= this.runs.length
+                    && this.runCount <= MAX_FAN_IN : "Violation of:"
+                            + " if not $this.insertionMode then 0 <="
+                            + " $this.runCount <= min(|$this.runs|,"
+                            + " MAX_FAN_IN)";
+        }
+        return true;
+    }
+
+    /**
+     * Creator of initial representation.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param entryCodec
+     *            codec of the entries in run files
+     * @param budget
+     *            largest number of entries held in memory
+     * @requires <pre>
+     * IS_TOTAL_PREORDER([relation computed by order.compare method]  and
+     * entryCodec is not null  and  budget > 0
+     * </pre>
+     * @ensures <pre>
+     * $this.insertionMode = true  and
+     * $this.machineOrder = order  and  $this.codec = entryCodec  and
+     * $this.memoryBudget = budget  and
+     * $this.buffered = 0  and  $this.spilled = <>  and
+     * $this.runCount = 0  and  $this.size = 0
+     * </pre>
+     */
+    @SuppressWarnings("unchecked")
+    private void createNewRep(Comparator<T> order, ElementCodec<T> entryCodec,
+            int budget) {
+        this.machineOrder = order;
+        this.codec = entryCodec;
+        this.memoryBudget = budget;
+        this.insertionMode = true;
+        /*
+         * With "new T[...]" in place of "new Object[...]" it does not compile;
+         * as shown, it results in a warning about an unchecked cast, though it
+         * cannot fail.
+         */
+        this.buffer = (T[]) (new Object[Math.min(budget, INITIAL_CAPACITY)]);
+        this.buffered = 0;
+        this.spilled = new ArrayList<RunFile>();
+        this.runs = new Run[0];
+        this.runCount = 0;
+        this.size = 0;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * Constructor from order, codec and memory budget.
+     *
+     * @param order
+     *            total preorder for sorting
+     * @param codec
+     *            codec of the entries in run files
+     * @param memoryBudget
+     *            largest number of entries to hold in memory
+     * @requires codec is not null  and  memoryBudget > 0
+     */
+    public SortingMachine5e(Comparator<T> order, ElementCodec<T> codec,
+            int memoryBudget) {
+        assert codec != null : "Violation of: codec is not null";
+        assert memoryBudget > 0 : "Violation of: memoryBudget > 0";
+        this.createNewRep(order, codec, memoryBudget);
+        assert this.conventionHolds();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final SortingMachine<T> newInstance() {
+        try {
+            return this.getClass()
+                    .getConstructor(Comparator.class, ElementCodec.class,
+                            int.class)
+                    .newInstance(this.machineOrder, this.codec,
+                            this.memoryBudget);
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.release();
+        this.createNewRep(this.machineOrder, this.codec, this.memoryBudget);
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final void transferFrom(SortingMachine<T> source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof SortingMachine5e<?> : ""
+                + "Violation of: source is of dynamic type SortingMachine5e<?>";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type
+         * SortingMachine5e<?>, and the ? must be T or the call would not have
+         * compiled.
+         */
+        SortingMachine5e<T> localSource = (SortingMachine5e<T>) source;
+        this.release();
+        this.machineOrder = localSource.machineOrder;
+        this.codec = localSource.codec;
+        this.memoryBudget = localSource.memoryBudget;
+        this.insertionMode = localSource.insertionMode;
+        this.buffer = localSource.buffer;
+        this.buffered = localSource.buffered;
+        this.spilled = localSource.spilled;
+        this.runs = localSource.runs;
+        this.runCount = localSource.runCount;
+        this.size = localSource.size;
+        localSource.createNewRep(localSource.machineOrder, localSource.codec,
+                localSource.memoryBudget);
+        assert this.conventionHolds();
+        assert localSource.conventionHolds();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(T x) {
+        assert x != null : "Violation of: x is not null";
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        if (this.buffered == this.memoryBudget) {
+            this.spill();
+        } else if (this.buffered == this.buffer.length) {
+            int capacity = (int) Math.min(this.memoryBudget,
+                    2L * this.buffer.length);
+            this.buffer = Arrays.copyOf(this.buffer, capacity);
+        }
+        this.buffer[this.buffered] = x;
+        this.buffered++;
+        this.size++;
+        assert this.conventionHolds();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public final void changeToExtractionMode() {
+        assert this.isInInsertionMode() : "Violation of: this.insertion_mode";
+
+        int memoryRuns = 0;
+        if (this.buffered > 0) {
+            memoryRuns = 1;
+        }
+        /*
+         * Merge just enough of the oldest run files, at most MAX_FAN_IN at a
+         * time, to leave at most MAX_FAN_IN runs; merged files go to the end.
+         */
+        while (this.spilled.size() + memoryRuns > MAX_FAN_IN) {
+            int excess = this.spilled.size() + memoryRuns - MAX_FAN_IN;
+            List<RunFile> group = this.spilled.subList(0,
+                    Math.min(MAX_FAN_IN, excess + 1));
+            RunFile merged = this.merge(group);
+            group.clear();
+            this.spilled.add(merged);
+        }
+        this.runs = new Run[this.spilled.size() + memoryRuns];
+        for (RunFile file : this.spilled) {
+            this.runs[this.runCount] = new FileRun<T>(file, this.codec);
+            this.runCount++;
+        }
+        this.spilled.clear();
+        if (this.buffered > 0) {
+            Arrays.sort(this.buffer, 0, this.buffered, this.machineOrder);
+            this.runs[this.runCount] = new MemoryRun<T>(this.buffer,
+                    this.buffered);
+            this.runCount++;
+        }
+        /*
+         * The entries now belong to the memory run; start a new, small buffer.
+         */
+        this.buffer = (T[]) (new Object[Math.min(this.memoryBudget,
+                INITIAL_CAPACITY)]);
+        this.buffered = 0;
+        for (int top = (this.runCount - 2) >> 1; top >= 0; top--) {
+            this.siftDown(this.runs, this.runCount, top);
+        }
+        this.insertionMode = false;
+        assert this.conventionHolds();
+    }
+
+    @Override
+    public final T removeFirst() {
+        assert !this
+                .isInInsertionMode() : "Violation of: not this.insertion_mode";
+        assert this.size() > 0 : "Violation of: this.contents /= {}";
+
+        Run<T> top = this.runs[0];
+        T first = top.head;
+        top.advance();
+        if (top.head == null) {
+            top.discard();
+            this.runCount--;
+            this.runs[0] = this.runs[this.runCount];
+            this.runs[this.runCount] = null;
+        }
+        if (this.runCount > 1) {
+            this.siftDown(this.runs, this.runCount, 0);
+        }
+        this.size--;
+        assert this.conventionHolds();
+        return first;
+    }
+
+    @Override
+    public final boolean isInInsertionMode() {
+        assert this.conventionHolds();
+        return this.insertionMode;
+    }
+
+    @Override
+    public final Comparator<T> order() {
+        assert this.conventionHolds();
+        return this.machineOrder;
+    }
+
+    @Override
+    public final int size() {
+        assert this.conventionHolds();
+        return this.size;
+    }
+
+    @Override
+    public final Iterator<T> iterator() {
+        return new SortingMachine5eIterator();
+    }
+
+    /**
+     * Implementation of {@code Iterator} interface for
+     * {@code SortingMachine5e}, chaining iterators over the buffer and each
+     * run file (insertion mode) or over each run (extraction mode).
+     */
+    private final class SortingMachine5eIterator implements Iterator<T> {
+
+        /**
+         * Iterators over the parts of the representation.
+         */
+        private final List<Iterator<T>> parts;
+
+        /**
+         * Index of the current part.
+         */
+        private int part;
+
+        /**
+         * No-argument constructor.
+         */
+        private SortingMachine5eIterator() {
+            SortingMachine5e<T> sm = SortingMachine5e.this;
+            this.parts = new ArrayList<Iterator<T>>();
+            this.parts.add(Arrays.asList(sm.buffer).subList(0, sm.buffered)
+                    .iterator());
+            for (RunFile file : sm.spilled) {
+                this.parts.add(new RunFileIterator<T>(file, sm.codec, 0,
+                        file.count));
+            }
+            for (int i = 0; i < sm.runCount; i++) {
+                this.parts.add(sm.runs[i].remaining());
+            }
+            this.part = 0;
+            assert SortingMachine5e.this.conventionHolds();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (this.part < this.parts.size() - 1
+                    && !this.parts.get(this.part).hasNext()) {
+                this.part++;
+            }
+            assert SortingMachine5e.this.conventionHolds();
+            return this.parts.get(this.part).hasNext();
+        }
+
+        @Override
+        public T next() {
+            assert this.hasNext() : "Violation of: ~this.unseen /= <>";
+            if (!this.hasNext()) {
+                /*
+                 * Exception is supposed to be thrown in this case, but with
+                 * assertion-checking enabled it cannot happen because of assert
+                 * above.
+                 */
+                throw new NoSuchElementException();
+            }
+            T next = this.parts.get(this.part).next();
+            assert SortingMachine5e.this.conventionHolds();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException(
+                    "remove operation not supported");
+        }
+
+    }
+
+}
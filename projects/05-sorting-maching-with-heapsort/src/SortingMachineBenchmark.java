@@ -0,0 +1,90 @@
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.Function;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.sortingmachine.SortingMachine;
+
+/**
+ * Measures the time {@code changeToExtractionMode} takes on
+ * {@code SortingMachine5a} (recursive top-down heapify) and
+ * {@code SortingMachine5b} (iterative bottom-up heap build in place in its
+ * array insertion buffer) holding 1M, 10M and 50M random {@code Integer}s.
+ * Run with assertions disabled and a large heap (e.g., -Xmx16g; 50M boxed
+ * entries plus the insertion buffer need several gigabytes).
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class SortingMachineBenchmark {
+
+    /**
+     * Numbers of entries to measure.
+     */
+    private static final int[] SIZES = { 1_000_000, 10_000_000, 50_000_000 };
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SortingMachineBenchmark() {
+    }
+
+    /**
+     * Fills a new machine made by {@code constructor} with {@code entries},
+     * then reports on {@code out} the time {@code changeToExtractionMode}
+     * takes.
+     *
+     * @param out
+     *            the output stream
+     * @param name
+     *            the name of the implementation
+     * @param constructor
+     *            makes an empty machine of the implementation from an order
+     * @param entries
+     *            the entries
+     * @updates out
+     */
+    private static void measure(SimpleWriter out, String name,
+            Function<Comparator<Integer>, SortingMachine<Integer>> constructor,
+            Integer[] entries) {
+        SortingMachine<Integer> sm = constructor
+                .apply(Comparator.<Integer> naturalOrder());
+        for (Integer x : entries) {
+            sm.add(x);
+        }
+        System.gc();
+        long start = System.nanoTime();
+        sm.changeToExtractionMode();
+        double millis = (System.nanoTime() - start) / NANOS_PER_MILLI;
+        out.println(String.format("  %-18s changeToExtractionMode %9.1f ms"
+                + "  (first %d)", name, millis, sm.removeFirst()));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(0);
+        for (int n : SIZES) {
+            Integer[] entries = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                entries[i] = random.nextInt();
+            }
+            out.println(n + " random entries");
+            measure(out, "SortingMachine5a", SortingMachine5a::new, entries);
+            measure(out, "SortingMachine5b", SortingMachine5b::new, entries);
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.sortingmachine.SortingMachine;
+
+/**
+ * Compares sorting 10M random {@code Integer}s with {@code SortingMachine5a}
+ * (single-threaded heap) and with {@code SortingMachine5d} (fork/join merge
+ * sort) on pools of 1 to 32 workers. For each machine it reports the time
+ * {@code changeToExtractionMode} takes and the total time to also remove every
+ * entry, since the heap defers most of its work to {@code removeFirst}. Worker
+ * counts above the number of processors add no speedup. Run with assertions
+ * disabled and a large heap (e.g., -Xmx8g).
+ *
+ * @author David P. & Ford M.
+ *
+ */
+public final class SortingMachineScalingBenchmark {
+
+    /**
+     * Number of entries to sort.
+     */
+    private static final int N = 10_000_000;
+
+    /**
+     * Pool sizes to measure.
+     */
+    private static final int[] WORKERS = { 1, 2, 4, 8, 16, 32 };
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SortingMachineScalingBenchmark() {
+    }
+
+    /**
+     * Fills {@code sm} with {@code entries}, then reports on {@code out} the
+     * time {@code changeToExtractionMode} takes and the time to then remove
+     * every entry.
+     *
+     * @param out
+     *            the output stream
+     * @param name
+     *            the name of the configuration
+     * @param sm
+     *            an empty machine in insertion mode
+     * @param entries
+     *            the entries
+     * @updates out
+     */
+    private static void measure(SimpleWriter out, String name,
+            SortingMachine<Integer> sm, Integer[] entries) {
+        for (Integer x : entries) {
+            sm.add(x);
+        }
+        System.gc();
+        long start = System.nanoTime();
+        sm.changeToExtractionMode();
+        long switched = System.nanoTime();
+        long checksum = 0;
+        while (sm.size() > 0) {
+            checksum += sm.removeFirst();
+        }
+        long drained = System.nanoTime();
+        out.println(String.format(
+                "  %-22s switch %9.1f ms   switch + drain %9.1f ms  (%d)",
+                name, (switched - start) / NANOS_PER_MILLI,
+                (drained - start) / NANOS_PER_MILLI, checksum));
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) {
+        SimpleWriter out = new SimpleWriter1L();
+        Random random = new Random(0);
+        Integer[] entries = new Integer[N];
+        for (int i = 0; i < N; i++) {
+            entries[i] = random.nextInt();
+        }
+        Comparator<Integer> order = Comparator.naturalOrder();
+        out.println(N + " random entries; "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        measure(out, "SortingMachine5a",
+                new SortingMachine5a<Integer>(order), entries);
+        for (int workers : WORKERS) {
+            ForkJoinPool pool = new ForkJoinPool(workers);
+            measure(out, "SortingMachine5d x" + workers,
+                    new SortingMachine5d<Integer>(order, pool), entries);
+            pool.shutdown();
+        }
+        out.close();
+    }
+
+}
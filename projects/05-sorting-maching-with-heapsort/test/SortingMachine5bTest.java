@@ -0,0 +1,85 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5b}.
+ */
+public final class SortingMachine5bTest extends SortingMachineTest {
+
+    /**
+     * Number of entries in the randomized test.
+     */
+    private static final int MANY = 20_000;
+
+    /**
+     * Range of the random entries (small enough to produce duplicates).
+     */
+    private static final int RANGE = 5_000;
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5b<String>(order);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    /**
+     * Tests that many random entries, with duplicates, come out of
+     * {@code removeFirst} in sorted order.
+     */
+    @Test
+    public void testManyRandomEntries() {
+        Random random = new Random(0);
+        Integer[] expected = new Integer[MANY];
+        SortingMachine<Integer> sm = new SortingMachine5b<Integer>(
+                Comparator.<Integer> naturalOrder());
+        for (int i = 0; i < MANY; i++) {
+            expected[i] = random.nextInt(RANGE);
+            sm.add(expected[i]);
+        }
+        Arrays.sort(expected);
+        sm.changeToExtractionMode();
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(expected[i], sm.removeFirst());
+        }
+        assertEquals(0, sm.size());
+    }
+
+    /**
+     * Tests the capacity hint constructor with a zero hint and with a hint
+     * that is then exceeded.
+     */
+    @Test
+    public void testCapacityHint() {
+        SortingMachine<String> empty = new SortingMachine5b<String>(
+                String.CASE_INSENSITIVE_ORDER, 0);
+        empty.changeToExtractionMode();
+        assertEquals(0, empty.size());
+
+        SortingMachine<String> sm = new SortingMachine5b<String>(
+                String.CASE_INSENSITIVE_ORDER, 2);
+        sm.add("c");
+        sm.add("a");
+        sm.add("d");
+        sm.add("b");
+        assertEquals(2 + 2, sm.size());
+        sm.changeToExtractionMode();
+        assertEquals("a", sm.removeFirst());
+        assertEquals("b", sm.removeFirst());
+        assertEquals("c", sm.removeFirst());
+        assertEquals("d", sm.removeFirst());
+        assertEquals(0, sm.size());
+    }
+
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5c}, using a first
+ * batch of 2 so that even small tests sort several batches.
+ */
+public final class SortingMachine5cTest extends SortingMachineTest {
+
+    /**
+     * Number of entries in the randomized tests.
+     */
+    private static final int MANY = 20_000;
+
+    /**
+     * Range of the random entries (small enough to produce duplicates).
+     */
+    private static final int RANGE = 5_000;
+
+    /**
+     * Number of entries removed in the top-k test.
+     */
+    private static final int TOP = 100;
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5c<String>(order, 2);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    /**
+     * Fills {@code sm} and {@code expected} with the same random entries, then
+     * sorts {@code expected} and switches {@code sm} to extraction mode.
+     *
+     * @param sm
+     *            the machine, empty and in insertion mode
+     * @param expected
+     *            the array to fill
+     * @updates sm, expected
+     */
+    private static void fill(SortingMachine<Integer> sm, Integer[] expected) {
+        Random random = new Random(0);
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = random.nextInt(RANGE);
+            sm.add(expected[i]);
+        }
+        Arrays.sort(expected);
+        sm.changeToExtractionMode();
+    }
+
+    /**
+     * Tests that many random entries, with duplicates, all come out of
+     * {@code removeFirst} in sorted order across many batches.
+     */
+    @Test
+    public void testRemoveAll() {
+        Integer[] expected = new Integer[MANY];
+        SortingMachine<Integer> sm = new SortingMachine5c<Integer>(
+                Comparator.<Integer> naturalOrder(), 2 + 1);
+        fill(sm, expected);
+        for (int i = 0; i < MANY; i++) {
+            assertEquals(expected[i], sm.removeFirst());
+        }
+        assertEquals(0, sm.size());
+    }
+
+    /**
+     * Tests removing only the first {@code TOP} entries, with a first batch
+     * of that size.
+     */
+    @Test
+    public void testRemoveTopK() {
+        Integer[] expected = new Integer[MANY];
+        SortingMachine<Integer> sm = new SortingMachine5c<Integer>(
+                Comparator.<Integer> naturalOrder(), TOP);
+        fill(sm, expected);
+        for (int i = 0; i < TOP; i++) {
+            assertEquals(expected[i], sm.removeFirst());
+        }
+        assertEquals(MANY - TOP, sm.size());
+    }
+
+}
@@ -0,0 +1,98 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5d}.
+ */
+public final class SortingMachine5dTest extends SortingMachineTest {
+
+    /**
+     * Number of entries in the larger tests (enough for several levels of
+     * parallel sorting and merging).
+     */
+    private static final int MANY = 300_000;
+
+    /**
+     * Range of the random entries (small enough to produce duplicates).
+     */
+    private static final int RANGE = 50_000;
+
+    /**
+     * Number of workers of the pool used by the larger tests.
+     */
+    private static final int WORKERS = 4;
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        return new SortingMachine5d<String>(order);
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    /**
+     * Adds {@code entries} to a new {@code SortingMachine5d} sorting on a pool
+     * of {@code WORKERS} workers, then checks that they come out of
+     * {@code removeFirst} in sorted order.
+     *
+     * @param entries
+     *            the entries
+     */
+    private static void checkSorts(Integer[] entries) {
+        ForkJoinPool pool = new ForkJoinPool(WORKERS);
+        SortingMachine<Integer> sm = new SortingMachine5d<Integer>(
+                Comparator.<Integer> naturalOrder(), pool);
+        for (Integer x : entries) {
+            sm.add(x);
+        }
+        sm.changeToExtractionMode();
+        pool.shutdown();
+        Integer[] expected = entries.clone();
+        Arrays.sort(expected);
+        for (Integer x : expected) {
+            assertEquals(x, sm.removeFirst());
+        }
+        assertEquals(0, sm.size());
+    }
+
+    /**
+     * Tests sorting many random entries with duplicates.
+     */
+    @Test
+    public void testManyRandomEntries() {
+        Random random = new Random(0);
+        Integer[] entries = new Integer[MANY];
+        for (int i = 0; i < MANY; i++) {
+            entries[i] = random.nextInt(RANGE);
+        }
+        checkSorts(entries);
+    }
+
+    /**
+     * Tests sorting many entries given in increasing order (no merge needed)
+     * and in decreasing order (every merge is maximally lopsided).
+     */
+    @Test
+    public void testManyOrderedEntries() {
+        Integer[] increasing = new Integer[MANY];
+        Integer[] decreasing = new Integer[MANY];
+        for (int i = 0; i < MANY; i++) {
+            increasing[i] = i;
+            decreasing[i] = MANY - i;
+        }
+        checkSorts(increasing);
+        checkSorts(decreasing);
+    }
+
+}
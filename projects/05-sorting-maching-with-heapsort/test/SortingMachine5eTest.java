@@ -0,0 +1,209 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+
+import components.sortingmachine.SortingMachine;
+import components.sortingmachine.SortingMachine1L;
+
+/**
+ * Customized JUnit test fixture for {@code SortingMachine5e}.
+ */
+public final class SortingMachine5eTest extends SortingMachineTest {
+
+    /**
+     * Memory budget of the machines under test in the inherited tests (small
+     * enough that most of them spill).
+     */
+    private static final int SMALL_BUDGET = 2;
+
+    /**
+     * Number of entries in the larger tests.
+     */
+    private static final int MANY = 20_000;
+
+    /**
+     * Memory budget in the larger tests (small enough for more run files than
+     * are merged at a time).
+     */
+    private static final int BUDGET = 100;
+
+    /**
+     * Range of the random entries (small enough to produce duplicates).
+     */
+    private static final int RANGE = 5_000;
+
+    /**
+     * Machines returned by {@code constructorTest} in the current test, which
+     * may hold run files until cleared.
+     */
+    private final List<SortingMachine<String>> created =
+            new ArrayList<SortingMachine<String>>();
+
+    @Override
+    protected SortingMachine<String> constructorTest(Comparator<String> order) {
+        SortingMachine<String> sm = new SortingMachine5e<String>(order,
+                ElementCodec.strings(), SMALL_BUDGET);
+        this.created.add(sm);
+        return sm;
+    }
+
+    @Override
+    protected SortingMachine<String> constructorRef(Comparator<String> order) {
+        return new SortingMachine1L<String>(order);
+    }
+
+    /**
+     * Clears every machine {@code constructorTest} returned, deleting the run
+     * files the inherited tests leave behind and closing their streams.
+     */
+    @After
+    public void clearCreated() {
+        for (SortingMachine<String> sm : this.created) {
+            sm.clear();
+        }
+        this.created.clear();
+    }
+
+    /**
+     * Returns a new {@code SortingMachine5e} with budget {@code BUDGET} in
+     * insertion mode holding {@code MANY} random entries, which are also
+     * copied into {@code entries}.
+     *
+     * @param entries
+     *            the list receiving the entries
+     * @return the machine
+     * @updates entries
+     */
+    private static SortingMachine<Integer> randomMachine(
+            List<Integer> entries) {
+        Random random = new Random(0);
+        SortingMachine<Integer> sm = new SortingMachine5e<Integer>(
+                Comparator.<Integer> naturalOrder(), ElementCodec.integers(),
+                BUDGET);
+        for (int i = 0; i < MANY; i++) {
+            Integer x = random.nextInt(RANGE);
+            sm.add(x);
+            entries.add(x);
+        }
+        return sm;
+    }
+
+    /**
+     * Returns the entries {@code sm} iterates over, sorted.
+     *
+     * @param sm
+     *            the machine
+     * @return the sorted entries
+     */
+    private static List<Integer> sortedContents(SortingMachine<Integer> sm) {
+        List<Integer> contents = new ArrayList<Integer>();
+        for (Integer x : sm) {
+            contents.add(x);
+        }
+        Collections.sort(contents);
+        return contents;
+    }
+
+    /**
+     * Tests sorting many random entries spilled to many run files.
+     */
+    @Test
+    public void testManyRandomEntries() {
+        List<Integer> entries = new ArrayList<Integer>();
+        SortingMachine<Integer> sm = randomMachine(entries);
+        sm.changeToExtractionMode();
+        Integer[] expected = entries.toArray(new Integer[0]);
+        Arrays.sort(expected);
+        for (Integer x : expected) {
+            assertEquals(x, sm.removeFirst());
+        }
+        assertEquals(0, sm.size());
+    }
+
+    /**
+     * Tests iterating over spilled entries in both modes, including after
+     * removing part of them.
+     */
+    @Test
+    public void testIteratorOverRunFiles() {
+        List<Integer> entries = new ArrayList<Integer>();
+        SortingMachine<Integer> sm = randomMachine(entries);
+        Collections.sort(entries);
+        assertEquals(entries, sortedContents(sm));
+        sm.changeToExtractionMode();
+        assertEquals(entries, sortedContents(sm));
+        int removed = MANY / 2 + 1;
+        for (int i = 0; i < removed; i++) {
+            assertEquals(entries.get(i), sm.removeFirst());
+        }
+        assertEquals(MANY - removed, sm.size());
+        assertEquals(entries.subList(removed, MANY), sortedContents(sm));
+        sm.clear();
+    }
+
+    /**
+     * Tests iterating over the rest of run files of variable-length entries
+     * after removing some of them.
+     */
+    @Test
+    public void testIteratorOverVariableLengthEntries() {
+        final int count = 500;
+        final int budget = 7;
+        final int removed = 123;
+        SortingMachine<String> sm = new SortingMachine5e<String>(
+                Comparator.<String> naturalOrder(), ElementCodec.strings(),
+                budget);
+        List<String> entries = new ArrayList<String>();
+        StringBuilder x = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            x.append((char) ('a' + i % ('z' - 'a' + 1)));
+            String s = x.toString() + i;
+            sm.add(s);
+            entries.add(s);
+        }
+        Collections.sort(entries);
+        sm.changeToExtractionMode();
+        for (int i = 0; i < removed; i++) {
+            assertEquals(entries.get(i), sm.removeFirst());
+        }
+        List<String> contents = new ArrayList<String>();
+        for (String s : sm) {
+            contents.add(s);
+        }
+        Collections.sort(contents);
+        assertEquals(entries.subList(removed, count), contents);
+        sm.clear();
+    }
+
+    /**
+     * Tests that strings with unpaired surrogates and other non-ASCII chars
+     * come out of run files unchanged.
+     */
+    @Test
+    public void testStringsSurviveRunFiles() {
+        final int budget = 1;
+        String[] entries = { "\uD800", "a\uDC00b", "\uDBFF\uD800", "\u00E9",
+            "\uD83D\uDE00", "" };
+        SortingMachine<String> sm = new SortingMachine5e<String>(
+                Comparator.<String> naturalOrder(), ElementCodec.strings(),
+                budget);
+        for (String x : entries) {
+            sm.add(x);
+        }
+        sm.changeToExtractionMode();
+        String[] expected = entries.clone();
+        Arrays.sort(expected);
+        for (String x : expected) {
+            assertEquals(x, sm.removeFirst());
+        }
+    }
+
+}